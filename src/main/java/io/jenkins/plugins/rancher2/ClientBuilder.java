@@ -1,5 +1,9 @@
 package io.jenkins.plugins.rancher2;
 
+import hudson.init.Terminator;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
@@ -10,63 +14,263 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.TrustStrategy;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class ClientBuilder {
+    private static final Logger LOGGER = Logger.getLogger(ClientBuilder.class.getName());
+
+    /**
+     * max connections of each shared client, tunable by system property
+     */
+    static final int MAX_TOTAL = Integer.getInteger(ClientBuilder.class.getName() + ".maxTotal", 100);
+    /**
+     * max connections to one rancher server of each shared client, tunable by system property
+     */
+    static final int MAX_PER_ROUTE = Integer.getInteger(ClientBuilder.class.getName() + ".maxPerRoute", 20);
+    /**
+     * idle pooled connections are closed after this seconds, tunable by system property
+     */
+    static final int IDLE_TIMEOUT = Integer.getInteger(ClientBuilder.class.getName() + ".idleTimeout", 60);
+    /**
+     * seconds to establish a connection, tunable by system property
+     */
+    static final int CONNECT_TIMEOUT = Integer.getInteger(ClientBuilder.class.getName() + ".connectTimeout", 10);
+    /**
+     * seconds without data on a connection before a request fails, tunable by system property
+     */
+    static final int SOCKET_TIMEOUT = Integer.getInteger(ClientBuilder.class.getName() + ".socketTimeout", 60);
+    /**
+     * seconds to wait for a connection from the pool, tunable by system property
+     */
+    static final int CONNECTION_REQUEST_TIMEOUT = Integer.getInteger(ClientBuilder.class.getName() + ".connectionRequestTimeout", 30);
+
+    /**
+     * default timeouts of all clients, requests with own config should copy it
+     */
+    static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
+            .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT))
+            .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(SOCKET_TIMEOUT))
+            .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(CONNECTION_REQUEST_TIMEOUT))
+            .build();
+
+    private static final ConcurrentMap<String, PooledClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Rancher2AsyncClient> ASYNC_CLIENTS = new ConcurrentHashMap<>();
+    private static final String TEMPLATE_KEY = "templates";
 
     /**
      * create HttpClient to support self-signed SSL Certification
+     * the caller owns the returned client and must close it
      * @param endpoint rancher API url
      * @param trustAll skip SSL validation
      * @return http client
      */
     public static CloseableHttpClient create(String endpoint, boolean trustAll) {
         if (endpoint.startsWith("https") && trustAll) {
-            HttpClientBuilder builder = HttpClientBuilder.create();
-            // setup a Trust Strategy that allows all certificates.
-            //
-            SSLContext sslContext;
+            HttpClientBuilder builder = HttpClientBuilder.create().setDefaultRequestConfig(REQUEST_CONFIG);
+            SSLContext sslContext = trustAllContext();
+            builder.setSslcontext(sslContext);
+            builder.setConnectionManager(new PoolingHttpClientConnectionManager(socketFactoryRegistry(sslContext)));
+            return builder.build();
+        }
+        return HttpClients.custom().setDefaultRequestConfig(REQUEST_CONFIG).build();
+    }
+
+    /**
+     * get the shared HttpClient of rancher endpoint, connections are pooled and kept alive between builds
+     * the returned client is owned by this class, callers must NOT close it, but must close every response
+     * @param endpoint rancher API url
+     * @param trustAll skip SSL validation
+     * @return http client
+     */
+    public static CloseableHttpClient get(String endpoint, boolean trustAll) {
+        return CLIENTS.computeIfAbsent(key(endpoint, trustAll), k -> new PooledClient(endpoint, trustAll)).client;
+    }
+
+    /**
+     * get the shared HttpClient of template servers, without rate limiter, circuit breaker, retries and metrics of
+     * rancher endpoints, so a broken template server doesn't hold up requests to a healthy rancher.
+     * callers must NOT close it, but must close every response
+     * @param trustAll skip SSL validation of https template urls
+     * @return http client
+     */
+    public static CloseableHttpClient template(boolean trustAll) {
+        return CLIENTS.computeIfAbsent(key(TEMPLATE_KEY, trustAll), k -> new PooledClient(trustAll)).client;
+    }
+
+    /**
+     * get the shared non-blocking client of rancher endpoint, for reads that overlap with requests of the calling thread.
+     * callers must NOT close it
+     * @param endpoint rancher API url
+     * @param trustAll skip SSL validation
+     * @return async client, null if it is disabled or can't be started
+     */
+    static Rancher2AsyncClient async(String endpoint, boolean trustAll) {
+        if (!Rancher2AsyncClient.ENABLED) {
+            return null;
+        }
+        return ASYNC_CLIENTS.computeIfAbsent(key(endpoint, trustAll), k -> {
             try {
-                sslContext = new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
-                    @Override
-                    public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-                        return true;
-                    }
-                }).build();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                LOGGER.log(Level.FINE, "create shared async rancher client {0}", k);
+                return new Rancher2AsyncClient(endpoint, trustAll);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "create async rancher client " + k + " error, use blocking client", e);
+                return null;
             }
-            builder.setSslcontext(sslContext);
+        });
+    }
 
-            // don't check Hostnames, either.
-            //      -- use SSLConnectionSocketFactory.getDefaultHostnameVerifier(), if you don't want to weaken
-            HostnameVerifier hostnameVerifier = NoopHostnameVerifier.INSTANCE;
-
-            // here's the special part:
-            //      -- need to create an SSL Socket Factory, to use our weakened "trust strategy";
-            //      -- and create a Registry, to register it.
-            //
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext, hostnameVerifier);
-            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                    .register("https", sslSocketFactory)
-                    .build();
+    /**
+     * @param endpoint rancher API url
+     * @param trustAll skip SSL validation
+     * @return connection pool stats of the shared client, null if it was not created
+     */
+    public static PoolStats getPoolStats(String endpoint, boolean trustAll) {
+        PooledClient pooledClient = CLIENTS.get(key(endpoint, trustAll));
+        return pooledClient == null ? null : pooledClient.connectionManager.getTotalStats();
+    }
 
-            // now, we create connection-manager using our Registry.
-            //      -- allows multi-threaded use
-            PoolingHttpClientConnectionManager connMgr = new PoolingHttpClientConnectionManager( socketFactoryRegistry);
-            builder.setConnectionManager(connMgr);
+    /**
+     * @return connection pool stats of all shared clients
+     */
+    public static Map<String, PoolStats> getPoolStats() {
+        Map<String, PoolStats> stats = new TreeMap<>();
+        for (Map.Entry<String, PooledClient> entry : CLIENTS.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().connectionManager.getTotalStats());
+        }
+        return stats;
+    }
 
-            // finally, build the HttpClient;
-            //      -- done!
-            return builder.build();
+    @Terminator
+    public static void shutdown() {
+        for (String key : CLIENTS.keySet()) {
+            PooledClient pooledClient = CLIENTS.remove(key);
+            if (pooledClient == null) continue;
+            try {
+                pooledClient.client.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "close rancher client " + key + " error", e);
+            }
+        }
+        for (String key : ASYNC_CLIENTS.keySet()) {
+            Rancher2AsyncClient asyncClient = ASYNC_CLIENTS.remove(key);
+            if (asyncClient == null) continue;
+            try {
+                asyncClient.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "close async rancher client " + key + " error", e);
+            }
+        }
+    }
+
+    private static String key(String endpoint, boolean trustAll) {
+        return (trustAll ? "trust:" : "verify:") + endpoint;
+    }
+
+    static SSLContext trustAllContext() {
+        // setup a Trust Strategy that allows all certificates.
+        //
+        try {
+            return new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
+                @Override
+                public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                    return true;
+                }
+            }).build();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Registry<ConnectionSocketFactory> socketFactoryRegistry(SSLContext sslContext) {
+        // don't check Hostnames, either.
+        //      -- use SSLConnectionSocketFactory.getDefaultHostnameVerifier(), if you don't want to weaken
+        HostnameVerifier hostnameVerifier = NoopHostnameVerifier.INSTANCE;
+
+        // here's the special part:
+        //      -- need to create an SSL Socket Factory, to use our weakened "trust strategy";
+        //      -- and create a Registry, to register it.
+        //
+        SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext, hostnameVerifier);
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+    }
+
+    private static final class PooledClient {
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CloseableHttpClient client;
+
+        private PooledClient(String endpoint, boolean trustAll) {
+            // one SSLContext per client, so its TLS session cache is reused by every pooled connection
+            connectionManager = endpoint.startsWith("https") && trustAll ?
+                    new PoolingHttpClientConnectionManager(socketFactoryRegistry(trustAllContext())) :
+                    new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(MAX_TOTAL);
+            connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+            connectionManager.setValidateAfterInactivity(2000);
+
+            // requests of all builds to one endpoint share one rate limiter and circuit breaker,
+            // the breaker is checked first, so rejected requests don't take a token
+            Rancher2RateLimiter rateLimiter = Rancher2RateLimiter.get(endpoint);
+            Rancher2CircuitBreaker circuitBreaker = Rancher2CircuitBreaker.get(endpoint);
+            Rancher2RetryHandler retryHandler = new Rancher2RetryHandler(rateLimiter, circuitBreaker);
+            Rancher2Transfer transfer = Rancher2Transfer.get(endpoint);
+            client = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(REQUEST_CONFIG)
+                    .addInterceptorFirst(rateLimiter)
+                    .addInterceptorFirst((HttpRequestInterceptor) circuitBreaker)
+                    .setRetryHandler(retryHandler)
+                    .setServiceUnavailableRetryStrategy(retryHandler)
+                    .addInterceptorLast((HttpResponseInterceptor) circuitBreaker)
+                    // content decoding (gzip, deflate) of HttpClient runs between first and last response interceptors
+                    .addInterceptorFirst(transfer.wireCounter())
+                    .addInterceptorLast(transfer.decodedCounter())
+                    .addInterceptorLast((HttpResponseInterceptor) (response, context) ->
+                            Rancher2Metrics.get().countStatus(endpoint, response.getStatusLine().getStatusCode()))
+                    // connections are shared by all builds, don't bind them to a TLS principal
+                    .disableConnectionState()
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS)
+                    .build();
+            LOGGER.log(Level.FINE, "create shared rancher client {0}", key(endpoint, trustAll));
+        }
+
+        /**
+         * client of template servers, any host
+         */
+        private PooledClient(boolean trustAll) {
+            connectionManager = trustAll ?
+                    new PoolingHttpClientConnectionManager(socketFactoryRegistry(trustAllContext())) :
+                    new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(MAX_TOTAL);
+            connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+            connectionManager.setValidateAfterInactivity(2000);
+            client = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(REQUEST_CONFIG)
+                    .disableAutomaticRetries()
+                    .disableConnectionState()
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS)
+                    .build();
+            LOGGER.log(Level.FINE, "create shared template client {0}", key(TEMPLATE_KEY, trustAll));
         }
-        return HttpClients.createDefault();
     }
 }
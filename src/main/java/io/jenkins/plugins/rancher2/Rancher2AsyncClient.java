@@ -0,0 +1,123 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * non-blocking reads of one Rancher2.x endpoint, shared by all builds like the client of {@link ClientBuilder#get}.
+ * a request is in flight without holding a thread, so it overlaps with requests of the calling thread,
+ * eg: the pods snapshot before redeploy is loaded while the workload is loaded.
+ * the I/O reactor threads never block: rate limiter and circuit breaker are taken on the calling thread before
+ * a request is sent, and its response only updates circuit breaker, 429 pause, status and transfer metrics.
+ * there are no retries and no content decoding, a failed read or a response other than 200 should be sent again by
+ * the blocking client, which retries it
+ */
+final class Rancher2AsyncClient {
+    /**
+     * false to send every request by the blocking client
+     */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(Rancher2AsyncClient.class.getName() + ".enabled", "true"));
+    /**
+     * I/O reactor threads of each endpoint
+     */
+    static final int IO_THREADS = Integer.getInteger(Rancher2AsyncClient.class.getName() + ".ioThreads", 2);
+
+    private final String endpoint;
+    private final Rancher2RateLimiter rateLimiter;
+    private final Rancher2CircuitBreaker circuitBreaker;
+    private final Rancher2Transfer transfer;
+    private final CloseableHttpAsyncClient client;
+
+    Rancher2AsyncClient(String endpoint, boolean trustAll) throws IOReactorException {
+        this.endpoint = endpoint;
+        this.rateLimiter = Rancher2RateLimiter.get(endpoint);
+        this.circuitBreaker = Rancher2CircuitBreaker.get(endpoint);
+        this.transfer = Rancher2Transfer.get(endpoint);
+        // reactor threads mustn't keep the JVM alive, the clients are closed by ClientBuilder.shutdown
+        ThreadFactory threadFactory = new NamingThreadFactory(new DaemonThreadFactory(), Rancher2AsyncClient.class.getSimpleName() + " " + endpoint);
+        DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                .setIoThreadCount(IO_THREADS)
+                .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(ClientBuilder.CONNECT_TIMEOUT))
+                .setSoTimeout((int) TimeUnit.SECONDS.toMillis(ClientBuilder.SOCKET_TIMEOUT))
+                .build(), threadFactory);
+        PoolingNHttpClientConnectionManager connectionManager = endpoint.startsWith("https") && trustAll ?
+                new PoolingNHttpClientConnectionManager(ioReactor, RegistryBuilder.<SchemeIOSessionStrategy>create()
+                        .register("http", NoopIOSessionStrategy.INSTANCE)
+                        .register("https", new SSLIOSessionStrategy(ClientBuilder.trustAllContext(), NoopHostnameVerifier.INSTANCE))
+                        .build()) :
+                new PoolingNHttpClientConnectionManager(ioReactor);
+        connectionManager.setMaxTotal(ClientBuilder.MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(ClientBuilder.MAX_PER_ROUTE);
+        this.client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(ClientBuilder.REQUEST_CONFIG)
+                .setThreadFactory(threadFactory)
+                .disableConnectionState()
+                .build();
+        client.start();
+    }
+
+    /**
+     * send a GET request, waits for the rate limiter on the calling thread
+     * @return future of the response, its body is buffered in memory
+     * @throws Rancher2CircuitBreaker.OpenException if the circuit of endpoint is open
+     */
+    Future<HttpResponse> execute(HttpUriRequest request) throws IOException, InterruptedException {
+        circuitBreaker.acquire();
+        rateLimiter.acquire();
+        return client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (Rancher2CircuitBreaker.isFailure(statusCode)) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    circuitBreaker.recordSuccess();
+                }
+                if (statusCode == 429) {
+                    rateLimiter.throttle(response);
+                }
+                Rancher2Metrics.get().countStatus(endpoint, statusCode);
+                HttpEntity entity = response.getEntity();
+                if (entity != null && entity.getContentLength() > 0) {
+                    transfer.received(entity.getContentLength());
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                if (e instanceof IOException && Rancher2RetryHandler.isTransient((IOException) e)) {
+                    circuitBreaker.recordFailure();
+                }
+            }
+
+            @Override
+            public void cancelled() {
+            }
+        });
+    }
+
+    void close() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,157 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * controller-wide circuit breaker of one Rancher2.x endpoint, shared by all builds.
+ * after {@link #FAILURE_THRESHOLD} failures in a row (I/O errors or 502/503/504) the circuit opens,
+ * requests fail at once for {@link #OPEN_SECONDS}, then one trial request is let through:
+ * its success closes the circuit, its failure opens it again
+ */
+final class Rancher2CircuitBreaker implements HttpRequestInterceptor, HttpResponseInterceptor {
+    private static final Logger LOGGER = Logger.getLogger(Rancher2CircuitBreaker.class.getName());
+
+    /**
+     * failures in a row to open the circuit, 0 to disable
+     */
+    static final int FAILURE_THRESHOLD = Integer.getInteger(Rancher2CircuitBreaker.class.getName() + ".failureThreshold", 5);
+    /**
+     * seconds the circuit stays open before a trial request
+     */
+    static final int OPEN_SECONDS = Integer.getInteger(Rancher2CircuitBreaker.class.getName() + ".openSeconds", 30);
+
+    private static final ConcurrentMap<String, Rancher2CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    /**
+     * thrown instead of sending a request while the circuit is open, it is never retried
+     */
+    static final class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final String endpoint;
+
+    // guarded by this
+    private int failures;
+    private long openUntil;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private Rancher2CircuitBreaker(String endpoint) {
+        this.endpoint = endpoint;
+        this.openUntil = System.nanoTime();
+    }
+
+    /**
+     * @return breaker of rancher endpoint
+     */
+    static Rancher2CircuitBreaker get(String endpoint) {
+        return BREAKERS.computeIfAbsent(endpoint, Rancher2CircuitBreaker::new);
+    }
+
+    /**
+     * @return stats of all breakers
+     */
+    static Map<String, Stats> getAllStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (Map.Entry<String, Rancher2CircuitBreaker> entry : BREAKERS.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    synchronized Stats getStats() {
+        return new Stats(isOpen(), opened.get(), rejected.get());
+    }
+
+    private boolean isOpen() {
+        return FAILURE_THRESHOLD > 0 && failures >= FAILURE_THRESHOLD;
+    }
+
+    /**
+     * @throws OpenException if circuit is open
+     */
+    synchronized void acquire() throws OpenException {
+        if (!isOpen()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (openUntil - now > 0) {
+            rejected.incrementAndGet();
+            throw new OpenException("circuit breaker of rancher endpoint " + endpoint + " is open after " + failures +
+                    " failures, retry in " + TimeUnit.NANOSECONDS.toSeconds(openUntil - now) + "s");
+        }
+        // half open, this request is the trial, the others fail until its result or next open period
+        openUntil = now + TimeUnit.SECONDS.toNanos(OPEN_SECONDS);
+    }
+
+    synchronized void recordSuccess() {
+        if (isOpen()) {
+            LOGGER.log(Level.INFO, "rancher endpoint {0} recovered, circuit closed", endpoint);
+        }
+        failures = 0;
+    }
+
+    synchronized void recordFailure() {
+        failures++;
+        if (isOpen()) {
+            if (failures == FAILURE_THRESHOLD) {
+                opened.incrementAndGet();
+                LOGGER.log(Level.WARNING, "rancher endpoint {0} failed {1} times, circuit opened", new Object[]{endpoint, failures});
+            }
+            openUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(OPEN_SECONDS);
+        }
+    }
+
+    /**
+     * @return true if response status means the endpoint is unhealthy
+     */
+    static boolean isFailure(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws OpenException {
+        acquire();
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        if (isFailure(response.getStatusLine().getStatusCode())) {
+            recordFailure();
+        } else {
+            recordSuccess();
+        }
+    }
+
+    static final class Stats {
+        final boolean open;
+        final long opened;
+        final long rejected;
+
+        private Stats(boolean open, long opened, long rejected) {
+            this.open = open;
+            this.opened = opened;
+            this.rejected = rejected;
+        }
+    }
+}
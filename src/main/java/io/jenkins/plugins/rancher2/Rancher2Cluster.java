@@ -0,0 +1,91 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.regex.Matcher;
+
+/**
+ * one more cluster the same workloads are redeployed to by {@link Rancher2RedeployBuilder},
+ * by its own credential, and its own project if the project id in workload paths should be replaced
+ */
+public class Rancher2Cluster extends AbstractDescribableImpl<Rancher2Cluster> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Nonnull
+    private final String credential;
+    private final String project;
+
+    @DataBoundConstructor
+    public Rancher2Cluster(@Nonnull String credential, @Nullable String project) {
+        this.credential = credential;
+        this.project = project;
+    }
+
+    @Nonnull
+    public String getCredential() {
+        return credential;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     * @return credential id and project, shown in logs
+     */
+    String getName() {
+        return StringUtils.isBlank(project) ? credential : credential + " " + project;
+    }
+
+    /**
+     * @param workload workload path, eg: /project/c-h4hxd:p-c9j8z/workloads/deployment:default:busybox
+     * @return workload path in project of this cluster, unchanged if no project is set
+     */
+    String workload(String workload) {
+        if (StringUtils.isBlank(project)) {
+            return workload;
+        }
+        return workload.replaceFirst("^(/project/|/p/)[^/]+", "$1" + Matcher.quoteReplacement(project.trim()));
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<Rancher2Cluster> {
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.Rancher2Cluster_DescriptorImpl_displayName();
+        }
+
+        public ListBoxModel doFillCredentialItems(@AncestorInPath Item item, @QueryParameter String credential) {
+            return builder().doFillCredentialItems(item, credential);
+        }
+
+        public FormValidation doCheckCredential(@AncestorInPath Item item, @QueryParameter String value) {
+            return builder().doCheckCredential(item, value);
+        }
+
+        public FormValidation doCheckProject(@QueryParameter String value) {
+            if (StringUtils.isBlank(value) || value.trim().matches("[^:/]+:[^:/]+")) {
+                return FormValidation.ok();
+            }
+            return FormValidation.error(Messages.Rancher2Cluster_DescriptorImpl_badProject());
+        }
+
+        private static Rancher2RedeployBuilder.DescriptorImpl builder() {
+            return Jenkins.get().getDescriptorByType(Rancher2RedeployBuilder.DescriptorImpl.class);
+        }
+    }
+}
@@ -115,18 +115,19 @@ public class Rancher2CredentialsImpl extends BaseStandardCredentials implements
                 RequestBuilder requestBuilder = RequestBuilder.get(endpoint + (endpoint.endsWith("/") ? "projects" : "/projects"));
                 requestBuilder.addHeader("Authorization", "Bearer " + bearerToken.getPlainText());
                 HttpUriRequest request = requestBuilder.build();
-                CloseableHttpResponse response = client.execute(request);
-                if (response.getStatusLine().getStatusCode() == 200) {
-                    return FormValidation.ok(Messages.Rancher2CredentialsImpl_DescriptorImpl_connectSucceed());
+                try (CloseableHttpResponse response = client.execute(request)) {
+                    if (response.getStatusLine().getStatusCode() == 200) {
+                        return FormValidation.ok(Messages.Rancher2CredentialsImpl_DescriptorImpl_connectSucceed());
+                    }
+                    if (response.getStatusLine().getStatusCode() == 401) {
+                        return FormValidation.error(Messages.Rancher2CredentialsImpl_DescriptorImpl_badTokenScope());
+                    }
+                    String body = EntityUtils.toString(response.getEntity());
+                    return FormValidation.error(Messages.Rancher2CredentialsImpl_DescriptorImpl_badResponse(
+                            response.getStatusLine().getStatusCode(),
+                            body
+                    ));
                 }
-                if (response.getStatusLine().getStatusCode() == 401) {
-                    return FormValidation.error(Messages.Rancher2CredentialsImpl_DescriptorImpl_badTokenScope());
-                }
-                String body = EntityUtils.toString(response.getEntity());
-                return FormValidation.error(Messages.Rancher2CredentialsImpl_DescriptorImpl_badResponse(
-                        response.getStatusLine().getStatusCode(),
-                        body
-                ));
             } catch (Exception e) {
                 return FormValidation.error(Messages.Rancher2CredentialsImpl_DescriptorImpl_testError(e.getMessage()));
             }
@@ -0,0 +1,43 @@
+package io.jenkins.plugins.rancher2;
+
+import java.io.Serializable;
+
+/**
+ * options shared by all workloads of one redeploy, taken from {@link Rancher2RedeployBuilder} or {@link Rancher2RedeployStep}
+ */
+final class Rancher2DeployConfig implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final boolean alwaysPull;
+    final boolean pollingDeployFinish;
+    final int pollingDeployTimeout;
+    final String deployFinishMode;
+    final String pollingStrategy;
+    final String updateMode;
+    final String templateUrl;
+    final String templateVars;
+    // redeploy even if the workload already runs the images
+    final boolean force;
+
+    Rancher2DeployConfig(
+            boolean alwaysPull,
+            boolean pollingDeployFinish,
+            int pollingDeployTimeout,
+            String deployFinishMode,
+            String pollingStrategy,
+            String updateMode,
+            String templateUrl,
+            String templateVars,
+            boolean force
+    ) {
+        this.alwaysPull = alwaysPull;
+        this.pollingDeployFinish = pollingDeployFinish;
+        this.pollingDeployTimeout = pollingDeployTimeout;
+        this.deployFinishMode = deployFinishMode;
+        this.pollingStrategy = pollingStrategy;
+        this.updateMode = updateMode;
+        this.templateUrl = templateUrl;
+        this.templateVars = templateVars;
+        this.force = force;
+    }
+}
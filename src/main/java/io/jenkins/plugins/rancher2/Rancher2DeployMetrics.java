@@ -0,0 +1,163 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.model.Action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * phase timings of one build, shown on build page by summary.jelly.
+ * every timing is also recorded into controller-wide {@link Rancher2Metrics}
+ */
+public class Rancher2DeployMetrics implements Action, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final List<Workload> workloads = new ArrayList<>();
+
+    /**
+     * record a build level phase, eg: credential lookup
+     */
+    synchronized void record(String phase, long startTime) {
+        long millis = System.currentTimeMillis() - startTime;
+        phases.merge(phase, millis, Long::sum);
+        Rancher2Metrics.get().observe(phase, "", millis);
+    }
+
+    /**
+     * @param url workload API url
+     * @return timings of workload
+     */
+    synchronized Workload addWorkload(String url) {
+        Workload workload = new Workload(url);
+        workloads.add(workload);
+        return workload;
+    }
+
+    /**
+     * add timings recorded on agent, also into controller-wide {@link Rancher2Metrics}
+     */
+    synchronized void merge(Rancher2DeployMetrics remote) {
+        for (Map.Entry<String, Long> phase : remote.getPhases().entrySet()) {
+            phases.merge(phase.getKey(), phase.getValue(), Long::sum);
+            Rancher2Metrics.get().observe(phase.getKey(), "", phase.getValue());
+        }
+        for (Workload workload : remote.getWorkloads()) {
+            workload.publish();
+            workloads.add(workload);
+        }
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    public synchronized List<Workload> getWorkloads() {
+        return new ArrayList<>(workloads);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.Rancher2DeployMetrics_displayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * timings of one workload, written by one deploying thread at a time
+     */
+    public static final class Workload implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String url;
+        private final String cluster;
+        private final Map<String, Long> phases = new LinkedHashMap<>();
+        private int polls = 0;
+        private long redeployTime = 0;
+
+        private Workload(String url) {
+            this.url = url;
+            this.cluster = Rancher2Metrics.cluster(url);
+        }
+
+        /**
+         * record millis since startTime, repeated phases are summed
+         */
+        synchronized void record(String phase, long startTime) {
+            long millis = System.currentTimeMillis() - startTime;
+            phases.merge(phase, millis, Long::sum);
+            Rancher2Metrics.get().observe(phase, cluster, millis);
+        }
+
+        /**
+         * redeploy request is being sent
+         */
+        synchronized void redeployStarted() {
+            if (redeployTime == 0) {
+                redeployTime = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * a new pod of workload was seen, only the first one is recorded
+         */
+        synchronized void newPodSeen() {
+            if (redeployTime > 0 && !phases.containsKey(Rancher2Metrics.PHASE_FIRST_NEW_POD)) {
+                record(Rancher2Metrics.PHASE_FIRST_NEW_POD, redeployTime);
+            }
+        }
+
+        /**
+         * rollout finished
+         */
+        synchronized void rolloutFinished() {
+            if (redeployTime > 0 && !phases.containsKey(Rancher2Metrics.PHASE_ROLLOUT)) {
+                record(Rancher2Metrics.PHASE_ROLLOUT, redeployTime);
+            }
+        }
+
+        /**
+         * record timings of a workload deployed on agent into controller-wide metrics
+         */
+        synchronized void publish() {
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                Rancher2Metrics.get().observe(phase.getKey(), cluster, phase.getValue());
+            }
+            for (int i = 0; i < polls; i++) {
+                Rancher2Metrics.get().countPoll(cluster);
+            }
+        }
+
+        synchronized void poll() {
+            polls++;
+            Rancher2Metrics.get().countPoll(cluster);
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getCluster() {
+            return cluster;
+        }
+
+        public synchronized Map<String, Long> getPhases() {
+            return new LinkedHashMap<>(phases);
+        }
+
+        public synchronized int getPolls() {
+            return polls;
+        }
+    }
+}
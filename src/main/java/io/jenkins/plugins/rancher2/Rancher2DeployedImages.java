@@ -0,0 +1,96 @@
+package io.jenkins.plugins.rancher2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * controller-wide cache of the images last applied to each workload, backs the no-op check of redeploy.
+ * a workload whose containers already run the requested images isn't updated again, unless the rollout of these
+ * images by an earlier redeploy didn't finish. with a positive {@link #TTL}, images applied and rolled out less than
+ * TTL seconds ago are skipped without loading the workload, so a change made in Rancher meanwhile isn't seen.
+ * image tags pinned by digest, eg: nginx:1.25@sha256:..., are part of the fingerprint
+ */
+final class Rancher2DeployedImages {
+    /**
+     * seconds a rolled out image set is trusted without loading the workload, 0 to always load it
+     */
+    static final long TTL = Long.getLong(Rancher2DeployedImages.class.getName() + ".ttl", 0);
+    static final int MAX_ENTRIES = Integer.getInteger(Rancher2DeployedImages.class.getName() + ".maxEntries", 1000);
+
+    private static final Rancher2DeployedImages INSTANCE = new Rancher2DeployedImages(TTL * 1000);
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Applied> entries = new LinkedHashMap<String, Applied>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Applied> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    Rancher2DeployedImages(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    static Rancher2DeployedImages get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param imageTags image name to image tag
+     * @return fingerprint of image tags, same for any order
+     */
+    static String fingerprint(Map<String, String> imageTags) {
+        return String.join(";", new TreeSet<>(imageTags.values()));
+    }
+
+    /**
+     * @param url workload API url
+     * @return true if images were applied to workload and rolled out within {@link #TTL}, always false if it is 0
+     */
+    synchronized boolean isFresh(String url, String fingerprint) {
+        Applied entry = entries.get(url);
+        return entry != null && entry.rolledOut && entry.fingerprint.equals(fingerprint)
+                && System.currentTimeMillis() - entry.checkedAt < ttlMillis;
+    }
+
+    /**
+     * @param url workload API url
+     * @return true if images were applied to workload but their rollout didn't finish, eg: failed or timed out
+     */
+    synchronized boolean isPending(String url, String fingerprint) {
+        Applied entry = entries.get(url);
+        return entry != null && !entry.rolledOut && entry.fingerprint.equals(fingerprint);
+    }
+
+    /**
+     * @param url workload API url
+     * @param rolledOut true if the workload was seen running the images, false after an update, a finished rollout
+     *                  is marked by {@link #rolledOut(String)}
+     */
+    synchronized void applied(String url, String fingerprint, boolean rolledOut) {
+        entries.put(url, new Applied(fingerprint, rolledOut));
+    }
+
+    /**
+     * @param url workload API url
+     */
+    synchronized void rolledOut(String url) {
+        Applied entry = entries.get(url);
+        if (entry != null) {
+            entries.put(url, new Applied(entry.fingerprint, true));
+        }
+    }
+
+    private static final class Applied {
+        private final String fingerprint;
+        private final boolean rolledOut;
+        private final long checkedAt = System.currentTimeMillis();
+
+        private Applied(String fingerprint, boolean rolledOut) {
+            this.fingerprint = fingerprint;
+            this.rolledOut = rolledOut;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hudson.AbortException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+
+/**
+ * Kubernetes resource of a workload, through Rancher2.x cluster proxy
+ * {endpoint without /v3}/k8s/clusters/{clusterId}/apis/{group}/namespaces/{namespace}/{kind}s/{name}.
+ * used to read rollout status, and to update workload by strategic merge patch:
+ * only changed container fields and the pod template timestamp annotation are sent, the patch carries
+ * metadata.resourceVersion, so it is rejected with 409 if the workload was modified after it was read
+ */
+class Rancher2KubeWorkload {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ContentType STRATEGIC_MERGE_PATCH = ContentType.create("application/strategic-merge-patch+json", "utf-8");
+
+    private final CloseableHttpClient client;
+    private final String bearerToken;
+    private final String resourceUrl;
+    private final String kind;
+    private final boolean cronJob;
+
+    /**
+     * @param endpoint rancher API url, eg: https://rancher.example.com/v3
+     * @param url workload API url
+     */
+    Rancher2KubeWorkload(CloseableHttpClient client, String bearerToken, String endpoint, String url) {
+        this.client = client;
+        this.bearerToken = bearerToken;
+
+        String server = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        String[] urlInfo = url.split("\\/project\\/");
+        String[] workloadInfo = urlInfo.length == 2 ? urlInfo[1].split("\\/workloads\\/") : new String[0];
+        String[] workloadIds = workloadInfo.length == 2 ? workloadInfo[1].split(":") : new String[0];
+        String api = workloadIds.length == 3 ? api(workloadIds[0]) : null;
+        if (server.endsWith("/v3") && api != null) {
+            String clusterId = workloadInfo[0].split(":")[0];
+            this.resourceUrl = server.substring(0, server.length() - 3) + "/k8s/clusters/" + clusterId + "/apis/" + api
+                    + "/namespaces/" + workloadIds[1] + "/" + workloadIds[0] + "s/" + workloadIds[2];
+        } else {
+            this.resourceUrl = null;
+        }
+        this.kind = workloadIds.length == 3 ? workloadIds[0] : null;
+        this.cronJob = "cronjob".equals(kind);
+    }
+
+    private static String api(String kind) {
+        switch (kind) {
+            case "deployment":
+            case "daemonset":
+            case "statefulset":
+            case "replicaset":
+                return "apps/v1";
+            case "cronjob":
+                return "batch/v1beta1";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return false if workload kind is not supported or endpoint is not a /v3 url
+     */
+    boolean isAvailable() {
+        return resourceUrl != null;
+    }
+
+    /**
+     * @return false if workload has no rollout status, eg: cronjob
+     */
+    boolean isRolloutAvailable() {
+        return resourceUrl != null && Rancher2RolloutStatus.isSupported(kind);
+    }
+
+    /**
+     * @param resource resource read by {@link #get()}
+     */
+    Rancher2RolloutStatus rolloutStatus(JsonNode resource) {
+        return Rancher2RolloutStatus.of(kind, resource);
+    }
+
+    /**
+     * @return Kubernetes resource of workload, null if it doesn't exist
+     */
+    JsonNode get() throws IOException {
+        HttpUriRequest request = RequestBuilder.get(resourceUrl)
+                .addHeader("Authorization", "Bearer " + bearerToken)
+                .addHeader("Accept", "application/json")
+                .build();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 200) {
+                return MAPPER.readTree(response.getEntity().getContent());
+            }
+            String body = EntityUtils.toString(response.getEntity());
+            if (statusCode == 404) {
+                return null;
+            }
+            throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(statusCode, body));
+        }
+    }
+
+    /**
+     * @return pod template containers of resource
+     */
+    JsonNode containers(JsonNode resource) {
+        return podTemplate(resource).path("spec").path("containers");
+    }
+
+    /**
+     * @param resource resource read by {@link #get()}
+     * @return empty patch of resource, guarded by its resourceVersion
+     */
+    ObjectNode createPatch(JsonNode resource, String timestamp) {
+        ObjectNode patch = MAPPER.createObjectNode();
+        patch.putObject("metadata").put("resourceVersion", resource.path("metadata").path("resourceVersion").asText());
+        ObjectNode template = cronJob ?
+                patch.putObject("spec").putObject("jobTemplate").putObject("spec").putObject("template") :
+                patch.putObject("spec").putObject("template");
+        template.putObject("metadata").putObject("annotations").put("cattle.io/timestamp", timestamp);
+        template.putObject("spec").putArray("containers");
+        return patch;
+    }
+
+    /**
+     * @return container of patch, containers are merged by name
+     */
+    ObjectNode patchContainer(ObjectNode patch, String name) {
+        ArrayNode containers = (ArrayNode) podTemplate(patch).path("spec").path("containers");
+        return containers.addObject().put("name", name);
+    }
+
+    /**
+     * @return false if workload was modified after the patch was created
+     */
+    boolean patch(ObjectNode patch) throws IOException {
+        HttpUriRequest request = RequestBuilder.patch(resourceUrl)
+                .addHeader("Authorization", "Bearer " + bearerToken)
+                .addHeader("Accept", "application/json")
+                .setEntity(new ByteArrayEntity(MAPPER.writeValueAsBytes(patch), STRATEGIC_MERGE_PATCH))
+                .build();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 200 || statusCode == 409) {
+                EntityUtils.consume(response.getEntity());
+                return statusCode == 200;
+            }
+            throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(statusCode, EntityUtils.toString(response.getEntity())));
+        }
+    }
+
+    private JsonNode podTemplate(JsonNode resource) {
+        JsonNode spec = resource.path("spec");
+        return cronJob ? spec.path("jobTemplate").path("spec").path("template") : spec.path("template");
+    }
+}
@@ -0,0 +1,195 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.pool.PoolStats;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * controller-wide deploy metrics of all builds, exported in Prometheus text format by {@link Rancher2MetricsExporter}.
+ * phase latencies are kept in fixed bucket histograms labeled by phase and cluster, recording is lock free.
+ * durations are recorded in millis and exported in seconds, the Prometheus base unit
+ */
+final class Rancher2Metrics {
+    static final String PHASE_CREDENTIAL = "credential";
+    static final String PHASE_SELECT = "select";
+    static final String PHASE_WORKLOAD_GET = "workload_get";
+    static final String PHASE_UPDATE = "update";
+    static final String PHASE_TEMPLATE_FETCH = "template_fetch";
+    static final String PHASE_TEMPLATE_COMPILE = "template_compile";
+    static final String PHASE_FIRST_NEW_POD = "first_new_pod";
+    static final String PHASE_ROLLOUT = "rollout";
+
+    /**
+     * upper bounds of histogram buckets in millis
+     */
+    static final long[] BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, 600000};
+
+    private static final Rancher2Metrics INSTANCE = new Rancher2Metrics();
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> polls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    static Rancher2Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param cluster cluster id of workload
+     */
+    void observe(String phase, String cluster, long millis) {
+        histograms.computeIfAbsent(label("phase", phase) + "," + label("cluster", cluster), k -> new Histogram()).observe(millis);
+    }
+
+    void countPoll(String cluster) {
+        polls.computeIfAbsent(label("cluster", cluster), k -> new LongAdder()).increment();
+    }
+
+    void countStatus(String endpoint, int statusCode) {
+        statuses.computeIfAbsent(label("endpoint", endpoint) + "," + label("code", String.valueOf(statusCode)), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * @param url workload API url, eg: https://rancher.example.com/v3/project/c-xxxxx:p-xxxxx/workloads/deployment:default:nginx
+     * @return cluster id of workload
+     */
+    static String cluster(String url) {
+        String[] urlInfo = url.split("\\/project\\/");
+        if (urlInfo.length != 2) {
+            return "unknown";
+        }
+        return urlInfo[1].split("[:/]")[0];
+    }
+
+    /**
+     * write all metrics in Prometheus text exposition format 0.0.4, lines always end with \n
+     */
+    void writePrometheus(PrintWriter writer) {
+        writer.print("# HELP rancher2_phase_duration_seconds duration of redeploy phases" + "\n");
+        writer.print("# TYPE rancher2_phase_duration_seconds histogram" + "\n");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                writer.print("rancher2_phase_duration_seconds_bucket{" + entry.getKey() + ",le=\"" + seconds(BUCKETS[i]) + "\"} " + cumulative + "\n");
+            }
+            writer.print("rancher2_phase_duration_seconds_bucket{" + entry.getKey() + ",le=\"+Inf\"} " + histogram.count.sum() + "\n");
+            writer.print("rancher2_phase_duration_seconds_sum{" + entry.getKey() + "} " + seconds(histogram.sum.sum()) + "\n");
+            writer.print("rancher2_phase_duration_seconds_count{" + entry.getKey() + "} " + histogram.count.sum() + "\n");
+        }
+
+        writer.print("# HELP rancher2_poll_iterations_total pods list pollings while waiting for rollout" + "\n");
+        writer.print("# TYPE rancher2_poll_iterations_total counter" + "\n");
+        writeCounters(writer, "rancher2_poll_iterations_total", polls);
+
+        writer.print("# HELP rancher2_http_responses_total responses of Rancher2.x API by status code" + "\n");
+        writer.print("# TYPE rancher2_http_responses_total counter" + "\n");
+        writeCounters(writer, "rancher2_http_responses_total", statuses);
+
+        Map<String, Rancher2RateLimiter.Stats> rateLimitStats = Rancher2RateLimiter.getAllStats();
+        writer.print("# HELP rancher2_rate_limiter_queued requests waiting for rate limiter" + "\n");
+        writer.print("# TYPE rancher2_rate_limiter_queued gauge" + "\n");
+        for (Map.Entry<String, Rancher2RateLimiter.Stats> entry : rateLimitStats.entrySet()) {
+            writer.print("rancher2_rate_limiter_queued{" + label("endpoint", entry.getKey()) + "} " + entry.getValue().queued + "\n");
+        }
+        writer.print("# HELP rancher2_rate_limiter_wait_seconds_total time requests waited for rate limiter" + "\n");
+        writer.print("# TYPE rancher2_rate_limiter_wait_seconds_total counter" + "\n");
+        for (Map.Entry<String, Rancher2RateLimiter.Stats> entry : rateLimitStats.entrySet()) {
+            writer.print("rancher2_rate_limiter_wait_seconds_total{" + label("endpoint", entry.getKey()) + "} " + seconds(entry.getValue().waitMillis) + "\n");
+        }
+        writer.print("# HELP rancher2_rate_limiter_throttled_total responses with status 429" + "\n");
+        writer.print("# TYPE rancher2_rate_limiter_throttled_total counter" + "\n");
+        for (Map.Entry<String, Rancher2RateLimiter.Stats> entry : rateLimitStats.entrySet()) {
+            writer.print("rancher2_rate_limiter_throttled_total{" + label("endpoint", entry.getKey()) + "} " + entry.getValue().throttled + "\n");
+        }
+
+        Map<String, Rancher2CircuitBreaker.Stats> breakerStats = Rancher2CircuitBreaker.getAllStats();
+        writer.print("# HELP rancher2_circuit_breaker_open 1 if requests to endpoint are rejected by circuit breaker" + "\n");
+        writer.print("# TYPE rancher2_circuit_breaker_open gauge" + "\n");
+        for (Map.Entry<String, Rancher2CircuitBreaker.Stats> entry : breakerStats.entrySet()) {
+            writer.print("rancher2_circuit_breaker_open{" + label("endpoint", entry.getKey()) + "} " + (entry.getValue().open ? 1 : 0) + "\n");
+        }
+        writer.print("# HELP rancher2_circuit_breaker_rejected_total requests rejected by open circuit breaker" + "\n");
+        writer.print("# TYPE rancher2_circuit_breaker_rejected_total counter" + "\n");
+        for (Map.Entry<String, Rancher2CircuitBreaker.Stats> entry : breakerStats.entrySet()) {
+            writer.print("rancher2_circuit_breaker_rejected_total{" + label("endpoint", entry.getKey()) + "} " + entry.getValue().rejected + "\n");
+        }
+
+        Map<String, Rancher2Transfer.Stats> transferStats = Rancher2Transfer.getAllStats();
+        writer.print("# HELP rancher2_transfer_bytes_total bytes of Rancher2.x API bodies, on wire (compressed) and decoded" + "\n");
+        writer.print("# TYPE rancher2_transfer_bytes_total counter" + "\n");
+        for (Map.Entry<String, Rancher2Transfer.Stats> entry : transferStats.entrySet()) {
+            Rancher2Transfer.Stats stats = entry.getValue();
+            String endpoint = label("endpoint", entry.getKey());
+            writer.print("rancher2_transfer_bytes_total{" + endpoint + ",direction=\"received\",encoding=\"wire\"} " + stats.receivedWire + "\n");
+            writer.print("rancher2_transfer_bytes_total{" + endpoint + ",direction=\"received\",encoding=\"decoded\"} " + stats.receivedDecoded + "\n");
+            writer.print("rancher2_transfer_bytes_total{" + endpoint + ",direction=\"sent\",encoding=\"wire\"} " + stats.sentWire + "\n");
+            writer.print("rancher2_transfer_bytes_total{" + endpoint + ",direction=\"sent\",encoding=\"decoded\"} " + stats.sentDecoded + "\n");
+        }
+
+        // leased near max with pending requests means the pool is too small, see ClientBuilder.maxPerRoute
+        Map<String, PoolStats> poolStats = ClientBuilder.getPoolStats();
+        writePoolGauge(writer, "rancher2_connections_leased", "leased connections of shared clients", poolStats, PoolStats::getLeased);
+        writePoolGauge(writer, "rancher2_connections_available", "idle pooled connections of shared clients", poolStats, PoolStats::getAvailable);
+        writePoolGauge(writer, "rancher2_connections_pending", "requests waiting for a connection of shared clients", poolStats, PoolStats::getPending);
+        writePoolGauge(writer, "rancher2_connections_max", "max connections of shared clients", poolStats, PoolStats::getMax);
+    }
+
+    private static void writePoolGauge(PrintWriter writer, String name, String help, Map<String, PoolStats> poolStats,
+                                       ToIntFunction<PoolStats> value) {
+        writer.print("# HELP " + name + " " + help + "\n");
+        writer.print("# TYPE " + name + " gauge" + "\n");
+        for (Map.Entry<String, PoolStats> entry : poolStats.entrySet()) {
+            writer.print(name + "{" + label("client", entry.getKey()) + "} " + value.applyAsInt(entry.getValue()) + "\n");
+        }
+    }
+
+    private static void writeCounters(PrintWriter writer, String name, Map<String, LongAdder> counters) {
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            writer.print(name + "{" + entry.getKey() + "} " + entry.getValue().sum() + "\n");
+        }
+    }
+
+    /**
+     * @return millis as exact seconds, eg: 0.025, 1, 2.5
+     */
+    static String seconds(long millis) {
+        return millis == 0 ? "0" : BigDecimal.valueOf(millis, 3).stripTrailingZeros().toPlainString();
+    }
+
+    private static String label(String name, String value) {
+        String escaped = value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name + "=\"" + escaped + "\"";
+    }
+
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+        private final LongAdder sum = new LongAdder();
+        private final LongAdder count = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void observe(long millis) {
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (millis <= BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            sum.add(millis);
+            count.increment();
+        }
+    }
+}
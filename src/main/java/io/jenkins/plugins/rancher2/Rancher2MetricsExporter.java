@@ -0,0 +1,40 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Prometheus scrape endpoint of {@link Rancher2Metrics}: {jenkins url}/rancher2-metrics/
+ * requires Overall/Administer, scrape it with the API token of an administrator
+ */
+@Extension
+public class Rancher2MetricsExporter implements RootAction {
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.Rancher2DeployMetrics_displayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "rancher2-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        PrintWriter writer = rsp.getWriter();
+        Rancher2Metrics.get().writePrometheus(writer);
+        writer.flush();
+    }
+}
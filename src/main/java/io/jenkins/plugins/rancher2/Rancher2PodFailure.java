@@ -0,0 +1,114 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * container states from which a rollout won't recover before its timeout, so polling can stop early
+ */
+final class Rancher2PodFailure {
+    /**
+     * restarts of a CrashLoopBackOff container before the rollout is failed
+     */
+    static final int RESTART_THRESHOLD = Integer.getInteger(Rancher2PodFailure.class.getName() + ".restartThreshold", 3);
+
+    private Rancher2PodFailure() {
+    }
+
+    /**
+     * @param reason waiting reason of container, may be null
+     * @param restartCount restarts of container
+     * @return failure of container, null if it may still become ready
+     */
+    static String check(String reason, int restartCount) {
+        if (reason == null) {
+            return null;
+        }
+        switch (reason) {
+            case "ImagePullBackOff":
+            case "ErrImagePull":
+            case "InvalidImageName":
+                return reason;
+            case "CrashLoopBackOff":
+                return restartCount >= RESTART_THRESHOLD ? reason + ", restarts: " + restartCount : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Rancher2.x v3 pods carry container states in containers[] as state and transitioningMessage, not the
+     * waiting reason of Kubernetes, it is recognized by the message kubelet sets for it
+     * @param state state of container, eg: running, waiting, terminated
+     * @param transitioningMessage message of container state, eg: Back-off pulling image "nginx:1.25"
+     * @return waiting reason of container, null if it isn't waiting or the message isn't known
+     */
+    static String reason(String state, String transitioningMessage) {
+        if (!"waiting".equals(state) || StringUtils.isBlank(transitioningMessage)) {
+            return null;
+        }
+        for (String reason : new String[]{"ImagePullBackOff", "ErrImagePull", "InvalidImageName", "CrashLoopBackOff"}) {
+            // some Rancher versions prefix the message by the reason
+            if (transitioningMessage.startsWith(reason)) {
+                return reason;
+            }
+        }
+        String message = transitioningMessage.toLowerCase(Locale.ENGLISH);
+        if (message.startsWith("back-off pulling image")) {
+            return "ImagePullBackOff";
+        }
+        if (message.contains("restarting failed container")) {
+            return "CrashLoopBackOff";
+        }
+        if (message.contains("couldn't parse image reference") || message.contains("failed to apply default image tag")) {
+            return "InvalidImageName";
+        }
+        if (message.contains("failed to pull") || message.contains("pull access denied")) {
+            return "ErrImagePull";
+        }
+        return null;
+    }
+
+    /**
+     * @param pod pod object of Kubernetes or Rancher2.x API
+     * @return failure of first failed container, null if none
+     */
+    static String check(JsonNode pod) {
+        // Rancher2.x v3 pods
+        for (JsonNode container : pod.path("containers")) {
+            String failure = check(reason(container.path("state").asText(null), container.path("transitioningMessage").asText(null)),
+                    container.path("restartCount").asInt());
+            if (failure != null) {
+                return container.path("name").asText() + ": " + failure;
+            }
+        }
+        // Kubernetes pods, eg: of watch events
+        JsonNode status = pod.path("status");
+        for (String field : new String[]{"initContainerStatuses", "containerStatuses"}) {
+            for (JsonNode containerStatus : status.path(field)) {
+                JsonNode waiting = containerStatus.path("state").path("waiting");
+                String failure = check(waiting.path("reason").asText(null), containerStatus.path("restartCount").asInt());
+                if (failure != null) {
+                    return containerStatus.path("name").asText() + ": " + failure;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param resource Kubernetes resource of workload
+     * @return message of Progressing condition if progress deadline exceeded, null if not
+     */
+    static String progressDeadlineExceeded(JsonNode resource) {
+        for (JsonNode condition : resource.path("status").path("conditions")) {
+            if ("Progressing".equals(condition.path("type").asText())
+                    && "ProgressDeadlineExceeded".equals(condition.path("reason").asText())) {
+                return condition.path("message").asText("ProgressDeadlineExceeded");
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,232 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * one page of pods collection of a workload, only id and state of each pod, failures of containers
+ * (see {@link Rancher2PodFailure}) and the next page link are kept. container failures are read from the containers[]
+ * of Rancher2.x v3 pods, status.containerStatuses of Kubernetes pods is the fallback.
+ * parsed by streaming, the other pod fields are skipped without building any tree
+ */
+final class Rancher2PodList {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final Map<String, String> states;
+    private final Map<String, String> failures;
+    private final String next;
+    private final String eTag;
+
+    private Rancher2PodList(Map<String, String> states, Map<String, String> failures, String next, String eTag) {
+        this.states = states;
+        this.failures = failures;
+        this.next = next;
+        this.eTag = eTag;
+    }
+
+    /**
+     * @return pod id to pod state, in response order
+     */
+    Map<String, String> getStates() {
+        return states;
+    }
+
+    /**
+     * @return pod id to failure of its container, only failed pods
+     */
+    Map<String, String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return url of next page, null if this is the last page
+     */
+    String getNext() {
+        return next;
+    }
+
+    /**
+     * @return ETag header of this page response, null if server didn't send it
+     */
+    String getETag() {
+        return eTag;
+    }
+
+    static Rancher2PodList parse(InputStream content, String eTag) throws IOException {
+        Map<String, String> states = new LinkedHashMap<>();
+        Map<String, String> failures = new LinkedHashMap<>();
+        String next = null;
+        try (JsonParser parser = FACTORY.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "pods collection should be an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("data".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readPod(parser, states, failures);
+                    }
+                } else if ("pagination".equals(field) && token == JsonToken.START_OBJECT) {
+                    next = readNext(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Rancher2PodList(states, failures, next, eTag);
+    }
+
+    private static String readNext(JsonParser parser) throws IOException {
+        String next = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("next".equals(field) && token == JsonToken.VALUE_STRING) {
+                next = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return next;
+    }
+
+    private static void readPod(JsonParser parser, Map<String, String> states, Map<String, String> failures) throws IOException {
+        String id = null;
+        String state = null;
+        String failure = null;
+        String statusFailure = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(field) && token == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if ("state".equals(field) && token == JsonToken.VALUE_STRING) {
+                // only a few distinct states, share them between pods
+                state = parser.getText().intern();
+            } else if ("containers".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    String containerFailure = readContainer(parser);
+                    if (failure == null) {
+                        failure = containerFailure;
+                    }
+                }
+            } else if ("status".equals(field) && token == JsonToken.START_OBJECT) {
+                statusFailure = readStatus(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (failure == null) {
+            failure = statusFailure;
+        }
+        if (id != null) {
+            states.put(id, state);
+            if (failure != null) {
+                failures.put(id, failure);
+            }
+        }
+    }
+
+    /**
+     * @return failure of container of Rancher2.x v3 pod
+     */
+    private static String readContainer(JsonParser parser) throws IOException {
+        String name = null;
+        String state = null;
+        String transitioningMessage = null;
+        int restartCount = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("name".equals(field) && token == JsonToken.VALUE_STRING) {
+                name = parser.getText();
+            } else if ("state".equals(field) && token == JsonToken.VALUE_STRING) {
+                state = parser.getText();
+            } else if ("transitioningMessage".equals(field) && token == JsonToken.VALUE_STRING) {
+                transitioningMessage = parser.getText();
+            } else if ("restartCount".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                restartCount = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        String failure = Rancher2PodFailure.check(Rancher2PodFailure.reason(state, transitioningMessage), restartCount);
+        return failure == null ? null : name + ": " + failure;
+    }
+
+    /**
+     * @return failure of first failed container in pod status
+     */
+    private static String readStatus(JsonParser parser) throws IOException {
+        String failure = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (("containerStatuses".equals(field) || "initContainerStatuses".equals(field)) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    String containerFailure = readContainerStatus(parser);
+                    if (failure == null) {
+                        failure = containerFailure;
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return failure;
+    }
+
+    private static String readContainerStatus(JsonParser parser) throws IOException {
+        String name = null;
+        String reason = null;
+        int restartCount = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("name".equals(field) && token == JsonToken.VALUE_STRING) {
+                name = parser.getText();
+            } else if ("restartCount".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                restartCount = parser.getIntValue();
+            } else if ("state".equals(field) && token == JsonToken.START_OBJECT) {
+                reason = readWaitingReason(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        String failure = Rancher2PodFailure.check(reason, restartCount);
+        return failure == null ? null : name + ": " + failure;
+    }
+
+    /**
+     * @return state.waiting.reason of container status
+     */
+    private static String readWaitingReason(JsonParser parser) throws IOException {
+        String reason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (!"waiting".equals(field) || token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String waitingField = parser.getCurrentName();
+                JsonToken waitingToken = parser.nextToken();
+                if ("reason".equals(waitingField) && waitingToken == JsonToken.VALUE_STRING) {
+                    reason = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return reason;
+    }
+}
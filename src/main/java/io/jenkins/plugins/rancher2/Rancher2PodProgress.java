@@ -0,0 +1,102 @@
+package io.jenkins.plugins.rancher2;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * rollout progress of a workload by its pods list, keeps pod states between pollings and only logs the changes:
+ * pods added, terminated or changing state, at most {@link #MAX_LOGGED_PODS} of each, then old/new/ready counts.
+ * so build log of a polling doesn't grow with pods count
+ */
+final class Rancher2PodProgress {
+    /**
+     * pod ids logged for each kind of change of one polling, the others are only counted
+     */
+    static final int MAX_LOGGED_PODS = Integer.getInteger(Rancher2PodProgress.class.getName() + ".maxLoggedPods", 10);
+
+    private final String url;
+    // pod id to state of last polling, null before first polling
+    private Map<String, String> states = null;
+    private String lastCounts = null;
+
+    /**
+     * @param url workload API url
+     */
+    Rancher2PodProgress(String url) {
+        this.url = url;
+    }
+
+    /**
+     * log the pods before redeploy, only counted
+     * @param states pod id to pod state
+     */
+    synchronized void snapshot(PrintStream logger, Map<String, String> states) {
+        this.states = new HashMap<>(states);
+        logger.println(Messages.Rancher2RedeployBuilder_podsSnapshot(url, states.size()));
+    }
+
+    /**
+     * log changes since last polling
+     * @param states pod id to pod state
+     * @param lastDeployPods pod ids before redeploy
+     */
+    synchronized void update(PrintStream logger, Map<String, String> states, Set<String> lastDeployPods) {
+        Map<String, String> last = this.states == null ? new HashMap<>() : this.states;
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        int old = 0;
+        int ready = 0;
+        for (Map.Entry<String, String> pod : states.entrySet()) {
+            String podId = pod.getKey();
+            if (!last.containsKey(podId)) {
+                added.add(podId + " " + pod.getValue());
+            } else if (!Objects.equals(last.get(podId), pod.getValue())) {
+                changed.add(podId + " " + last.get(podId) + " -> " + pod.getValue());
+            }
+            if (lastDeployPods.contains(podId)) {
+                old++;
+            } else if ("running".equalsIgnoreCase(pod.getValue())) {
+                ready++;
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String podId : last.keySet()) {
+            if (!states.containsKey(podId)) {
+                removed.add(podId);
+            }
+        }
+        this.states = new HashMap<>(states);
+
+        if (!added.isEmpty()) {
+            logger.println(Messages.Rancher2RedeployBuilder_podsAdded(url, join(added)));
+        }
+        if (!removed.isEmpty()) {
+            logger.println(Messages.Rancher2RedeployBuilder_podsTerminated(url, join(removed)));
+        }
+        if (!changed.isEmpty()) {
+            logger.println(Messages.Rancher2RedeployBuilder_podsChanged(url, join(changed)));
+        }
+        // an unchanged polling logs nothing
+        String counts = old + "/" + (states.size() - old) + "/" + ready;
+        if (!counts.equals(lastCounts)) {
+            lastCounts = counts;
+            logger.println(Messages.Rancher2RedeployBuilder_podsProgress(url, old, states.size() - old, ready));
+        }
+    }
+
+    /**
+     * @return first {@link #MAX_LOGGED_PODS} items joined, and count of the others
+     */
+    static String join(List<String> items) {
+        if (items.size() <= MAX_LOGGED_PODS) {
+            return String.join(", ", items);
+        }
+        return String.join(", ", items.subList(0, MAX_LOGGED_PODS)) + " " +
+                Messages.Rancher2RedeployBuilder_podsMore(items.size() - MAX_LOGGED_PODS);
+    }
+}
@@ -0,0 +1,265 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.AbortException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * wait rollout finish by Kubernetes pods watch stream, through Rancher2.x cluster proxy
+ * {endpoint without /v3}/k8s/clusters/{clusterId}/api/v1/namespaces/{namespace}/pods?watch=true&labelSelector={selector}.
+ * the selector is spec.selector.matchLabels of the workload, or the workloadselector label Rancher puts on pods of
+ * workloads it manages, and a pod is only taken as the workload's if it is owned by the workload or its ReplicaSet.
+ * a watch ended by its timeout is reopened from the resourceVersion of the last event, so no event is lost in between.
+ * if that version is too old (410 Gone), the watch is reopened from now and the current pods are checked again
+ */
+class Rancher2PodWatcher {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * max seconds of one watch request, watch is reopened after it, so build abort is checked
+     */
+    static final int WATCH_TIMEOUT = Integer.getInteger(Rancher2PodWatcher.class.getName() + ".watchTimeout", 60);
+    private static final String WORKLOAD_SELECTOR = "workload.user.cattle.io/workloadselector";
+
+    interface PodsLoader {
+        Set<String> load() throws IOException, InterruptedException;
+    }
+
+    private interface PodsCheck {
+        boolean check() throws IOException, InterruptedException;
+    }
+
+    private interface EventCheck {
+        /**
+         * @throws AbortException if a pod failed
+         */
+        boolean check(JsonNode event) throws AbortException;
+    }
+
+    private final PrintStream logger;
+    private final CloseableHttpClient client;
+    private final String bearerToken;
+    private final String url;
+    private final String watchUrl;
+    private final String namespace;
+    private final String workloadName;
+    // resourceVersion of the last event, the next watch resumes from it, null to start from now with a full check
+    private String resourceVersion = null;
+
+    /**
+     * @param endpoint rancher API url, eg: https://rancher.example.com/v3
+     * @param url workload API url
+     * @param matchLabels spec.selector.matchLabels of the Kubernetes workload, null if it isn't available
+     */
+    Rancher2PodWatcher(PrintStream logger, CloseableHttpClient client, String bearerToken, String endpoint, String url,
+                       JsonNode matchLabels) throws UnsupportedEncodingException {
+        this.logger = logger;
+        this.client = client;
+        this.bearerToken = bearerToken;
+        this.url = url;
+
+        String server = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        String[] urlInfo = url.split("\\/project\\/");
+        String[] workloadInfo = urlInfo.length == 2 ? urlInfo[1].split("\\/workloads\\/") : new String[0];
+        String[] workloadIds = workloadInfo.length == 2 ? workloadInfo[1].split(":") : new String[0];
+        if (server.endsWith("/v3") && workloadIds.length == 3) {
+            String clusterId = workloadInfo[0].split(":")[0];
+            this.namespace = workloadIds[1];
+            this.workloadName = workloadIds[2];
+            String selector = labelSelector(matchLabels, workloadIds[0], namespace, workloadName);
+            this.watchUrl = server.substring(0, server.length() - 3) + "/k8s/clusters/" + clusterId + "/api/v1/namespaces/" + namespace
+                    + "/pods?watch=true&labelSelector=" + URLEncoder.encode(selector, "UTF-8");
+        } else {
+            this.namespace = null;
+            this.workloadName = null;
+            this.watchUrl = null;
+        }
+    }
+
+    /**
+     * @param matchLabels spec.selector.matchLabels of the Kubernetes workload, null or empty to use the Rancher label
+     * @param type workload type of Rancher workload id, eg: deployment
+     * @return label selector of workload pods, eg: app=nginx,tier=web
+     */
+    static String labelSelector(JsonNode matchLabels, String type, String namespace, String name) {
+        StringBuilder selector = new StringBuilder();
+        if (matchLabels != null) {
+            Iterator<Map.Entry<String, JsonNode>> labels = matchLabels.fields();
+            while (labels.hasNext()) {
+                Map.Entry<String, JsonNode> label = labels.next();
+                if (selector.length() > 0) {
+                    selector.append(',');
+                }
+                selector.append(label.getKey()).append('=').append(label.getValue().asText());
+            }
+        }
+        if (selector.length() == 0) {
+            selector.append(WORKLOAD_SELECTOR).append('=').append(type).append('-').append(namespace).append('-').append(name);
+        }
+        return selector.toString();
+    }
+
+    /**
+     * selectors of workloads may overlap, so the owner is checked too: pods of a deployment are owned by its
+     * ReplicaSet {name}-{pod-template-hash}, pods of a cronjob by its Job {name}-{schedule time}, others by the workload
+     * @param name workload name
+     * @return true if pod belongs to workload
+     */
+    static boolean isOwnedBy(JsonNode pod, String name) {
+        JsonNode metadata = pod.path("metadata");
+        String hash = metadata.path("labels").path("pod-template-hash").asText();
+        for (JsonNode owner : metadata.path("ownerReferences")) {
+            String ownerName = owner.path("name").asText();
+            if (ownerName.equals(name)
+                    || (!hash.isEmpty() && ownerName.equals(name + "-" + hash))
+                    || ("Job".equals(owner.path("kind").asText()) && ownerName.startsWith(name + "-"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param lastDeployPods pod ids before redeploy
+     * @param deadline timeout time millis
+     * @param loader load current workload pod ids
+     * @return true if all pods deleted, false if watch is unavailable or deadline reached
+     */
+    boolean waitPodsDeleted(Set<String> lastDeployPods, long deadline, PodsLoader loader) throws IOException, InterruptedException {
+        Set<String> remaining = new HashSet<>(lastDeployPods);
+        return watch(deadline, () -> {
+            remaining.retainAll(loader.load());
+            return remaining.isEmpty();
+        }, event -> {
+            String name = event.path("object").path("metadata").path("name").asText();
+            String podId = namespace + ":" + name;
+            if (!"DELETED".equals(event.path("type").asText())) {
+                if (!lastDeployPods.contains(podId) && isOwnedBy(event.path("object"), workloadName)) {
+                    checkFailure(podId, event.path("object"));
+                }
+                return false;
+            }
+            if (remaining.remove(podId)) {
+                logger.println(Messages.Rancher2RedeployBuilder_watchPodDeleted(podId));
+            }
+            return remaining.isEmpty();
+        });
+    }
+
+    /**
+     * @param deadline timeout time millis
+     * @param loader load current running workload pod ids
+     * @return true if any pod running, false if watch is unavailable or deadline reached
+     */
+    boolean waitPodRunning(long deadline, PodsLoader loader) throws IOException, InterruptedException {
+        return watch(deadline, () -> !loader.load().isEmpty(), event -> {
+            JsonNode pod = event.path("object");
+            String name = pod.path("metadata").path("name").asText();
+            if ("DELETED".equals(event.path("type").asText()) || !isOwnedBy(pod, workloadName)) {
+                return false;
+            }
+            checkFailure(namespace + ":" + name, pod);
+            return "Running".equals(pod.path("status").path("phase").asText());
+        });
+    }
+
+    private static void checkFailure(String podId, JsonNode pod) throws AbortException {
+        String failure = Rancher2PodFailure.check(pod);
+        if (failure != null) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_podFailed(podId, failure));
+        }
+    }
+
+    private boolean watch(long deadline, PodsCheck check, EventCheck finished) throws IOException, InterruptedException {
+        if (watchUrl == null) {
+            logger.println(Messages.Rancher2RedeployBuilder_watchUnavailable(Messages.Rancher2RedeployBuilder_badWorkload(url)));
+            return false;
+        }
+
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            int timeout = (int) Math.min(WATCH_TIMEOUT, Math.max(1, remaining / 1000));
+            boolean resumed = resourceVersion != null;
+            HttpUriRequest request = RequestBuilder.get(watchUrl + "&allowWatchBookmarks=true&timeoutSeconds=" + timeout
+                            + (resumed ? "&resourceVersion=" + URLEncoder.encode(resourceVersion, "UTF-8") : ""))
+                    .addHeader("Authorization", "Bearer " + bearerToken)
+                    .addHeader("Accept", "application/json")
+                    .setConfig(RequestConfig.copy(ClientBuilder.REQUEST_CONFIG).setSocketTimeout((timeout + 10) * 1000).build())
+                    .build();
+
+            try (CloseableHttpResponse response = client.execute(request)) {
+                if (response.getStatusLine().getStatusCode() == 410 && resumed) {
+                    EntityUtils.consume(response.getEntity());
+                    expired();
+                    continue;
+                }
+                if (response.getStatusLine().getStatusCode() != 200) {
+                    logger.println(Messages.Rancher2RedeployBuilder_watchUnavailable(Messages.Rancher2RedeployBuilder_badResponse(
+                            response.getStatusLine().getStatusCode(), EntityUtils.toString(response.getEntity()))));
+                    return false;
+                }
+                try {
+                    // events happened before a watch from now was opened are not replayed, so check current pods once
+                    if (!resumed && check.check()) {
+                        return true;
+                    }
+                    MappingIterator<JsonNode> events = MAPPER.readerFor(JsonNode.class).readValues(response.getEntity().getContent());
+                    while (events.hasNextValue()) {
+                        JsonNode event = events.nextValue();
+                        String type = event.path("type").asText();
+                        if ("ERROR".equals(type)) {
+                            if (event.path("object").path("code").asInt() == 410) {
+                                expired();
+                                break;
+                            }
+                            logger.println(Messages.Rancher2RedeployBuilder_watchUnavailable(event.path("object").path("message").asText()));
+                            return false;
+                        }
+                        String version = event.path("object").path("metadata").path("resourceVersion").asText(null);
+                        if (version != null) {
+                            resourceVersion = version;
+                        }
+                        if (!"BOOKMARK".equals(type) && finished.check(event)) {
+                            return true;
+                        }
+                    }
+                } finally {
+                    // drop the connection, closing an unfinished watch stream would wait for all remaining events
+                    request.abort();
+                }
+            } catch (AbortException e) {
+                throw e;
+            } catch (IOException e) {
+                logger.println(Messages.Rancher2RedeployBuilder_watchUnavailable(e.getMessage()));
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * resourceVersion of the last event is too old to resume from, events in between may be lost
+     */
+    private void expired() {
+        logger.println(Messages.Rancher2RedeployBuilder_watchExpired(resourceVersion));
+        resourceVersion = null;
+    }
+}
@@ -0,0 +1,105 @@
+package io.jenkins.plugins.rancher2;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * delays between polling requests of one rollout, never sleep past the polling deadline
+ * <ul>
+ *     <li>fixed: wait 5 seconds, then poll every 3 seconds</li>
+ *     <li>backoff: wait 1 second, then double the delay up to 15 seconds with random jitter, reset when the rollout progressed</li>
+ * </ul>
+ */
+class Rancher2PollingScheduler implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final long BACKOFF_INITIAL = Long.getLong(Rancher2PollingScheduler.class.getName() + ".backoffInitial", 1000);
+    static final long BACKOFF_MAX = Long.getLong(Rancher2PollingScheduler.class.getName() + ".backoffMax", 15000);
+
+    private final boolean backoff;
+    private final long startTime;
+    private final long deadline;
+    private int attempt = 0;
+
+    Rancher2PollingScheduler(String strategy, int timeout) {
+        this(strategy, System.currentTimeMillis(), timeout);
+    }
+
+    /**
+     * @param startTime time millis the rollout started, eg: of a resumed rollout
+     */
+    Rancher2PollingScheduler(String strategy, long startTime, int timeout) {
+        this.backoff = Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF.equals(strategy);
+        this.startTime = startTime;
+        this.deadline = startTime + ((long) timeout) * 1000;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return seconds since polling started
+     */
+    int elapsed() {
+        return (int) ((System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    boolean hasTime() {
+        return System.currentTimeMillis() < deadline;
+    }
+
+    /**
+     * wait before the first polling, the redeploy request has just been accepted
+     */
+    void waitFirst() throws InterruptedException {
+        sleep(firstDelay());
+    }
+
+    /**
+     * wait before next polling
+     */
+    void waitNext() throws InterruptedException {
+        sleep(nextDelay());
+    }
+
+    /**
+     * @return millis before the first polling, never past deadline
+     */
+    long firstDelay() {
+        return capped(backoff ? BACKOFF_INITIAL : 5000);
+    }
+
+    /**
+     * @return millis before next polling, never past deadline
+     */
+    long nextDelay() {
+        if (!backoff) {
+            return capped(3000);
+        }
+        long delay = Math.min(BACKOFF_MAX, BACKOFF_INITIAL << Math.min(attempt, 16));
+        attempt++;
+        // equal jitter, spread polling of concurrent builds
+        return capped(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+
+    /**
+     * rollout progressed, poll fast again
+     */
+    void reset() {
+        attempt = 0;
+    }
+
+    private long capped(long delay) {
+        return Math.max(0, Math.min(delay, deadline - System.currentTimeMillis()));
+    }
+
+    private void sleep(long delay) throws InterruptedException {
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+}
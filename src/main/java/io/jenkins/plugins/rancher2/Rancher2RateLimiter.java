@@ -0,0 +1,226 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * controller-wide token bucket of one Rancher2.x endpoint, shared by all builds.
+ * every request takes a token before it is sent, requests without token are queued in arrival order.
+ * a 429 response pauses the whole endpoint for Retry-After seconds, then the request is retried
+ */
+final class Rancher2RateLimiter implements HttpRequestInterceptor, ServiceUnavailableRetryStrategy {
+    private static final Logger LOGGER = Logger.getLogger(Rancher2RateLimiter.class.getName());
+
+    /**
+     * requests per second of each endpoint, 0 to disable limiting
+     */
+    static final double RATE = Double.parseDouble(System.getProperty(Rancher2RateLimiter.class.getName() + ".rate", "20"));
+    /**
+     * max requests sent at once after the endpoint was idle
+     */
+    static final int BURST = Integer.getInteger(Rancher2RateLimiter.class.getName() + ".burst", 40);
+    /**
+     * retries of a request answered by 429
+     */
+    static final int MAX_RETRIES = Integer.getInteger(Rancher2RateLimiter.class.getName() + ".maxRetries", 3);
+    /**
+     * max seconds to honor Retry-After, also used when 429 has no Retry-After
+     */
+    static final int MAX_RETRY_AFTER = Integer.getInteger(Rancher2RateLimiter.class.getName() + ".maxRetryAfter", 60);
+
+    private static final ConcurrentMap<String, Rancher2RateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final String endpoint;
+    private final double rate;
+    private final int burst;
+
+    // guarded by this
+    private double tokens;
+    private long refillTime;
+    private long pausedUntil;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private Rancher2RateLimiter(String endpoint, double rate, int burst) {
+        this.endpoint = endpoint;
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refillTime = System.nanoTime();
+        this.pausedUntil = refillTime;
+    }
+
+    /**
+     * @return limiter of rancher endpoint
+     */
+    static Rancher2RateLimiter get(String endpoint) {
+        return LIMITERS.computeIfAbsent(endpoint, k -> new Rancher2RateLimiter(k, RATE, BURST));
+    }
+
+    /**
+     * @return stats of all limiters
+     */
+    static Map<String, Stats> getAllStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (Map.Entry<String, Rancher2RateLimiter> entry : LIMITERS.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    Stats getStats() {
+        return new Stats(queued.get(), requests.get(), waited.get(), waitMillis.get(), maxWaitMillis.get(), throttled.get());
+    }
+
+    /**
+     * take a token, wait in queue until it is available
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        requests.incrementAndGet();
+        if (waitNanos <= 0) {
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } finally {
+            queued.decrementAndGet();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        waited.incrementAndGet();
+        waitMillis.addAndGet(millis);
+        maxWaitMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    /**
+     * @return nanos to wait for the reserved token, earlier callers always get earlier tokens
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        // nanoTime may be negative, only compare differences
+        long wait = Math.max(0, pausedUntil - now);
+        if (rate > 0) {
+            tokens = Math.min(burst, tokens + (now - refillTime) * rate / TimeUnit.SECONDS.toNanos(1));
+            refillTime = now;
+            // tokens below zero are owed to queued requests
+            tokens -= 1;
+            if (tokens < 0) {
+                wait = Math.max(wait, (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate));
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * stop sending requests to endpoint for a while
+     */
+    private synchronized void pause(long millis) {
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws InterruptedIOException {
+        try {
+            acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for rate limit of " + endpoint);
+        }
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+        if (response.getStatusLine().getStatusCode() != 429) {
+            return false;
+        }
+        throttle(response);
+        // the retried request waits for the pause in process()
+        return executionCount <= MAX_RETRIES;
+    }
+
+    /**
+     * pause the endpoint for Retry-After of a 429 response
+     */
+    void throttle(HttpResponse response) {
+        throttled.incrementAndGet();
+        long retryAfter = retryAfter(response.getFirstHeader("Retry-After"));
+        pause(retryAfter);
+        LOGGER.log(Level.FINE, "rancher endpoint {0} throttled, pause {1}ms", new Object[]{endpoint, retryAfter});
+    }
+
+    @Override
+    public long getRetryInterval() {
+        return 0;
+    }
+
+    /**
+     * @return millis of Retry-After, in seconds or http date
+     */
+    static long retryAfter(Header header) {
+        long maxMillis = TimeUnit.SECONDS.toMillis(MAX_RETRY_AFTER);
+        if (header == null) {
+            return maxMillis;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Math.min(maxMillis, Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value))));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            if (date == null) {
+                return maxMillis;
+            }
+            return Math.min(maxMillis, Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+    }
+
+    static final class Stats {
+        final int queued;
+        final long requests;
+        final long waited;
+        final long waitMillis;
+        final long maxWaitMillis;
+        final long throttled;
+
+        private Stats(int queued, long requests, long waited, long waitMillis, long maxWaitMillis, long throttled) {
+            this.queued = queued;
+            this.requests = requests;
+            this.waited = waited;
+            this.waitMillis = waitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.throttled = throttled;
+        }
+
+        long averageWaitMillis() {
+            return waited == 0 ? 0 : waitMillis / waited;
+        }
+
+        @Override
+        public String toString() {
+            return "queued=" + queued + ", requests=" + requests + ", waited=" + waited +
+                    ", avgWaitMs=" + averageWaitMillis() + ", maxWaitMs=" + maxWaitMillis + ", throttled=" + throttled;
+        }
+    }
+}
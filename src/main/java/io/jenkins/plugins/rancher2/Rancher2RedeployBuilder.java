@@ -4,29 +4,25 @@ import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.*;
 import hudson.model.Item;
 import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
 import hudson.model.AbstractProject;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.util.ListBoxModel;
-import io.jenkins.cli.shaded.org.apache.commons.io.IOUtils;
 import jenkins.model.Jenkins;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.methods.RequestBuilder;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.pool.PoolStats;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -34,22 +30,27 @@ import org.kohsuke.stapler.QueryParameter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 import jenkins.tasks.SimpleBuildStep;
 import org.jenkinsci.Symbol;
 
 public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep {
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-
+    public static final String DEPLOY_FINISH_MODE_POLLING = "polling";
+    public static final String DEPLOY_FINISH_MODE_WATCH = "watch";
+    public static final String DEPLOY_FINISH_MODE_STATUS = "status";
+    public static final String POLLING_STRATEGY_FIXED = "fixed";
+    public static final String POLLING_STRATEGY_BACKOFF = "backoff";
+    public static final String UPDATE_MODE_PUT = "put";
+    public static final String UPDATE_MODE_PATCH = "patch";
+    public static final String FAILURE_POLICY_BEST_EFFORT = "bestEffort";
+    public static final String FAILURE_POLICY_FAIL_FAST = "failFast";
     @Nonnull
     private final String credential;
     @Nonnull
@@ -58,8 +59,21 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
     private final boolean alwaysPull;
     private boolean pollingDeployFinish = false;
     private int pollingDeployTimeout = 300;
+    private String deployFinishMode = DEPLOY_FINISH_MODE_POLLING;
+    private String pollingStrategy = POLLING_STRATEGY_FIXED;
+    private String updateMode = UPDATE_MODE_PUT;
     private String templateUrl = null;
     private String templateVars = null;
+    private List<Rancher2Workload> workloads = null;
+    private int maxParallel = 4;
+    private List<Rancher2Cluster> clusters = null;
+    private int maxParallelClusters = 4;
+    private String failurePolicy = FAILURE_POLICY_BEST_EFFORT;
+    private boolean runOnAgent = false;
+    private String selectorProject = null;
+    private String selectorNamespace = null;
+    private String labelSelector = null;
+    private boolean force = false;
 
     @DataBoundConstructor
     public Rancher2RedeployBuilder(
@@ -84,6 +98,21 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
         this.pollingDeployTimeout = pollingDeployTimeout == null ? 300 : pollingDeployTimeout;
     }
 
+    @DataBoundSetter
+    public void setDeployFinishMode(@Nullable String deployFinishMode) {
+        this.deployFinishMode = StringUtils.isBlank(deployFinishMode) ? DEPLOY_FINISH_MODE_POLLING : deployFinishMode;
+    }
+
+    @DataBoundSetter
+    public void setPollingStrategy(@Nullable String pollingStrategy) {
+        this.pollingStrategy = StringUtils.isBlank(pollingStrategy) ? POLLING_STRATEGY_FIXED : pollingStrategy;
+    }
+
+    @DataBoundSetter
+    public void setUpdateMode(@Nullable String updateMode) {
+        this.updateMode = StringUtils.isBlank(updateMode) ? UPDATE_MODE_PUT : updateMode;
+    }
+
     @DataBoundSetter
     public void setTemplateUrl(@Nullable String templateUrl) {
         this.templateUrl = templateUrl;
@@ -94,6 +123,56 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
         this.templateVars = templateVars;
     }
 
+    @DataBoundSetter
+    public void setWorkloads(@Nullable List<Rancher2Workload> workloads) {
+        this.workloads = workloads;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallel(@Nullable Integer maxParallel) {
+        this.maxParallel = maxParallel == null || maxParallel <= 0 ? 4 : maxParallel;
+    }
+
+    @DataBoundSetter
+    public void setClusters(@Nullable List<Rancher2Cluster> clusters) {
+        this.clusters = clusters;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallelClusters(@Nullable Integer maxParallelClusters) {
+        this.maxParallelClusters = maxParallelClusters == null || maxParallelClusters <= 0 ? 4 : maxParallelClusters;
+    }
+
+    @DataBoundSetter
+    public void setFailurePolicy(@Nullable String failurePolicy) {
+        this.failurePolicy = StringUtils.isBlank(failurePolicy) ? FAILURE_POLICY_BEST_EFFORT : failurePolicy;
+    }
+
+    @DataBoundSetter
+    public void setRunOnAgent(@Nullable Boolean runOnAgent) {
+        this.runOnAgent = runOnAgent != null && runOnAgent;
+    }
+
+    @DataBoundSetter
+    public void setSelectorProject(@Nullable String selectorProject) {
+        this.selectorProject = selectorProject;
+    }
+
+    @DataBoundSetter
+    public void setSelectorNamespace(@Nullable String selectorNamespace) {
+        this.selectorNamespace = selectorNamespace;
+    }
+
+    @DataBoundSetter
+    public void setLabelSelector(@Nullable String labelSelector) {
+        this.labelSelector = labelSelector;
+    }
+
+    @DataBoundSetter
+    public void setForce(@Nullable Boolean force) {
+        this.force = force != null && force;
+    }
+
     @Nonnull
     public String getCredential() {
         return credential;
@@ -120,6 +199,18 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
         return pollingDeployTimeout;
     }
 
+    public String getDeployFinishMode() {
+        return deployFinishMode;
+    }
+
+    public String getPollingStrategy() {
+        return pollingStrategy;
+    }
+
+    public String getUpdateMode() {
+        return updateMode;
+    }
+
     public String getTemplateUrl() {
         return templateUrl;
     }
@@ -128,326 +219,331 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
         return templateVars;
     }
 
-    private Set<String> getWorkloadPods(PrintStream logger, CloseableHttpClient client, Rancher2Credentials credential, String url, String selectedState) throws InterruptedException, IOException {
-        String[] urlInfo = url.split("\\/workloads\\/");
-        if(urlInfo.length != 2) {
-            throw new AbortException(Messages.Rancher2RedeployBuilder_badWorkload(url));
-        }
-
-        HttpUriRequest request = RequestBuilder.get(urlInfo[0] + "/pods?workloadId=" + URLEncoder.encode(urlInfo[1], "UTF-8"))
-                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
-                .addHeader("Accept", "application/json")
-                .build();
-
-        CloseableHttpResponse response = client.execute(request);
-        if (response.getStatusLine().getStatusCode() != 200) {
-            throw new AbortException(
-                    Messages.Rancher2RedeployBuilder_badResponse(
-                            response.getStatusLine().getStatusCode(),
-                            EntityUtils.toString(response.getEntity())
-                    )
-            );
-        }
-
-        Set<String> workloadPods = new HashSet<>();
-        JsonNode root = MAPPER.readTree(response.getEntity().getContent());
-        JsonNode pods = root.get("data");
-        for (int i = 0; pods != null && i < pods.size(); i++) {
-            JsonNode pod = pods.get(i);
-            String podState = pod.get("state").asText();
-            if (StringUtils.isNotBlank(selectedState) && StringUtils.isNotBlank(podState) &&
-                    !Objects.equals(podState.toLowerCase(), selectedState)) continue;
-            String podID = pod.get("id").asText();
-            if (podID != null) {
-                workloadPods.add(podID);
-            }
-        }
-        logger.println(Messages._Rancher2RedeployBuilder_loadWorkloadPodsSuccess(workloadPods.stream().collect(Collectors.joining(","))));
-        return workloadPods;
+    public List<Rancher2Workload> getWorkloads() {
+        return workloads;
     }
 
-    private void pollingCheckPodsDeployFinish(PrintStream logger, CloseableHttpClient client, Rancher2Credentials credential, String url, Set<String> lastDeployPods) throws InterruptedException, IOException {
-        long startTime = (new Date()).getTime();
-        Thread.sleep(5000);
-        while (((new Date()).getTime() - startTime) < ((long) pollingDeployTimeout) * 1000) {
-            Set<String> deployPods = getWorkloadPods(logger, client, credential, url, null);
-            deployPods.retainAll(lastDeployPods);
-            if(deployPods.size() <= 0) {
-                return;
-            }
+    public int getMaxParallel() {
+        return maxParallel;
+    }
 
-            Thread.sleep(3000);
-        }
-        throw new AbortException(Messages.Rancher2RedeployBuilder_pollingDeployTimeout((int)(((new Date()).getTime() - startTime)/1000)));
+    public List<Rancher2Cluster> getClusters() {
+        return clusters;
     }
 
-    private void pollingWaitPodsDeployFinish(PrintStream logger, CloseableHttpClient client, Rancher2Credentials credential, String url) throws InterruptedException, IOException {
-        long startTime = (new Date()).getTime();
-        Thread.sleep(5000);
-        while (((new Date()).getTime() - startTime) < ((long) pollingDeployTimeout) * 1000) {
-            Set<String> deployPods = getWorkloadPods(logger, client, credential, url, "running");
-            if(deployPods.size() > 0) {
-                return;
-            }
+    public int getMaxParallelClusters() {
+        return maxParallelClusters;
+    }
 
-            Thread.sleep(3000);
-        }
-        throw new AbortException(Messages.Rancher2RedeployBuilder_pollingDeployTimeout((int)(((new Date()).getTime() - startTime)/1000)));
+    public String getFailurePolicy() {
+        return failurePolicy;
+    }
+
+    public boolean isRunOnAgent() {
+        return runOnAgent;
+    }
+
+    public String getSelectorProject() {
+        return selectorProject;
+    }
+
+    public String getSelectorNamespace() {
+        return selectorNamespace;
+    }
+
+    public String getLabelSelector() {
+        return labelSelector;
+    }
+
+    public boolean isForce() {
+        return force;
     }
 
     @Override
     public void perform(@NonNull Run<?, ?> run, @NonNull FilePath workspace, @NonNull EnvVars envVars, @NonNull Launcher launcher, @NonNull TaskListener listener) throws InterruptedException, IOException {
-        PrintStream logger = listener.getLogger();
-        String credentialId = envVars.expand(this.credential);
+        Rancher2DeployMetrics metrics = new Rancher2DeployMetrics();
+        run.addAction(metrics);
+
+        List<Rancher2Cluster> deployClusters = deployClusters(credential, clusters);
+        if (deployClusters.size() == 1) {
+            deployCluster(run, listener, envVars, workspace, deployClusters.get(0), metrics);
+        } else {
+            parallelDeployClusters(run, listener.getLogger(), envVars, workspace, deployClusters, metrics);
+        }
+    }
 
+    /**
+     * redeploy all workloads to one cluster, on the agent of workspace if runOnAgent
+     */
+    private void deployCluster(Run<?, ?> run, TaskListener listener, EnvVars envVars, FilePath workspace, Rancher2Cluster cluster, Rancher2DeployMetrics metrics) throws InterruptedException, IOException {
+        String credentialId = envVars.expand(cluster.getCredential());
+        long startTime = System.currentTimeMillis();
         Rancher2Credentials credential = CredentialsProvider.findCredentialById(
                 credentialId,
                 Rancher2Credentials.class,
                 run,
                 (DomainRequirement) null);
+        metrics.record(Rancher2Metrics.PHASE_CREDENTIAL, startTime);
         if (credential == null) {
             throw new AbortException(Messages.Rancher2RedeployBuilder_missCredential(credentialId));
         }
 
-        String endpoint = credential.getEndpoint();
-        if (endpoint.endsWith("/")) {
-            endpoint = endpoint.substring(0, endpoint.length() - 1);
-        }
-        String url = endpoint + envVars.expand(workload);
-        if (url.startsWith("/p/")) {
-            url = url.replaceFirst("/p/", "/project/").replaceFirst("/workload/", "/workloads/");
+        Rancher2WorkloadSelector selector = Rancher2WorkloadSelector.of(selectorProject, selectorNamespace, labelSelector, images);
+        List<Rancher2Workload> deployWorkloads = deployWorkloads(workload, images, workloads, selector != null);
+        boolean failFast = FAILURE_POLICY_FAIL_FAST.equals(failurePolicy);
+        if (runOnAgent && workspace.isRemote()) {
+            listener.getLogger().println(Messages.Rancher2RedeployBuilder_runOnAgent(cluster.getName()));
+            try {
+                metrics.merge(workspace.act(new Rancher2RemoteDeploy(listener, envVars, workspace, credential, cluster,
+                        selector, deployWorkloads, getDeployConfig(), maxParallel, failFast)));
+            } catch (Rancher2RemoteDeploy.Failure e) {
+                // timings of a failed deploy are kept too
+                metrics.merge(e.metrics);
+                throw e.unwrap();
+            }
+        } else {
+            redeployWorkloads(listener.getLogger(), envVars, workspace, credential, cluster, selector, deployWorkloads, getDeployConfig(),
+                    maxParallel, failFast, metrics);
         }
+    }
 
-        Set<String> currentDeployPods = null;
-        try (CloseableHttpClient client = ClientBuilder.create(endpoint, credential.isTrustCert())) {
-            if(pollingDeployFinish) {
-                currentDeployPods = getWorkloadPods(logger, client, credential, url, null);
+    /**
+     * redeploy workloads of one cluster by the pooled client of current JVM, controller or agent
+     * @param workspace build workspace to read file templates from, null to read from controller
+     * @param selector selects more workloads from project, null if selector mode is off
+     */
+    static void redeployWorkloads(PrintStream logger, EnvVars envVars, FilePath workspace, Rancher2Credentials credential,
+                                  Rancher2Cluster cluster, Rancher2WorkloadSelector selector, List<Rancher2Workload> deployWorkloads,
+                                  Rancher2DeployConfig config, int maxParallel, boolean failFast, Rancher2DeployMetrics metrics) throws InterruptedException, IOException {
+        String endpoint = endpoint(credential);
+
+        // shared pooled client, keep-alive connections are reused by following builds
+        CloseableHttpClient client = ClientBuilder.get(endpoint, credential.isTrustCert());
+        // workload url to workload of list response
+        Map<String, JsonNode> listed = new HashMap<>();
+        if (selector != null) {
+            deployWorkloads = new ArrayList<>(deployWorkloads);
+            long startTime = System.currentTimeMillis();
+            for (Rancher2WorkloadSelector.Selected selected : selector.select(logger, client, envVars, credential, cluster)) {
+                deployWorkloads.add(new Rancher2Workload(selected.workload, selected.images));
+                listed.put(workloadUrl(endpoint, selected.workload), selected.resource);
             }
+            metrics.record(Rancher2Metrics.PHASE_SELECT, startTime);
+        }
+        if (deployWorkloads.size() == 1) {
+            String url = workloadUrl(endpoint, cluster.workload(envVars.expand(deployWorkloads.get(0).getWorkload())));
+            new Rancher2WorkloadDeployer(config, logger, client, envVars, workspace, credential, url, deployWorkloads.get(0).getImages(),
+                    metrics.addWorkload(url)).preload(listed.get(url)).async(ClientBuilder.async(endpoint, credential.isTrustCert())).deploy();
+        } else {
+            parallelDeploy(logger, client, envVars, workspace, credential, endpoint, cluster, deployWorkloads, listed, config, maxParallel, failFast, metrics);
+        }
+        logger.println(Messages._Rancher2RedeployBuilder_success());
+        PoolStats poolStats = ClientBuilder.getPoolStats(endpoint, credential.isTrustCert());
+        if (poolStats != null) {
+            logger.println(Messages.Rancher2RedeployBuilder_poolStats(
+                    poolStats.getLeased(), poolStats.getAvailable(), poolStats.getPending(), poolStats.getMax()));
+        }
+        Rancher2RateLimiter.Stats rateLimitStats = Rancher2RateLimiter.get(endpoint).getStats();
+        logger.println(Messages.Rancher2RedeployBuilder_rateLimitStats(rateLimitStats.queued, rateLimitStats.requests,
+                rateLimitStats.waited, rateLimitStats.averageWaitMillis(), rateLimitStats.maxWaitMillis, rateLimitStats.throttled));
+        Rancher2Transfer.Stats transferStats = Rancher2Transfer.get(endpoint).getStats();
+        logger.println(Messages.Rancher2RedeployBuilder_transferStats(transferStats.receivedWire, transferStats.receivedDecoded,
+                transferStats.sentWire, transferStats.sentDecoded));
+    }
 
-            if (StringUtils.isBlank(images)) {
-                putActionRedeploy(logger, client, envVars, credential, url);
-            } else {
-                putConfigRedeploy(logger, client, envVars, credential, url);
-            }
+    /**
+     * redeploy workloads concurrently, at most maxParallel in flight.
+     * each workload logs into its own buffer, which is copied to build log when it finished
+     */
+    private static void parallelDeploy(PrintStream logger, CloseableHttpClient client, EnvVars envVars, FilePath workspace, Rancher2Credentials credential, String endpoint, Rancher2Cluster cluster, List<Rancher2Workload> deployWorkloads, Map<String, JsonNode> listed, Rancher2DeployConfig config, int maxParallel, boolean failFast, Rancher2DeployMetrics metrics) throws InterruptedException, IOException {
+        Rancher2AsyncClient asyncClient = ClientBuilder.async(endpoint, credential.isTrustCert());
+        Map<String, ParallelTask> tasks = new LinkedHashMap<>();
+        for (Rancher2Workload deployWorkload : deployWorkloads) {
+            String url = workloadUrl(endpoint, cluster.workload(envVars.expand(deployWorkload.getWorkload())));
+            Rancher2DeployMetrics.Workload workloadMetrics = metrics.addWorkload(url);
+            tasks.put(url, output -> new Rancher2WorkloadDeployer(config, new PrintStream(output, true, "UTF-8"), client, envVars, workspace,
+                    credential, url, deployWorkload.getImages(), workloadMetrics).preload(listed.get(url)).async(asyncClient).deploy());
+        }
+        runParallel(tasks, maxParallel, failFast, logger, ParallelKind.WORKLOAD);
+    }
 
-            if(currentDeployPods != null && currentDeployPods.size() > 0) {
-                pollingCheckPodsDeployFinish(logger, client, credential, url, currentDeployPods);
-            }
-            logger.println(Messages._Rancher2RedeployBuilder_success());
+    /**
+     * redeploy all workloads to each cluster concurrently, at most maxParallelClusters in flight.
+     * each cluster logs into its own buffer, which is copied to build log when it finished, then timings are summarized
+     */
+    private void parallelDeployClusters(Run<?, ?> run, PrintStream logger, EnvVars envVars, FilePath workspace, List<Rancher2Cluster> deployClusters, Rancher2DeployMetrics metrics) throws InterruptedException, IOException {
+        Map<String, ParallelTask> tasks = new LinkedHashMap<>();
+        for (Rancher2Cluster cluster : deployClusters) {
+            tasks.put(cluster.getName(), output ->
+                    deployCluster(run, new StreamTaskListener(output, StandardCharsets.UTF_8), envVars, workspace, cluster, metrics));
         }
+        runParallel(tasks, maxParallelClusters, FAILURE_POLICY_FAIL_FAST.equals(failurePolicy), logger, ParallelKind.CLUSTER);
     }
 
-    private void putActionRedeploy(PrintStream logger, CloseableHttpClient client, EnvVars envVars, Rancher2Credentials credential, String url)  throws InterruptedException, IOException {
-        HttpUriRequest request = RequestBuilder.post(url + "?action=redeploy")
-                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
-                .addHeader("Accept", "application/json")
-                .build();
+    /**
+     * a redeploy run by {@link #runParallel}, logging into its own buffer
+     */
+    private interface ParallelTask {
+        void run(OutputStream output) throws InterruptedException, IOException;
+    }
 
-        CloseableHttpResponse response = client.execute(request);
-        if (response.getStatusLine().getStatusCode() != 200) {
-            String message = Messages.Rancher2RedeployBuilder_badResponse(
-                    response.getStatusLine().getStatusCode(),
-                    EntityUtils.toString(response.getEntity())
-            );
-            if (response.getStatusLine().getStatusCode() == 404) {
-                logger.println(message);
-                if(postConfigDeploy(logger, client, envVars, credential, url)) return;
-            }
-            throw new AbortException(message);
+    /**
+     * build log messages of {@link #runParallel}
+     */
+    private enum ParallelKind {
+        WORKLOAD, CLUSTER;
+
+        String log(String name) {
+            return this == WORKLOAD ? Messages.Rancher2RedeployBuilder_workloadLog(name) : Messages.Rancher2RedeployBuilder_clusterLog(name);
         }
-    }
 
-    private void putConfigRedeploy(PrintStream logger, CloseableHttpClient client, EnvVars envVars, Rancher2Credentials credential, String url) throws InterruptedException, IOException {
-        Map<String, String> imageTags = new HashMap<>();
-        String expandImages = null;
-        if (StringUtils.isNotBlank(images)) {
-            expandImages = envVars.expand(images);
-            String[] imageArray = expandImages.split(";");
-            for (String imageTag : imageArray) {
-                String name = parseImageName(imageTag);
-                imageTags.put(name, imageTag);
-            }
+        String succeed(String name, double seconds) {
+            return this == WORKLOAD ? Messages.Rancher2RedeployBuilder_workloadSucceed(name, seconds) :
+                    Messages.Rancher2RedeployBuilder_clusterSucceed(name, seconds);
         }
-        Set<String> workloadImages = new HashSet<>();
-        Set<String> updatedImages = new HashSet<>();
-
-        HttpUriRequest request = RequestBuilder.get(url)
-                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
-                .addHeader("Accept", "application/json")
-                .build();
-
-        CloseableHttpResponse response = client.execute(request);
-        if (response.getStatusLine().getStatusCode() != 200) {
-            String message = Messages.Rancher2RedeployBuilder_badResponse(
-                    response.getStatusLine().getStatusCode(),
-                    EntityUtils.toString(response.getEntity())
-            );
-            if (response.getStatusLine().getStatusCode() == 404) {
-                logger.println(message);
-                if(postConfigDeploy(logger, client, envVars, credential, url)) return;
-            }
-            throw new AbortException(message);
+
+        String failed(String name, double seconds, String error) {
+            return this == WORKLOAD ? Messages.Rancher2RedeployBuilder_workloadFailed(name, seconds, error) :
+                    Messages.Rancher2RedeployBuilder_clusterFailed(name, seconds, error);
         }
 
-        // modify json body for PUT request
-        JsonNode root = MAPPER.readTree(response.getEntity().getContent());
-        JsonNode containers = root.get("containers");
-        if (containers != null && containers.size() > 0) {
-            String oldImage = containers.get(0).get("image").asText();
-            if (Objects.equals(expandImages, oldImage)) {
-                putActionRedeploy(logger, client, envVars, credential, url);
-                return;
-            }
+        String canceled(int canceled) {
+            return this == WORKLOAD ? Messages.Rancher2RedeployBuilder_workloadsCanceled(canceled) :
+                    Messages.Rancher2RedeployBuilder_clustersCanceled(canceled);
+        }
+
+        String failedAll(int failed, int total) {
+            return this == WORKLOAD ? Messages.Rancher2RedeployBuilder_workloadsFailed(failed, total) :
+                    Messages.Rancher2RedeployBuilder_clustersFailed(failed, total);
         }
+    }
 
-        ObjectNode objectNode = (ObjectNode) root;
-        objectNode.remove("actions");
-        objectNode.remove("links");
-        //annotations
-        ObjectNode annotations = (ObjectNode) root.get("annotations");
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(new Date());
-        if (annotations != null) {
-            annotations.put("cattle.io/timestamp", timestamp);
-        }
-        for (int i = 0; containers != null && i < containers.size(); i++) {
-            ObjectNode container = (ObjectNode) containers.get(i);
-            String oldTag = container.get("image").asText();
-            if (oldTag != null) {
-                String name = parseImageName(oldTag);
-                workloadImages.add(name);
-                if (imageTags.containsKey(name)) {
-                    String newTag = imageTags.get(name);
-                    container.put("image", newTag);
-                    if (alwaysPull) {
-                        container.put("imagePullPolicy", "Always");
+    /**
+     * run tasks concurrently, at most maxParallel in flight. the log of each task is copied to build log when it
+     * finished, then timings are summarized. with failFast the first failure interrupts the others, they are
+     * reported as canceled
+     * @param tasks name to task, eg: workload url or cluster name
+     */
+    private static void runParallel(Map<String, ParallelTask> tasks, int maxParallel, boolean failFast, PrintStream logger,
+                                    ParallelKind kind) throws InterruptedException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxParallel, tasks.size()),
+                new NamingThreadFactory(new DaemonThreadFactory(), Rancher2RedeployBuilder.class.getSimpleName()));
+        CompletionService<DeployResult> completionService = new ExecutorCompletionService<>(executor);
+        List<DeployResult> results = new ArrayList<>();
+        try {
+            for (Map.Entry<String, ParallelTask> task : tasks.entrySet()) {
+                completionService.submit(() -> {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    long startTime = System.currentTimeMillis();
+                    String error = null;
+                    try {
+                        task.getValue().run(output);
+                    } catch (IOException e) {
+                        error = e.getMessage();
                     }
-                    logger.println(Messages.Rancher2RedeployBuilder_setImageTag(oldTag, newTag));
-                    updatedImages.add(name);
+                    return new DeployResult(task.getKey(), output.toString("UTF-8"), System.currentTimeMillis() - startTime, error);
+                });
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                DeployResult result;
+                try {
+                    result = completionService.take().get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+                logger.println(kind.log(result.name));
+                logger.print(result.log);
+                results.add(result);
+                if (result.error != null && failFast) {
+                    // interrupt the others in finally
+                    break;
                 }
             }
+        } finally {
+            executor.shutdownNow();
         }
 
-        if (updatedImages.size() != imageTags.size()) {
-            throw new AbortException(Messages.Rancher2RedeployBuilder_notMatch(workloadImages, imageTags.keySet()));
-        }
-
-        HttpUriRequest putRequest = RequestBuilder.put(url)
-                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
-                .addHeader("Accept", "application/json")
-                .addHeader("Content-Type", "application/json; charset=utf-8")
-                .setEntity(new StringEntity(MAPPER.writeValueAsString(root), "utf-8"))
-                .build();
-
-        CloseableHttpResponse putResponse = client.execute(putRequest);
-        if (putResponse.getStatusLine().getStatusCode() != 200) {
-            throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(
-                    putResponse.getStatusLine().getStatusCode(),EntityUtils.toString(putResponse.getEntity())
-            ));
-        }
-    }
-
-    private boolean postConfigDeploy(PrintStream logger, CloseableHttpClient client, EnvVars envVars, Rancher2Credentials credential, String url) throws InterruptedException, IOException {
-        if (StringUtils.isBlank(templateUrl)) return false;
-        String projectId, namespaceId, nameId;
-        String[] urlInfo = url.split("\\/project\\/");
-        urlInfo = urlInfo[1].split("\\/workloads\\/");
-        projectId = urlInfo[0];
-        urlInfo = urlInfo[1].split(":");
-        namespaceId = urlInfo[1];
-        nameId = urlInfo[2];
-
-        String expandTemplateUrl = envVars.expand(templateUrl);
-        logger.println(Messages._Rancher2CredentialsImpl_DescriptorImpl_createPodStartMessage(expandTemplateUrl));
-        JsonNode template = expandTemplateUrl.toLowerCase().startsWith("http") ?
-                loadHttpTemplate(client, envVars, expandTemplateUrl, projectId, namespaceId, nameId) :
-                loadFileTemplate(envVars, expandTemplateUrl, projectId, namespaceId, nameId);
-        if (template == null) {
-            throw new IOException("template error");
-        }
-
-        HttpUriRequest postRequest = RequestBuilder.post(url.split("\\/workloads")[0] + "/workloads")
-                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
-                .addHeader("Accept", "application/json")
-                .addHeader("Content-Type", "application/json; charset=utf-8")
-                .setEntity(new StringEntity(MAPPER.writeValueAsString(template), "utf-8"))
-                .build();
-        CloseableHttpResponse postResponse = client.execute(postRequest);
-        String postResponseContent = EntityUtils.toString(postResponse.getEntity());
-        logger.println(Messages._Rancher2CredentialsImpl_DescriptorImpl_createPodSuccedMessage(postResponse.getStatusLine(), postResponseContent));
-        if (postResponse.getStatusLine().getStatusCode() == 201) {
-            if(pollingDeployFinish) {
-                pollingWaitPodsDeployFinish(logger, client, credential, url);
+        int failed = 0;
+        for (DeployResult result : results) {
+            if (result.error == null) {
+                logger.println(kind.succeed(result.name, result.duration / 1000.0));
+            } else {
+                logger.println(kind.failed(result.name, result.duration / 1000.0, result.error));
+                failed++;
             }
-            return true;
         }
-        if (postResponse.getStatusLine().getStatusCode() != 200) {
-            throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(
-                    postResponse.getStatusLine().getStatusCode(), postResponseContent));
+        if (results.size() < tasks.size()) {
+            logger.println(kind.canceled(tasks.size() - results.size()));
+        }
+        if (failed > 0) {
+            throw new AbortException(kind.failedAll(failed, tasks.size()));
         }
-        return true;
     }
 
-    private JsonNode loadHttpTemplate(CloseableHttpClient client, EnvVars envVars, String url, String projectId, String namespaceId, String nameId) throws InterruptedException, IOException {
-        HttpUriRequest request = RequestBuilder.get(url)
-                .addHeader("Accept", "application/json")
-                .build();
+    Rancher2DeployConfig getDeployConfig() {
+        return new Rancher2DeployConfig(alwaysPull, pollingDeployFinish, pollingDeployTimeout,
+                deployFinishMode, pollingStrategy, updateMode, templateUrl, templateVars, force);
+    }
 
-        CloseableHttpResponse response = client.execute(request);
-        if (response.getStatusLine().getStatusCode() != 200) {
-            throw new AbortException(
-                    Messages.Rancher2RedeployBuilder_badResponse(
-                            response.getStatusLine().getStatusCode(),
-                            EntityUtils.toString(response.getEntity())
-                    )
-            );
+    /**
+     * @param select true if more workloads are selected by {@link Rancher2WorkloadSelector}, primary workload is optional
+     * @return primary workload followed by additional workloads
+     */
+    static List<Rancher2Workload> deployWorkloads(String workload, String images, List<Rancher2Workload> workloads, boolean select) {
+        List<Rancher2Workload> deployWorkloads = new ArrayList<>();
+        if (StringUtils.isNotBlank(workload) || !select && (workloads == null || workloads.isEmpty())) {
+            deployWorkloads.add(new Rancher2Workload(workload, images));
         }
-        String content = EntityUtils.toString(response.getEntity());
-        return MAPPER.readTree(compileTemplate(envVars, projectId, namespaceId, nameId, content));
+        if (workloads != null) {
+            deployWorkloads.addAll(workloads);
+        }
+        return deployWorkloads;
     }
 
-    private JsonNode loadFileTemplate(EnvVars envVars, String filename, String projectId, String namespaceId, String nameId) throws InterruptedException, IOException {
-        File file = new File(filename);
-        FileInputStream fileInputStream = new FileInputStream(file);
-        String content = IOUtils.toString(fileInputStream, StandardCharsets.UTF_8);
-        fileInputStream.close();
-        return MAPPER.readTree(compileTemplate(envVars, projectId, namespaceId, nameId, content));
+    /**
+     * @return cluster of primary credential followed by additional clusters
+     */
+    static List<Rancher2Cluster> deployClusters(String credential, List<Rancher2Cluster> clusters) {
+        List<Rancher2Cluster> deployClusters = new ArrayList<>();
+        deployClusters.add(new Rancher2Cluster(credential, null));
+        if (clusters != null) {
+            deployClusters.addAll(clusters);
+        }
+        return deployClusters;
     }
 
-    private String compileTemplate(EnvVars envVars, String projectId, String namespaceId, String nameId, String templateContent) {
-        Map<String, String> vars = new HashMap<>();
-        vars.put("PROJECTID", projectId);
-        vars.put("NAMESPACEID", namespaceId);
-        vars.put("NAMEID", nameId);
-        if (StringUtils.isNotBlank(images)) {
-            String expandImages = envVars.expand(images);
-            if (StringUtils.isNotBlank(expandImages)) {
-                vars.put("IMAGE", expandImages.split(";")[0]);
-            }
+    /**
+     * @return credential endpoint without suffix /
+     */
+    static String endpoint(Rancher2Credentials credential) throws IOException, InterruptedException {
+        String endpoint = credential.getEndpoint();
+        if (endpoint.endsWith("/")) {
+            endpoint = endpoint.substring(0, endpoint.length() - 1);
         }
-        vars.put("IMAGEPULLPOLICY", alwaysPull ? "Always" : "IfNotPresent");
+        return endpoint;
+    }
 
-        if (StringUtils.isNotBlank(templateVars)) {
-            String expandTemplateVars = envVars.expand(templateVars);
-            for (String varValue : expandTemplateVars.split(",")) {
-                String[] varValues = varValue.split("=");
-                if (varValues.length >= 2) {
-                    vars.put(varValues[0], varValues[1]);
-                }
-            }
+    static String workloadUrl(String endpoint, String workload) {
+        String url = endpoint + workload;
+        if (url.startsWith("/p/")) {
+            url = url.replaceFirst("/p/", "/project/").replaceFirst("/workload/", "/workloads/");
         }
-        return Util.replaceMacro(templateContent, vars);
+        return url;
     }
 
-    /**
-     * @param imageTag
-     * @return image name without version
-     */
-    private static String parseImageName(String imageTag) {
-        int index = imageTag.lastIndexOf(":");
-        if (index < 0) {
-            return imageTag;
+    private static final class DeployResult {
+        // workload url or cluster name
+        private final String name;
+        private final String log;
+        private final long duration;
+        private final String error;
+
+        private DeployResult(String name, String log, long duration, String error) {
+            this.name = name;
+            this.log = log;
+            this.duration = duration;
+            this.error = error;
         }
-        return imageTag.substring(0, index);
     }
 
     @Symbol("rancherRedeploy")
@@ -455,7 +551,16 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
 
         public FormValidation doCheckWorkload(
-                @QueryParameter String value) {
+                @QueryParameter String value,
+                @QueryParameter String selectorProject) {
+            // workloads are selected from project, primary workload is optional
+            if (StringUtils.isBlank(value) && StringUtils.isNotBlank(selectorProject)) {
+                return FormValidation.ok();
+            }
+            return checkWorkload(value);
+        }
+
+        static FormValidation checkWorkload(String value) {
             if (StringUtils.isBlank(value)) {
                 return FormValidation.error(Messages.Rancher2RedeployBuilder_DescriptorImpl_requireWorkloadPath());
             }
@@ -467,6 +572,10 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
 
         public FormValidation doCheckImages(
                 @QueryParameter String value) {
+            return checkImages(value);
+        }
+
+        static FormValidation checkImages(String value) {
             if (StringUtils.isBlank(value)) {
                 return FormValidation.ok();
             }
@@ -484,6 +593,13 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
             return true;
         }
 
+        /**
+         * @return true if runOnAgent is shown, config.jelly is shared with {@link Rancher2RedeployStep}
+         */
+        public boolean isRunOnAgentSupported() {
+            return true;
+        }
+
         @Override
         public String getDisplayName() {
             return Messages.Rancher2RedeployBuilder_DescriptorImpl_displayName();
@@ -553,6 +669,55 @@ public class Rancher2RedeployBuilder extends Builder implements SimpleBuildStep
             }
             return FormValidation.ok();
         }
+
+        public ListBoxModel doFillDeployFinishModeItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_deployFinishModePolling(), DEPLOY_FINISH_MODE_POLLING);
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_deployFinishModeWatch(), DEPLOY_FINISH_MODE_WATCH);
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_deployFinishModeStatus(), DEPLOY_FINISH_MODE_STATUS);
+            return items;
+        }
+
+        public ListBoxModel doFillPollingStrategyItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_pollingStrategyFixed(), POLLING_STRATEGY_FIXED);
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_pollingStrategyBackoff(), POLLING_STRATEGY_BACKOFF);
+            return items;
+        }
+
+        public ListBoxModel doFillUpdateModeItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_updateModePut(), UPDATE_MODE_PUT);
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_updateModePatch(), UPDATE_MODE_PATCH);
+            return items;
+        }
+
+        public ListBoxModel doFillFailurePolicyItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_failurePolicyBestEffort(), FAILURE_POLICY_BEST_EFFORT);
+            items.add(Messages.Rancher2RedeployBuilder_DescriptorImpl_failurePolicyFailFast(), FAILURE_POLICY_FAIL_FAST);
+            return items;
+        }
+
+        public FormValidation doCheckMaxParallelClusters(
+                @QueryParameter String value) {
+            return doCheckMaxParallel(value);
+        }
+
+        public FormValidation doCheckMaxParallel(
+                @QueryParameter String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            try {
+                if (Integer.parseInt(value) <= 0) {
+                    return FormValidation.error(Messages.Rancher2RedeployBuilder_DescriptorImpl_positiveNumber());
+                }
+            } catch (NumberFormatException e) {
+                return FormValidation.error(Messages.Rancher2RedeployBuilder_DescriptorImpl_positiveNumber());
+            }
+            return FormValidation.ok();
+        }
     }
 
 }
@@ -0,0 +1,329 @@
+package io.jenkins.plugins.rancher2;
+
+import com.google.common.collect.ImmutableSet;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * pipeline step rancherRedeployAsync, same options as {@link Rancher2RedeployBuilder} except runOnAgent.
+ * doesn't block any thread or executor while waiting for rollout, and reattaches to the rollout after controller restart.
+ * it has its own function name, rancherRedeploy stays the builder's symbol with workspace templates and watch mode
+ */
+public class Rancher2RedeployStep extends Step {
+    @Nonnull
+    private final String credential;
+    @Nonnull
+    private final String workload;
+    private final String images;
+    private final boolean alwaysPull;
+    private boolean pollingDeployFinish = false;
+    private int pollingDeployTimeout = 300;
+    private String deployFinishMode = Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING;
+    private String pollingStrategy = Rancher2RedeployBuilder.POLLING_STRATEGY_FIXED;
+    private String updateMode = Rancher2RedeployBuilder.UPDATE_MODE_PUT;
+    private String templateUrl = null;
+    private String templateVars = null;
+    private List<Rancher2Workload> workloads = null;
+    private int maxParallel = 4;
+    private List<Rancher2Cluster> clusters = null;
+    private int maxParallelClusters = 4;
+    private String failurePolicy = Rancher2RedeployBuilder.FAILURE_POLICY_BEST_EFFORT;
+    private String selectorProject = null;
+    private String selectorNamespace = null;
+    private String labelSelector = null;
+    private boolean force = false;
+
+    @DataBoundConstructor
+    public Rancher2RedeployStep(
+            @Nonnull String credential,
+            @Nonnull String workload,
+            @Nullable String images,
+            boolean alwaysPull
+    ) {
+        this.credential = credential;
+        this.workload = workload;
+        this.images = images;
+        this.alwaysPull = alwaysPull;
+    }
+
+    @DataBoundSetter
+    public void setPollingDeployFinish(@Nullable Boolean pollingDeployFinish) {
+        this.pollingDeployFinish = pollingDeployFinish != null && pollingDeployFinish;
+    }
+
+    @DataBoundSetter
+    public void setPollingDeployTimeout(@Nullable Integer pollingDeployTimeout) {
+        this.pollingDeployTimeout = pollingDeployTimeout == null ? 300 : pollingDeployTimeout;
+    }
+
+    @DataBoundSetter
+    public void setDeployFinishMode(@Nullable String deployFinishMode) {
+        this.deployFinishMode = StringUtils.isBlank(deployFinishMode) ? Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING : deployFinishMode;
+    }
+
+    @DataBoundSetter
+    public void setPollingStrategy(@Nullable String pollingStrategy) {
+        this.pollingStrategy = StringUtils.isBlank(pollingStrategy) ? Rancher2RedeployBuilder.POLLING_STRATEGY_FIXED : pollingStrategy;
+    }
+
+    @DataBoundSetter
+    public void setUpdateMode(@Nullable String updateMode) {
+        this.updateMode = StringUtils.isBlank(updateMode) ? Rancher2RedeployBuilder.UPDATE_MODE_PUT : updateMode;
+    }
+
+    @DataBoundSetter
+    public void setTemplateUrl(@Nullable String templateUrl) {
+        this.templateUrl = templateUrl;
+    }
+
+    @DataBoundSetter
+    public void setTemplateVars(@Nullable String templateVars) {
+        this.templateVars = templateVars;
+    }
+
+    @DataBoundSetter
+    public void setWorkloads(@Nullable List<Rancher2Workload> workloads) {
+        this.workloads = workloads;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallel(@Nullable Integer maxParallel) {
+        this.maxParallel = maxParallel == null || maxParallel <= 0 ? 4 : maxParallel;
+    }
+
+    @DataBoundSetter
+    public void setClusters(@Nullable List<Rancher2Cluster> clusters) {
+        this.clusters = clusters;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallelClusters(@Nullable Integer maxParallelClusters) {
+        this.maxParallelClusters = maxParallelClusters == null || maxParallelClusters <= 0 ? 4 : maxParallelClusters;
+    }
+
+    @DataBoundSetter
+    public void setFailurePolicy(@Nullable String failurePolicy) {
+        this.failurePolicy = StringUtils.isBlank(failurePolicy) ? Rancher2RedeployBuilder.FAILURE_POLICY_BEST_EFFORT : failurePolicy;
+    }
+
+    @DataBoundSetter
+    public void setSelectorProject(@Nullable String selectorProject) {
+        this.selectorProject = selectorProject;
+    }
+
+    @DataBoundSetter
+    public void setSelectorNamespace(@Nullable String selectorNamespace) {
+        this.selectorNamespace = selectorNamespace;
+    }
+
+    @DataBoundSetter
+    public void setLabelSelector(@Nullable String labelSelector) {
+        this.labelSelector = labelSelector;
+    }
+
+    @DataBoundSetter
+    public void setForce(@Nullable Boolean force) {
+        this.force = force != null && force;
+    }
+
+    @Nonnull
+    public String getCredential() {
+        return credential;
+    }
+
+    @Nonnull
+    public String getWorkload() {
+        return workload;
+    }
+
+    public String getImages() {
+        return images;
+    }
+
+    public boolean isAlwaysPull() {
+        return alwaysPull;
+    }
+
+    public boolean isPollingDeployFinish() {
+        return pollingDeployFinish;
+    }
+
+    public int getPollingDeployTimeout() {
+        return pollingDeployTimeout;
+    }
+
+    public String getDeployFinishMode() {
+        return deployFinishMode;
+    }
+
+    public String getPollingStrategy() {
+        return pollingStrategy;
+    }
+
+    public String getUpdateMode() {
+        return updateMode;
+    }
+
+    public String getTemplateUrl() {
+        return templateUrl;
+    }
+
+    public String getTemplateVars() {
+        return templateVars;
+    }
+
+    public List<Rancher2Workload> getWorkloads() {
+        return workloads;
+    }
+
+    public int getMaxParallel() {
+        return maxParallel;
+    }
+
+    public List<Rancher2Cluster> getClusters() {
+        return clusters;
+    }
+
+    public int getMaxParallelClusters() {
+        return maxParallelClusters;
+    }
+
+    public String getFailurePolicy() {
+        return failurePolicy;
+    }
+
+    public String getSelectorProject() {
+        return selectorProject;
+    }
+
+    public String getSelectorNamespace() {
+        return selectorNamespace;
+    }
+
+    public String getLabelSelector() {
+        return labelSelector;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    /**
+     * @return null if selector mode is off
+     */
+    Rancher2WorkloadSelector getSelector() {
+        return Rancher2WorkloadSelector.of(selectorProject, selectorNamespace, labelSelector, images);
+    }
+
+    Rancher2DeployConfig getDeployConfig() {
+        return new Rancher2DeployConfig(alwaysPull, pollingDeployFinish, pollingDeployTimeout,
+                deployFinishMode, pollingStrategy, updateMode, templateUrl, templateVars, force);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Rancher2RedeployStepExecution(context, this);
+    }
+
+    /**
+     * form validation and help are shared with {@link Rancher2RedeployBuilder.DescriptorImpl}
+     */
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return ImmutableSet.of(Run.class, TaskListener.class, EnvVars.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "rancherRedeployAsync";
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.Rancher2RedeployStep_DescriptorImpl_displayName();
+        }
+
+        @Override
+        public String getHelpFile(String fieldName) {
+            return builder().getHelpFile(fieldName);
+        }
+
+        /**
+         * @return false, the step runs without workspace
+         */
+        public boolean isRunOnAgentSupported() {
+            return false;
+        }
+
+        public FormValidation doCheckWorkload(@QueryParameter String value, @QueryParameter String selectorProject) {
+            return builder().doCheckWorkload(value, selectorProject);
+        }
+
+        public FormValidation doCheckImages(@QueryParameter String value) {
+            return builder().doCheckImages(value);
+        }
+
+        public ListBoxModel doFillCredentialItems(@AncestorInPath Item item, @QueryParameter String credential) {
+            return builder().doFillCredentialItems(item, credential);
+        }
+
+        public FormValidation doCheckCredential(@AncestorInPath Item item, @QueryParameter String value) {
+            return builder().doCheckCredential(item, value);
+        }
+
+        public FormValidation doCheckPollingDeployTimeout(@QueryParameter String value) {
+            return builder().doCheckPollingDeployTimeout(value);
+        }
+
+        public ListBoxModel doFillDeployFinishModeItems() {
+            return builder().doFillDeployFinishModeItems();
+        }
+
+        public ListBoxModel doFillPollingStrategyItems() {
+            return builder().doFillPollingStrategyItems();
+        }
+
+        public ListBoxModel doFillUpdateModeItems() {
+            return builder().doFillUpdateModeItems();
+        }
+
+        public FormValidation doCheckMaxParallel(@QueryParameter String value) {
+            return builder().doCheckMaxParallel(value);
+        }
+
+        public FormValidation doCheckMaxParallelClusters(@QueryParameter String value) {
+            return builder().doCheckMaxParallelClusters(value);
+        }
+
+        public ListBoxModel doFillFailurePolicyItems() {
+            return builder().doFillFailurePolicyItems();
+        }
+
+        private static Rancher2RedeployBuilder.DescriptorImpl builder() {
+            return Jenkins.get().getDescriptorByType(Rancher2RedeployBuilder.DescriptorImpl.class);
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package io.jenkins.plugins.rancher2;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.fasterxml.jackson.databind.JsonNode;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * asynchronous execution of {@link Rancher2RedeployStep}.
+ * redeploy requests and each polling run in {@link Computer#threadPoolForRemoting}, the delays between pollings are
+ * scheduled by {@link Timer}, so no thread is blocked while waiting for rollout.
+ * the rollout state is serialized with the execution, {@link #onResume()} continues polling after controller restart.
+ * with more clusters, the redeploy requests of different clusters are sent concurrently, and at most maxParallel
+ * workloads of one cluster at a time.
+ * in selector mode the workloads are listed and selected once before the redeploy requests
+ */
+public class Rancher2RedeployStepExecution extends StepExecution {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(Rancher2RedeployStepExecution.class.getName());
+
+    private final String credentialId;
+    private final Rancher2DeployConfig config;
+    private final boolean failFast;
+    private final int maxParallelClusters;
+    private final int maxParallel;
+    private final Rancher2WorkloadSelector selector;
+    private final List<Rancher2Cluster> selectorClusters;
+    private boolean selected = false;
+    private final long startTime = System.currentTimeMillis();
+    private final EnvVars envVars;
+    private final List<Rollout> rollouts = new ArrayList<>();
+    private final Rancher2DeployMetrics metrics = new Rancher2DeployMetrics();
+    private Rancher2PollingScheduler scheduler = null;
+
+    private transient volatile Future<?> task;
+    private transient volatile boolean stopped;
+    // guarded by this, the context is completed once
+    private transient boolean completed;
+    private transient List<Rancher2WorkloadDeployer> deployers;
+    // workload url to workload of list response, saves the GET before update
+    private transient Map<String, JsonNode> listed;
+
+    Rancher2RedeployStepExecution(StepContext context, Rancher2RedeployStep step) throws IOException, InterruptedException {
+        super(context);
+        this.envVars = context.get(EnvVars.class);
+        this.credentialId = envVars.expand(step.getCredential());
+        this.config = step.getDeployConfig();
+        this.failFast = Rancher2RedeployBuilder.FAILURE_POLICY_FAIL_FAST.equals(step.getFailurePolicy());
+        this.maxParallelClusters = step.getMaxParallelClusters();
+        this.maxParallel = step.getMaxParallel();
+        this.selector = step.getSelector();
+        List<Rancher2Cluster> deployClusters = Rancher2RedeployBuilder.deployClusters(step.getCredential(), step.getClusters());
+        this.selectorClusters = selector == null ? null : deployClusters;
+        List<Rancher2Workload> deployWorkloads = Rancher2RedeployBuilder.deployWorkloads(step.getWorkload(), step.getImages(),
+                step.getWorkloads(), selector != null);
+        for (Rancher2Cluster cluster : deployClusters) {
+            for (Rancher2Workload deployWorkload : deployWorkloads) {
+                String url = cluster.workload(envVars.expand(deployWorkload.getWorkload()));
+                rollouts.add(new Rollout(url, deployWorkload.getImages(), envVars.expand(cluster.getCredential()),
+                        cluster.getName(), metrics.addWorkload(url)));
+            }
+        }
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        schedule(0);
+        return false;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        schedule(0);
+    }
+
+    @Override
+    public void stop(Throwable cause) throws Exception {
+        stopped = true;
+        Future<?> task = this.task;
+        if (task != null) {
+            task.cancel(true);
+        }
+        if (complete()) {
+            getContext().onFailure(cause);
+        }
+    }
+
+    @Override
+    public String getStatus() {
+        int finished = 0;
+        for (Rollout rollout : rollouts) {
+            if (rollout.status == Status.FINISHED || rollout.status == Status.FAILED) finished++;
+        }
+        return finished + "/" + rollouts.size() + " workloads finished";
+    }
+
+    private synchronized void schedule(long delay) {
+        if (stopped) return;
+        task = Timer.get().schedule(() -> {
+            if (stopped) return;
+            task = Computer.threadPoolForRemoting.submit(this::run);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        if (stopped) return;
+        try {
+            PrintStream logger = getContext().get(TaskListener.class).getLogger();
+            if (selector != null && !selected) {
+                select(logger);
+            }
+            List<Rancher2WorkloadDeployer> deployers = getDeployers(logger);
+            if (scheduler == null) {
+                deploy(logger, deployers);
+                // a resumed rollout keeps its deadline
+                scheduler = new Rancher2PollingScheduler(config.pollingStrategy, rolloutStartTime(), config.pollingDeployTimeout);
+                if (!finished(logger)) {
+                    schedule(scheduler.firstDelay());
+                }
+                return;
+            }
+
+            for (int i = 0; i < rollouts.size(); i++) {
+                Rollout rollout = rollouts.get(i);
+                if (rollout.status != Status.REDEPLOYED) continue;
+                Rancher2WorkloadDeployer deployer = deployers.get(i);
+                boolean deployed;
+                try {
+                    deployed = rollout.statusMode ? deployer.isRolledOut() :
+                            rollout.createdName != null ? deployer.isPodRunning() : deployer.isPodsDeployed(rollout.lastDeployPods);
+                } catch (IOException e) {
+                    deployer.forgetRollout();
+                    failed(logger, rollout, e);
+                    continue;
+                }
+                if (deployed) {
+                    deployer.forgetRollout();
+                    rollout.status = Status.FINISHED;
+                    rollout.duration = System.currentTimeMillis() - startTime;
+                    logger.println(Messages.Rancher2RedeployBuilder_workloadSucceed(rollout.url, scheduler.elapsed()));
+                    scheduler.reset();
+                }
+            }
+            if (finished(logger)) {
+                return;
+            }
+            if (!scheduler.hasTime()) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_pollingDeployTimeout(scheduler.elapsed()));
+            }
+            schedule(scheduler.nextDelay());
+        } catch (Throwable e) {
+            if (!stopped && complete()) {
+                getContext().onFailure(e);
+            }
+        }
+    }
+
+    /**
+     * list workloads of each cluster and add a rollout for each selected workload
+     */
+    private void select(PrintStream logger) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Map<String, JsonNode> listed = new HashMap<>();
+        for (Rancher2Cluster cluster : selectorClusters) {
+            String clusterCredentialId = envVars.expand(cluster.getCredential());
+            Rancher2Credentials credential = findCredential(clusterCredentialId);
+            String endpoint = Rancher2RedeployBuilder.endpoint(credential);
+            CloseableHttpClient client = ClientBuilder.get(endpoint, credential.isTrustCert());
+            for (Rancher2WorkloadSelector.Selected selected : selector.select(logger, client, envVars, credential, cluster)) {
+                rollouts.add(new Rollout(selected.workload, selected.images, clusterCredentialId, cluster.getName(),
+                        metrics.addWorkload(selected.workload)));
+                listed.put(Rancher2RedeployBuilder.workloadUrl(endpoint, selected.workload), selected.resource);
+            }
+        }
+        metrics.record(Rancher2Metrics.PHASE_SELECT, startTime);
+        this.listed = listed;
+        this.selected = true;
+        // deployers of the selected rollouts too
+        this.deployers = null;
+    }
+
+    /**
+     * send redeploy requests, clusters concurrently
+     */
+    private void deploy(PrintStream logger, List<Rancher2WorkloadDeployer> deployers) throws IOException, InterruptedException {
+        Map<String, List<Integer>> clusters = new LinkedHashMap<>();
+        for (int i = 0; i < rollouts.size(); i++) {
+            if (rollouts.get(i).status != Status.PENDING) continue;
+            clusters.computeIfAbsent(rollouts.get(i).cluster, k -> new ArrayList<>()).add(i);
+        }
+        if (clusters.size() <= 1) {
+            for (List<Integer> indexes : clusters.values()) {
+                deployCluster(logger, deployers, indexes);
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (List<Integer> indexes : clusters.values()) {
+            tasks.add(() -> {
+                deployCluster(logger, deployers, indexes);
+                return null;
+            });
+        }
+        runAll(maxParallelClusters, tasks);
+    }
+
+    /**
+     * run tasks with at most maxThreads at a time
+     */
+    private static void runAll(int maxThreads, List<Callable<Void>> tasks) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxThreads, tasks.size()),
+                new NamingThreadFactory(new DaemonThreadFactory(), Rancher2RedeployStepExecution.class.getSimpleName()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // only thrown if fail fast, the others are interrupted in finally
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * send redeploy requests of one cluster, at most maxParallel at a time
+     */
+    private void deployCluster(PrintStream logger, List<Rancher2WorkloadDeployer> deployers, List<Integer> indexes) throws IOException, InterruptedException {
+        // executions serialized before maxParallel was used have 0
+        if (indexes.size() <= 1 || maxParallel <= 1) {
+            for (int i : indexes) {
+                deployWorkload(logger, deployers, i);
+            }
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i : indexes) {
+            tasks.add(() -> {
+                deployWorkload(logger, deployers, i);
+                return null;
+            });
+        }
+        runAll(maxParallel, tasks);
+    }
+
+    private void deployWorkload(PrintStream logger, List<Rancher2WorkloadDeployer> deployers, int i) throws IOException, InterruptedException {
+        Rollout rollout = rollouts.get(i);
+        Rancher2WorkloadDeployer deployer = deployers.get(i);
+        Rancher2RolloutStore.Rollout stored;
+        try {
+            stored = deployer.redeployOrResume();
+        } catch (IOException e) {
+            failed(logger, rollout, e);
+            return;
+        }
+        rollout.statusMode = stored.statusMode;
+        rollout.lastDeployPods = stored.lastDeployPods == null ? null : new HashSet<>(stored.lastDeployPods);
+        rollout.createdName = stored.createdName;
+        rollout.startTime = stored.startTime;
+        boolean waiting = config.pollingDeployFinish &&
+                (rollout.statusMode || rollout.createdName != null || !rollout.lastDeployPods.isEmpty());
+        rollout.status = waiting ? Status.REDEPLOYED : Status.FINISHED;
+        if (!waiting) {
+            rollout.duration = System.currentTimeMillis() - startTime;
+            deployer.forgetRollout();
+        }
+    }
+
+    /**
+     * @throws IOException the failure if fail fast, otherwise the rollout is only marked failed
+     */
+    private void failed(PrintStream logger, Rollout rollout, IOException e) throws IOException {
+        if (failFast) {
+            throw e;
+        }
+        rollout.status = Status.FAILED;
+        rollout.duration = System.currentTimeMillis() - startTime;
+        rollout.error = e.getMessage();
+        logger.println(Messages.Rancher2RedeployBuilder_workloadFailed(rollout.url, rollout.duration / 1000.0, rollout.error));
+    }
+
+    /**
+     * @return start time of the earliest rollout waited for, earlier than now if it was resumed from {@link Rancher2RolloutStore}
+     */
+    private long rolloutStartTime() {
+        long rolloutStartTime = System.currentTimeMillis();
+        for (Rollout rollout : rollouts) {
+            if (rollout.status == Status.REDEPLOYED && rollout.startTime > 0) {
+                rolloutStartTime = Math.min(rolloutStartTime, rollout.startTime);
+            }
+        }
+        return rolloutStartTime;
+    }
+
+    private boolean finished(PrintStream logger) {
+        int failed = 0;
+        for (Rollout rollout : rollouts) {
+            if (rollout.status == Status.PENDING || rollout.status == Status.REDEPLOYED) return false;
+            if (rollout.status == Status.FAILED) failed++;
+        }
+        if (!complete()) {
+            return true;
+        }
+        int failedClusters = printClusters(logger);
+        if (failedClusters > 0) {
+            getContext().onFailure(new AbortException(Messages.Rancher2RedeployBuilder_clustersFailed(failedClusters, countClusters())));
+        } else if (failed > 0) {
+            getContext().onFailure(new AbortException(Messages.Rancher2RedeployBuilder_workloadsFailed(failed, rollouts.size())));
+        } else {
+            logger.println(Messages._Rancher2RedeployBuilder_success());
+            getContext().onSuccess(null);
+        }
+        return true;
+    }
+
+    /**
+     * print timing summary of each cluster, nothing if there is only one
+     * @return failed clusters
+     */
+    private int printClusters(PrintStream logger) {
+        if (countClusters() <= 1) {
+            return 0;
+        }
+        Map<String, Rollout> clusters = new LinkedHashMap<>();
+        for (Rollout rollout : rollouts) {
+            // the slowest rollout of a cluster, the first failed one if any
+            clusters.merge(rollout.cluster, rollout, (last, next) ->
+                    last.error != null || next.error == null && last.duration >= next.duration ? last : next);
+        }
+        int failed = 0;
+        for (Map.Entry<String, Rollout> cluster : clusters.entrySet()) {
+            Rollout rollout = cluster.getValue();
+            if (rollout.error == null) {
+                logger.println(Messages.Rancher2RedeployBuilder_clusterSucceed(cluster.getKey(), rollout.duration / 1000.0));
+            } else {
+                logger.println(Messages.Rancher2RedeployBuilder_clusterFailed(cluster.getKey(), rollout.duration / 1000.0, rollout.error));
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private int countClusters() {
+        Set<String> clusters = new HashSet<>();
+        for (Rollout rollout : rollouts) {
+            clusters.add(rollout.cluster);
+        }
+        return clusters.size();
+    }
+
+    private List<Rancher2WorkloadDeployer> getDeployers(PrintStream logger) throws IOException, InterruptedException {
+        if (deployers != null) {
+            return deployers;
+        }
+        // watch streams hold a thread, this execution polls pods list instead
+        String deployFinishMode = Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_WATCH.equals(config.deployFinishMode) ?
+                Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING : config.deployFinishMode;
+        Rancher2DeployConfig pollingConfig = new Rancher2DeployConfig(config.alwaysPull, config.pollingDeployFinish,
+                config.pollingDeployTimeout, deployFinishMode, config.pollingStrategy,
+                config.updateMode, config.templateUrl, config.templateVars, config.force);
+        Map<String, Rancher2Credentials> credentials = new HashMap<>();
+        List<Rancher2WorkloadDeployer> deployers = new ArrayList<>();
+        for (Rollout rollout : rollouts) {
+            // rollouts serialized before clusters were supported have no credential
+            String rolloutCredentialId = rollout.credentialId == null ? credentialId : rollout.credentialId;
+            Rancher2Credentials credential = credentials.get(rolloutCredentialId);
+            if (credential == null) {
+                credential = findCredential(rolloutCredentialId);
+                credentials.put(rolloutCredentialId, credential);
+            }
+            String endpoint = Rancher2RedeployBuilder.endpoint(credential);
+            CloseableHttpClient client = ClientBuilder.get(endpoint, credential.isTrustCert());
+            String url = Rancher2RedeployBuilder.workloadUrl(endpoint, rollout.url);
+            deployers.add(new Rancher2WorkloadDeployer(pollingConfig, logger, client, envVars, null, credential,
+                    url, rollout.images, rollout.metrics).preload(listed == null ? null : listed.remove(url))
+                    .async(ClientBuilder.async(endpoint, credential.isTrustCert())));
+        }
+        this.deployers = deployers;
+        return deployers;
+    }
+
+    private Rancher2Credentials findCredential(String credentialId) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Rancher2Credentials credential = CredentialsProvider.findCredentialById(
+                credentialId,
+                Rancher2Credentials.class,
+                getContext().get(Run.class),
+                (DomainRequirement) null);
+        metrics.record(Rancher2Metrics.PHASE_CREDENTIAL, startTime);
+        if (credential == null) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_missCredential(credentialId));
+        }
+        return credential;
+    }
+
+    /**
+     * mark the step completed and add metrics, a run still in progress when the step is stopped mustn't complete it again
+     * @return true if the caller completes the context, false if it was completed already
+     */
+    private synchronized boolean complete() {
+        if (completed) {
+            return false;
+        }
+        completed = true;
+        addMetrics();
+        return true;
+    }
+
+    /**
+     * attach timings to the build once the step completed, the execution keeps its own copy until then
+     */
+    private void addMetrics() {
+        try {
+            getContext().get(Run.class).addAction(metrics);
+        } catch (IOException | InterruptedException e) {
+            LOGGER.log(Level.WARNING, "add rancher2 metrics action error", e);
+        }
+    }
+
+    enum Status {
+        PENDING, REDEPLOYED, FINISHED, FAILED
+    }
+
+    static final class Rollout implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String url;
+        private final String images;
+        private final String credentialId;
+        private final String cluster;
+        private Status status = Status.PENDING;
+        // millis since step start when finished or failed
+        private long duration = 0;
+        private String error = null;
+        private Set<String> lastDeployPods = new HashSet<>();
+        private String createdName = null;
+        private boolean statusMode = false;
+        // time millis the rollout started, 0 before redeploy
+        private long startTime = 0;
+        private final Rancher2DeployMetrics.Workload metrics;
+
+        Rollout(String url, String images, String credentialId, String cluster, Rancher2DeployMetrics.Workload metrics) {
+            this.url = url;
+            this.images = images;
+            this.credentialId = credentialId;
+            this.cluster = cluster;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.jenkins.plugins.rancher2;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * redeploy and poll workloads of one cluster on the agent of build workspace, so HTTP traffic, JSON processing and
+ * templates of many concurrent builds are spread over agents instead of the controller.
+ * the agent gets the decrypted bearer token, its own pooled client, and reads file templates from the workspace.
+ * the timings are returned to the controller, also of a failed deploy. in-flight rollouts aren't saved by
+ * {@link Rancher2RolloutStore}, and status codes, transfer and pool stats of {@link Rancher2Metrics} stay on the agent
+ * @see Rancher2RedeployBuilder#setRunOnAgent(Boolean)
+ */
+final class Rancher2RemoteDeploy extends MasterToSlaveCallable<Rancher2DeployMetrics, IOException> {
+    private static final long serialVersionUID = 1L;
+
+    private final TaskListener listener;
+    private final EnvVars envVars;
+    private final FilePath workspace;
+    private final RemoteCredentials credential;
+    private final Rancher2Cluster cluster;
+    private final Rancher2WorkloadSelector selector;
+    private final List<Rancher2Workload> deployWorkloads;
+    private final Rancher2DeployConfig config;
+    private final int maxParallel;
+    private final boolean failFast;
+
+    Rancher2RemoteDeploy(TaskListener listener, EnvVars envVars, FilePath workspace, Rancher2Credentials credential,
+                         Rancher2Cluster cluster, Rancher2WorkloadSelector selector, List<Rancher2Workload> deployWorkloads, Rancher2DeployConfig config,
+                         int maxParallel, boolean failFast) throws IOException, InterruptedException {
+        this.listener = listener;
+        this.envVars = envVars;
+        this.workspace = workspace;
+        this.credential = new RemoteCredentials(credential.getId(), credential.getEndpoint(), credential.isTrustCert(), credential.getBearerToken());
+        this.cluster = cluster;
+        this.selector = selector;
+        this.deployWorkloads = deployWorkloads;
+        this.config = config;
+        this.maxParallel = maxParallel;
+        this.failFast = failFast;
+    }
+
+    /**
+     * @return timings of the workloads, recorded on agent
+     */
+    @Override
+    public Rancher2DeployMetrics call() throws IOException {
+        Rancher2DeployMetrics metrics = new Rancher2DeployMetrics();
+        try {
+            Rancher2RedeployBuilder.redeployWorkloads(listener.getLogger(), envVars, workspace, credential, cluster,
+                    selector, deployWorkloads, config, maxParallel, failFast, metrics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Failure(e, metrics);
+        } catch (IOException | RuntimeException e) {
+            throw new Failure(e, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * failure of the deploy on agent, with the timings recorded until then
+     */
+    static final class Failure extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final Rancher2DeployMetrics metrics;
+
+        private Failure(Exception cause, Rancher2DeployMetrics metrics) {
+            super(cause.getMessage(), cause);
+            this.metrics = metrics;
+        }
+
+        /**
+         * @return the failure as thrown on agent, an {@link AbortException} is printed without stack trace
+         */
+        IOException unwrap() {
+            Throwable cause = getCause();
+            if (cause instanceof AbortException) {
+                return new AbortException(cause.getMessage());
+            }
+            return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * credential with plain bearer token, {@link hudson.util.Secret} can't be decrypted on agent
+     */
+    private static final class RemoteCredentials extends BaseStandardCredentials implements Rancher2Credentials {
+        private static final long serialVersionUID = 1L;
+
+        private final String endpoint;
+        private final boolean trustCert;
+        private final String bearerToken;
+
+        private RemoteCredentials(String id, String endpoint, boolean trustCert, String bearerToken) {
+            super(CredentialsScope.GLOBAL, id, null);
+            this.endpoint = endpoint;
+            this.trustCert = trustCert;
+            this.bearerToken = bearerToken;
+        }
+
+        @Override
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        @Override
+        public boolean isTrustCert() {
+            return trustCert;
+        }
+
+        @Override
+        public String getBearerToken() {
+            return bearerToken;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * retries of one Rancher2.x endpoint client.
+ * GET requests, eg: load workload or pods, are retried with exponential backoff and jitter
+ * on transient I/O errors and 502/503/504, update requests are never retried here.
+ * 429 is handled by {@link Rancher2RateLimiter} for all requests
+ */
+final class Rancher2RetryHandler implements HttpRequestRetryHandler, ServiceUnavailableRetryStrategy {
+    private static final Logger LOGGER = Logger.getLogger(Rancher2RetryHandler.class.getName());
+
+    /**
+     * retries of an idempotent request
+     */
+    static final int MAX_RETRIES = Integer.getInteger(Rancher2RetryHandler.class.getName() + ".maxRetries", 3);
+    /**
+     * millis of first backoff, doubled by each retry
+     */
+    static final int BACKOFF_BASE = Integer.getInteger(Rancher2RetryHandler.class.getName() + ".backoffBase", 500);
+
+    private final Rancher2RateLimiter rateLimiter;
+    private final Rancher2CircuitBreaker circuitBreaker;
+
+    Rancher2RetryHandler(Rancher2RateLimiter rateLimiter, Rancher2CircuitBreaker circuitBreaker) {
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+        if (exception instanceof Rancher2CircuitBreaker.OpenException) {
+            return false;
+        }
+        if (!isTransient(exception)) {
+            return false;
+        }
+        circuitBreaker.recordFailure();
+        if (!isIdempotent(context) || executionCount > MAX_RETRIES) {
+            return false;
+        }
+        LOGGER.log(Level.FINE, "retry rancher request " + executionCount + " after error", exception);
+        return backoff(executionCount);
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == 429) {
+            return rateLimiter.retryRequest(response, executionCount, context);
+        }
+        if (!Rancher2CircuitBreaker.isFailure(statusCode) || !isIdempotent(context) || executionCount > MAX_RETRIES) {
+            return false;
+        }
+        LOGGER.log(Level.FINE, "retry rancher request {0} after status {1}", new Object[]{executionCount, statusCode});
+        return backoff(executionCount);
+    }
+
+    @Override
+    public long getRetryInterval() {
+        // backoff depends on execution count, it is waited in retryRequest
+        return 0;
+    }
+
+    /**
+     * @return false if interrupted while waiting
+     */
+    private static boolean backoff(int executionCount) {
+        long max = (long) BACKOFF_BASE << Math.min(executionCount - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(max / 2, max + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * timeouts and dropped connections, not unknown host or SSL errors which won't recover by retry
+     */
+    static boolean isTransient(IOException exception) {
+        if (exception instanceof ConnectionPoolTimeoutException) {
+            // all pooled connections are busy, the endpoint may be fine
+            return false;
+        }
+        return exception instanceof NoHttpResponseException
+                || exception instanceof ConnectTimeoutException
+                || exception instanceof ConnectException
+                || exception instanceof SocketTimeoutException
+                || exception instanceof SocketException;
+    }
+
+    private static boolean isIdempotent(HttpContext context) {
+        HttpRequest request = HttpClientContext.adapt(context).getRequest();
+        if (request == null) {
+            return false;
+        }
+        String method = request.getRequestLine().getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+}
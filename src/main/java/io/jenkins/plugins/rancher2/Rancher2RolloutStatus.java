@@ -0,0 +1,83 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * rollout progress of a Kubernetes workload resource, decided by its status like kubectl rollout status
+ * <ul>
+ *     <li>deployment: observedGeneration caught up, all replicas updated, no old replicas left, all updated replicas available</li>
+ *     <li>statefulset: observedGeneration caught up, all replicas updated and ready, currentRevision is updateRevision</li>
+ *     <li>daemonset: observedGeneration caught up, pods of all nodes updated and available</li>
+ * </ul>
+ */
+final class Rancher2RolloutStatus {
+    final boolean observed;
+    final boolean done;
+    final int desired;
+    final int updated;
+    final int ready;
+    final int available;
+
+    private Rancher2RolloutStatus(boolean observed, boolean done, int desired, int updated, int ready, int available) {
+        this.observed = observed;
+        this.done = done;
+        this.desired = desired;
+        this.updated = updated;
+        this.ready = ready;
+        this.available = available;
+    }
+
+    /**
+     * @return true if kind has rollout status
+     */
+    static boolean isSupported(String kind) {
+        return "deployment".equals(kind) || "statefulset".equals(kind) || "daemonset".equals(kind);
+    }
+
+    /**
+     * @param kind workload kind, eg: deployment
+     * @param resource Kubernetes resource of workload
+     */
+    static Rancher2RolloutStatus of(String kind, JsonNode resource) {
+        JsonNode spec = resource.path("spec");
+        JsonNode status = resource.path("status");
+        boolean observed = status.path("observedGeneration").asLong() >= resource.path("metadata").path("generation").asLong();
+        switch (kind) {
+            case "deployment": {
+                int desired = spec.path("replicas").asInt(1);
+                int updated = status.path("updatedReplicas").asInt();
+                int available = status.path("availableReplicas").asInt();
+                boolean done = observed && updated >= desired
+                        && status.path("replicas").asInt() <= updated
+                        && available >= updated;
+                return new Rancher2RolloutStatus(observed, done, desired, updated, status.path("readyReplicas").asInt(), available);
+            }
+            case "statefulset": {
+                int desired = spec.path("replicas").asInt(1);
+                int updated = status.path("updatedReplicas").asInt();
+                int ready = status.path("readyReplicas").asInt();
+                boolean onDelete = "OnDelete".equals(spec.path("updateStrategy").path("type").asText());
+                String updateRevision = status.path("updateRevision").asText();
+                boolean done = observed && ready >= desired
+                        && (onDelete || updated >= desired && updateRevision.equals(status.path("currentRevision").asText(updateRevision)));
+                return new Rancher2RolloutStatus(observed, done, desired, updated, ready, status.path("availableReplicas").asInt(ready));
+            }
+            case "daemonset": {
+                int desired = status.path("desiredNumberScheduled").asInt();
+                int updated = status.path("updatedNumberScheduled").asInt();
+                int available = status.path("numberAvailable").asInt();
+                boolean done = observed && updated >= desired && available >= desired;
+                return new Rancher2RolloutStatus(observed, done, desired, updated, status.path("numberReady").asInt(), available);
+            }
+            default:
+                throw new IllegalArgumentException("workload " + kind + " has no rollout status");
+        }
+    }
+
+    /**
+     * @return true if replica counts differ, rollout made progress
+     */
+    boolean progressed(Rancher2RolloutStatus last) {
+        return last == null || desired != last.desired || updated != last.updated || ready != last.ready || available != last.available;
+    }
+}
@@ -0,0 +1,146 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * in-flight rollouts persisted into JENKINS_HOME/rancher2-rollouts, one json file per workload.
+ * a rollout is saved once its redeploy request was accepted and removed when it finished or definitely failed,
+ * so a deploy of the same images started again, eg: build retried after controller restart,
+ * resumes waiting for the rollout instead of redeploying
+ */
+final class Rancher2RolloutStore {
+    private static final Logger LOGGER = Logger.getLogger(Rancher2RolloutStore.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(Rancher2RolloutStore.class.getName() + ".enabled", "true"));
+
+    private Rancher2RolloutStore() {
+    }
+
+    /**
+     * @param url workload API url
+     * @return rollout of workload which is still in its deadline, null if none
+     */
+    static Rollout load(String url) {
+        File file = file(url);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            JsonNode node = MAPPER.readTree(file);
+            Set<String> lastDeployPods = null;
+            if (node.path("lastDeployPods").isArray()) {
+                lastDeployPods = new HashSet<>();
+                for (JsonNode pod : node.path("lastDeployPods")) {
+                    lastDeployPods.add(pod.asText());
+                }
+            }
+            Rollout rollout = new Rollout(node.path("url").asText(), node.path("images").asText(null), lastDeployPods,
+                    node.path("createdName").asText(null), node.path("statusMode").asBoolean(),
+                    node.path("startTime").asLong(), node.path("deadline").asLong());
+            if (!url.equals(rollout.url) || System.currentTimeMillis() >= rollout.deadline) {
+                remove(url);
+                return null;
+            }
+            return rollout;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "read rollout of " + url + " error", e);
+            return null;
+        }
+    }
+
+    static void save(Rollout rollout) {
+        File file = file(rollout.url);
+        if (file == null) {
+            return;
+        }
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("url", rollout.url);
+        node.put("images", rollout.images);
+        if (rollout.lastDeployPods != null) {
+            ArrayNode pods = node.putArray("lastDeployPods");
+            rollout.lastDeployPods.forEach(pods::add);
+        }
+        node.put("createdName", rollout.createdName);
+        node.put("statusMode", rollout.statusMode);
+        node.put("startTime", rollout.startTime);
+        node.put("deadline", rollout.deadline);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            // a half written file must never be resumed
+            File tmp = new File(file.getPath() + ".tmp");
+            MAPPER.writeValue(tmp, node);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "save rollout of " + rollout.url + " error", e);
+        }
+    }
+
+    static void remove(String url) {
+        File file = file(url);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "remove rollout of " + url + " error", e);
+        }
+    }
+
+    private static File file(String url) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (!ENABLED || jenkins == null) {
+            return null;
+        }
+        return new File(new File(jenkins.getRootDir(), "rancher2-rollouts"), DigestUtils.sha256Hex(url) + ".json");
+    }
+
+    /**
+     * a redeploy of workload and what it is waited by
+     */
+    static final class Rollout {
+        final String url;
+        final String images;
+        // pod ids before redeploy, null if not polled by pods list
+        final Set<String> lastDeployPods;
+        // workload name if it was created from template
+        final String createdName;
+        final boolean statusMode;
+        final long startTime;
+        final long deadline;
+
+        Rollout(String url, String images, Set<String> lastDeployPods, String createdName, boolean statusMode, long startTime, long deadline) {
+            this.url = url;
+            this.images = images;
+            this.lastDeployPods = lastDeployPods;
+            this.createdName = createdName;
+            this.statusMode = statusMode;
+            this.startTime = startTime;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @param images expanded images of the new deploy
+         * @return true if the new deploy would send the same update again, false without images:
+         * a redeploy without images is always a deliberate restart
+         */
+        boolean isSameDeploy(String images) {
+            return images != null && images.equals(this.images);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * workload template parsed once into UTF-8 literal chunks and variable references, rendered straight into the
+ * request body without building the document as string or json tree.
+ * variables are $VAR or ${VAR} like {@link hudson.Util#replaceMacro(String, Map)}, unknown ones are kept as is,
+ * and $$ is a literal $.
+ * values of variables inside JSON strings are escaped, so a value with quote, backslash or line break keeps the
+ * document valid, other values are inserted as is, eg: "replicas": $REPLICAS
+ */
+final class Rancher2Template {
+    private static final Pattern VARIABLE = Pattern.compile("\\$([A-Za-z0-9_]+|\\{[A-Za-z0-9_.]+\\}|\\$)");
+
+    // literals[i] is followed by variable i, the last literal by nothing
+    private final byte[][] literals;
+    private final String[] names;
+    // variable as written in template, kept if it has no value
+    private final byte[][] sources;
+    // variable is inside a JSON string
+    private final boolean[] quoted;
+    // bytes of literal chunks
+    private final int size;
+
+    private Rancher2Template(byte[][] literals, String[] names, byte[][] sources, boolean[] quoted, int size) {
+        this.literals = literals;
+        this.names = names;
+        this.sources = sources;
+        this.quoted = quoted;
+        this.size = size;
+    }
+
+    /**
+     * @param content template content
+     */
+    static Rancher2Template compile(String content) {
+        List<byte[]> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<byte[]> sources = new ArrayList<>();
+        List<Boolean> quoted = new ArrayList<>();
+        boolean inString = false;
+        int size = 0;
+        int start = 0;
+        StringBuilder literal = new StringBuilder();
+        Matcher matcher = VARIABLE.matcher(content);
+        while (matcher.find()) {
+            String text = content.substring(start, matcher.start());
+            inString = scanString(text, inString);
+            literal.append(text);
+            start = matcher.end();
+            String name = matcher.group(1);
+            if (name.equals("$")) {
+                // escaped dollar
+                literal.append('$');
+                continue;
+            }
+            byte[] bytes = literal.toString().getBytes(StandardCharsets.UTF_8);
+            literals.add(bytes);
+            size += bytes.length;
+            literal.setLength(0);
+            names.add(name.startsWith("{") ? name.substring(1, name.length() - 1) : name);
+            sources.add(matcher.group().getBytes(StandardCharsets.UTF_8));
+            quoted.add(inString);
+        }
+        byte[] bytes = literal.append(content, start, content.length()).toString().getBytes(StandardCharsets.UTF_8);
+        literals.add(bytes);
+        size += bytes.length;
+
+        boolean[] quotedArray = new boolean[quoted.size()];
+        for (int i = 0; i < quotedArray.length; i++) {
+            quotedArray[i] = quoted.get(i);
+        }
+        return new Rancher2Template(literals.toArray(new byte[0][]), names.toArray(new String[0]),
+                sources.toArray(new byte[0][]), quotedArray, size);
+    }
+
+    /**
+     * @param inString true if literal starts inside a JSON string
+     * @return true if literal ends inside a JSON string
+     */
+    private static boolean scanString(String literal, boolean inString) {
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (inString && c == '\\') {
+                i++;
+            } else if (c == '"') {
+                inString = !inString;
+            }
+        }
+        return inString;
+    }
+
+    /**
+     * @return bytes of literal chunks, for cache size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param vars variable values
+     * @return repeatable json entity writing the rendered template, with content length
+     */
+    HttpEntity render(Map<String, String> vars) {
+        byte[][] values = new byte[names.length][];
+        long length = 0;
+        for (int i = 0; i < names.length; i++) {
+            String value = vars.get(names[i]);
+            if (value == null) {
+                values[i] = sources[i];
+            } else {
+                values[i] = quoted[i] ? JsonStringEncoder.getInstance().quoteAsUTF8(value) : value.getBytes(StandardCharsets.UTF_8);
+            }
+            length += values[i].length;
+        }
+        for (byte[] literal : literals) {
+            length += literal.length;
+        }
+        return new Body(values, length);
+    }
+
+    private final class Body extends AbstractHttpEntity {
+        private final byte[][] values;
+        private final long length;
+
+        private Body(byte[][] values, long length) {
+            this.values = values;
+            this.length = length;
+            setContentType(ContentType.APPLICATION_JSON.toString());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                out.write(literals[i]);
+                out.write(values[i]);
+            }
+            out.write(literals[values.length]);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.jenkins.plugins.rancher2;
+
+import com.google.common.io.ByteStreams;
+import hudson.AbortException;
+import hudson.FilePath;
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * controller-wide cache of workload templates, shared by all builds, compiled by {@link Rancher2Template#compile(String)}.
+ * a template is only compiled again when its content changed.
+ * http templates are revalidated by ETag/Last-Modified after TTL, file templates by file modified time and size.
+ * http templates are also copied into JENKINS_HOME/rancher2-templates, used when the template server is down
+ */
+final class Rancher2TemplateCache {
+    private static final Logger LOGGER = Logger.getLogger(Rancher2TemplateCache.class.getName());
+
+    /**
+     * seconds a cached http template is used without revalidation
+     */
+    static final long TTL = Long.getLong(Rancher2TemplateCache.class.getName() + ".ttl", 60);
+    static final int MAX_ENTRIES = Integer.getInteger(Rancher2TemplateCache.class.getName() + ".maxEntries", 100);
+    static final long MAX_BYTES = Long.getLong(Rancher2TemplateCache.class.getName() + ".maxBytes", 16 * 1024 * 1024);
+    static final boolean DISK_CACHE = Boolean.parseBoolean(System.getProperty(Rancher2TemplateCache.class.getName() + ".diskCache", "true"));
+
+    private static final Rancher2TemplateCache INSTANCE = new Rancher2TemplateCache(TTL * 1000);
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    private long bytes = 0;
+
+    Rancher2TemplateCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    static Rancher2TemplateCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return compiled template of http url
+     */
+    Rancher2Template loadHttp(PrintStream logger, CloseableHttpClient client, String url) throws IOException {
+        synchronized (lock(url)) {
+            Entry entry = getEntry(url);
+            if (entry == null) {
+                entry = readDisk(url);
+            }
+            if (entry != null && System.currentTimeMillis() - entry.checkedAt < ttlMillis) {
+                return entry.template;
+            }
+
+            RequestBuilder requestBuilder = RequestBuilder.get(url)
+                    .addHeader("Accept", "application/json");
+            if (entry != null && entry.eTag != null) {
+                requestBuilder.addHeader("If-None-Match", entry.eTag);
+            }
+            if (entry != null && entry.lastModified != null) {
+                requestBuilder.addHeader("If-Modified-Since", entry.lastModified);
+            }
+
+            try (CloseableHttpResponse response = client.execute(requestBuilder.build())) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 304 && entry != null) {
+                    EntityUtils.consume(response.getEntity());
+                    entry = new Entry(entry.template, entry.eTag, entry.lastModified, System.currentTimeMillis());
+                } else if (statusCode == 200) {
+                    Header eTag = response.getFirstHeader("ETag");
+                    Header lastModified = response.getFirstHeader("Last-Modified");
+                    String content = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                    entry = new Entry(Rancher2Template.compile(content),
+                            eTag == null ? null : eTag.getValue(),
+                            lastModified == null ? null : lastModified.getValue(),
+                            System.currentTimeMillis());
+                    writeDisk(url, content, entry);
+                } else {
+                    String message = Messages.Rancher2RedeployBuilder_badResponse(statusCode, EntityUtils.toString(response.getEntity()));
+                    if (entry == null || statusCode < 500) {
+                        throw new AbortException(message);
+                    }
+                    logger.println(Messages.Rancher2RedeployBuilder_templateStale(url, message));
+                    return entry.template;
+                }
+            } catch (AbortException e) {
+                throw e;
+            } catch (IOException e) {
+                if (entry == null) {
+                    throw e;
+                }
+                logger.println(Messages.Rancher2RedeployBuilder_templateStale(url, e.getMessage()));
+                return entry.template;
+            }
+            putEntry(url, entry);
+            return entry.template;
+        }
+    }
+
+    /**
+     * @param file template file, on controller or agent
+     * @return compiled template of file
+     */
+    Rancher2Template loadFile(FilePath file) throws IOException, InterruptedException {
+        // same path on different agents are different files
+        String key = "file:" + (file.isRemote() ? file.getChannel() + ":" : "") + file.getRemote();
+        String version = file.lastModified() + ":" + file.length();
+        synchronized (lock(key)) {
+            Entry entry = getEntry(key);
+            if (entry != null && version.equals(entry.lastModified)) {
+                return entry.template;
+            }
+            Rancher2Template template;
+            try (InputStream in = file.read()) {
+                template = Rancher2Template.compile(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+            }
+            putEntry(key, new Entry(template, null, version, System.currentTimeMillis()));
+            return template;
+        }
+    }
+
+    private Object lock(String key) {
+        return locks.computeIfAbsent(key, k -> new Object());
+    }
+
+    private synchronized Entry getEntry(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void putEntry(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.template.size();
+        }
+        bytes += entry.template.size();
+        // evict least recently used templates
+        while (!entries.isEmpty() && (entries.size() > MAX_ENTRIES || bytes > MAX_BYTES)) {
+            Map.Entry<String, Entry> eldest = entries.entrySet().iterator().next();
+            bytes -= eldest.getValue().template.size();
+            entries.remove(eldest.getKey());
+            locks.remove(eldest.getKey());
+        }
+    }
+
+    private static File diskFile(String url, String suffix) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (!DISK_CACHE || jenkins == null) {
+            return null;
+        }
+        return new File(new File(jenkins.getRootDir(), "rancher2-templates"), DigestUtils.sha256Hex(url) + suffix);
+    }
+
+    private static Entry readDisk(String url) {
+        File contentFile = diskFile(url, ".json");
+        File metaFile = diskFile(url, ".properties");
+        if (contentFile == null || !contentFile.isFile() || !metaFile.isFile()) {
+            return null;
+        }
+        try (InputStream metaStream = new FileInputStream(metaFile)) {
+            Properties meta = new Properties();
+            meta.load(metaStream);
+            String content = new String(Files.readAllBytes(contentFile.toPath()), StandardCharsets.UTF_8);
+            // always revalidate a disk copy before using it
+            return new Entry(Rancher2Template.compile(content), meta.getProperty("etag"), meta.getProperty("lastModified"), 0);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "read cached template " + url + " error", e);
+            return null;
+        }
+    }
+
+    private static void writeDisk(String url, String content, Entry entry) {
+        File contentFile = diskFile(url, ".json");
+        File metaFile = diskFile(url, ".properties");
+        if (contentFile == null) {
+            return;
+        }
+        Properties meta = new Properties();
+        meta.setProperty("url", url);
+        if (entry.eTag != null) meta.setProperty("etag", entry.eTag);
+        if (entry.lastModified != null) meta.setProperty("lastModified", entry.lastModified);
+        try {
+            Files.createDirectories(contentFile.getParentFile().toPath());
+            Files.write(contentFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            try (OutputStream metaStream = new FileOutputStream(metaFile)) {
+                meta.store(metaStream, null);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "write cached template " + url + " error", e);
+        }
+    }
+
+    private static final class Entry {
+        private final Rancher2Template template;
+        private final String eTag;
+        private final String lastModified;
+        private final long checkedAt;
+
+        private Entry(Rancher2Template template, String eTag, String lastModified, long checkedAt) {
+            this.template = template;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * controller-wide transferred bytes of one Rancher2.x endpoint, on wire and decoded.
+ * responses are negotiated by Accept-Encoding: gzip,deflate of HttpClient and decoded by it,
+ * {@link #wireCounter()} counts before and {@link #decodedCounter()} after decoding.
+ * request bodies are gzip compressed only if {@link #COMPRESS_REQUESTS} is set, the server must accept Content-Encoding: gzip
+ */
+final class Rancher2Transfer {
+    /**
+     * compress update request bodies
+     */
+    static final boolean COMPRESS_REQUESTS = Boolean.getBoolean(Rancher2Transfer.class.getName() + ".compressRequests");
+    /**
+     * smaller request bodies are sent as is, gzip overhead outweighs savings
+     */
+    static final int COMPRESS_MIN_SIZE = Integer.getInteger(Rancher2Transfer.class.getName() + ".compressMinSize", 1024);
+
+    private static final ConcurrentMap<String, Rancher2Transfer> TRANSFERS = new ConcurrentHashMap<>();
+
+    private final LongAdder receivedWire = new LongAdder();
+    private final LongAdder receivedDecoded = new LongAdder();
+    private final LongAdder sentWire = new LongAdder();
+    private final LongAdder sentDecoded = new LongAdder();
+
+    private Rancher2Transfer() {
+    }
+
+    /**
+     * @return transfer counters of rancher endpoint
+     */
+    static Rancher2Transfer get(String endpoint) {
+        return TRANSFERS.computeIfAbsent(endpoint, k -> new Rancher2Transfer());
+    }
+
+    /**
+     * @return stats of all endpoints
+     */
+    static Map<String, Stats> getAllStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (Map.Entry<String, Rancher2Transfer> entry : TRANSFERS.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    Stats getStats() {
+        return new Stats(receivedWire.sum(), receivedDecoded.sum(), sentWire.sum(), sentDecoded.sum());
+    }
+
+    /**
+     * @return response interceptor counting bytes before decoding, must run before content decoding
+     */
+    HttpResponseInterceptor wireCounter() {
+        return (HttpResponse response, HttpContext context) -> count(response, receivedWire);
+    }
+
+    /**
+     * @return response interceptor counting bytes after decoding, must run after content decoding
+     */
+    HttpResponseInterceptor decodedCounter() {
+        return (HttpResponse response, HttpContext context) -> count(response, receivedDecoded);
+    }
+
+    /**
+     * @param bytes body of a response read without content decoding, eg: by {@link Rancher2AsyncClient}
+     */
+    void received(long bytes) {
+        receivedWire.add(bytes);
+        receivedDecoded.add(bytes);
+    }
+
+    private static void count(HttpResponse response, LongAdder counter) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new CountingEntity(entity, counter));
+        }
+    }
+
+    /**
+     * @param json request body
+     * @return json entity, gzip compressed if enabled and large enough
+     */
+    HttpEntity jsonEntity(String json) throws IOException {
+        return jsonEntity(new ByteArrayEntity(json.getBytes(StandardCharsets.UTF_8), ContentType.APPLICATION_JSON));
+    }
+
+    /**
+     * @param json repeatable request body with content length, eg: rendered {@link Rancher2Template}
+     * @return json entity, gzip compressed if enabled and large enough
+     */
+    HttpEntity jsonEntity(HttpEntity json) throws IOException {
+        long length = json.getContentLength();
+        sentDecoded.add(length);
+        if (!COMPRESS_REQUESTS || length < COMPRESS_MIN_SIZE) {
+            sentWire.add(length);
+            return json;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) (length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            json.writeTo(gzip);
+        }
+        sentWire.add(compressed.size());
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+        return entity;
+    }
+
+    private static final class CountingEntity extends HttpEntityWrapper {
+        private final LongAdder counter;
+
+        private CountingEntity(HttpEntity entity, LongAdder counter) {
+            super(entity);
+            this.counter = counter;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        counter.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        counter.add(n);
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
+    static final class Stats {
+        final long receivedWire;
+        final long receivedDecoded;
+        final long sentWire;
+        final long sentDecoded;
+
+        private Stats(long receivedWire, long receivedDecoded, long sentWire, long sentDecoded) {
+            this.receivedWire = receivedWire;
+            this.receivedDecoded = receivedDecoded;
+            this.sentWire = sentWire;
+            this.sentDecoded = sentDecoded;
+        }
+    }
+}
@@ -0,0 +1,1061 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * redeploy one Rancher2.x workload, created by {@link Rancher2RedeployBuilder} or {@link Rancher2RedeployStepExecution}
+ * for each workload of a step
+ */
+class Rancher2WorkloadDeployer {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * pods per page of pods list requests, tunable by system property
+     */
+    static final int PODS_PAGE_LIMIT = Integer.getInteger(Rancher2WorkloadDeployer.class.getName() + ".podsPageLimit", 500);
+    /**
+     * retries of a patch or put update rejected by concurrent workload modification
+     */
+    static final int PATCH_RETRIES = Integer.getInteger(Rancher2WorkloadDeployer.class.getName() + ".patchRetries", 5);
+
+    private final PrintStream logger;
+    private final CloseableHttpClient client;
+    private final EnvVars envVars;
+    private final FilePath workspace;
+    private final Rancher2Credentials credential;
+    private final String url;
+    private final String images;
+    private final boolean alwaysPull;
+    private final boolean pollingDeployFinish;
+    private final int pollingDeployTimeout;
+    private final String deployFinishMode;
+    private final String pollingStrategy;
+    private final String updateMode;
+    private final String templateUrl;
+    private final String templateVars;
+    private final boolean force;
+    private final Rancher2DeployMetrics.Workload metrics;
+
+    // last response of the first page of the unfiltered pods list, revalidated by If-None-Match. only this page is
+    // kept between pollings, at most PODS_PAGE_LIMIT pods, the other pages are parsed and dropped. each polling
+    // still collects the ids and states of all pods of the workload
+    private String firstPageUrl = null;
+    private Rancher2PodList firstPage = null;
+    // pod states between pollings, only changes are logged
+    private final Rancher2PodProgress podProgress;
+    // workload name if the workload was created from template
+    private String createdName = null;
+    private Rancher2KubeWorkload kubeWorkload = null;
+    private Boolean statusMode = null;
+    // time millis the rollout started, earlier if it was resumed
+    private long rolloutStartTime = System.currentTimeMillis();
+    // workload of selector list response or loaded while the pods snapshot was in flight, used instead of the first GET before PUT
+    private JsonNode preloaded = null;
+    // non-blocking reads overlapping with requests of this thread, null to send all by client
+    private Rancher2AsyncClient asyncClient = null;
+    // first page of the pods snapshot sent by asyncClient, see loadPods
+    private Future<HttpResponse> pendingFirstPage = null;
+    // fingerprint of the images to update, see Rancher2DeployedImages
+    private String fingerprint = null;
+    // true if the workload already runs the images and redeploy was skipped
+    private boolean skipped = false;
+
+    Rancher2WorkloadDeployer(
+            Rancher2DeployConfig config,
+            PrintStream logger,
+            CloseableHttpClient client,
+            EnvVars envVars,
+            FilePath workspace,
+            Rancher2Credentials credential,
+            String url,
+            String images,
+            Rancher2DeployMetrics.Workload metrics
+    ) {
+        this.logger = logger;
+        this.client = client;
+        this.envVars = envVars;
+        this.workspace = workspace;
+        this.credential = credential;
+        this.url = url;
+        this.images = images;
+        this.alwaysPull = config.alwaysPull;
+        this.pollingDeployFinish = config.pollingDeployFinish;
+        this.pollingDeployTimeout = config.pollingDeployTimeout;
+        this.deployFinishMode = config.deployFinishMode;
+        this.pollingStrategy = config.pollingStrategy;
+        this.updateMode = config.updateMode;
+        this.templateUrl = config.templateUrl;
+        this.templateVars = config.templateVars;
+        this.force = config.force;
+        this.metrics = metrics;
+        this.podProgress = new Rancher2PodProgress(url);
+    }
+
+    /**
+     * @param workload workload from a list response, eg: of {@link Rancher2WorkloadSelector}, saves one GET before PUT update.
+     *                 it is modified into the PUT body
+     */
+    Rancher2WorkloadDeployer preload(JsonNode workload) {
+        this.preloaded = workload;
+        return this;
+    }
+
+    /**
+     * @param asyncClient non-blocking client of the endpoint, see {@link ClientBuilder#async}, may be null
+     */
+    Rancher2WorkloadDeployer async(Rancher2AsyncClient asyncClient) {
+        this.asyncClient = asyncClient;
+        return this;
+    }
+
+    /**
+     * redeploy and wait until finished, blocks current thread
+     */
+    public void deploy() throws InterruptedException, IOException {
+        Rancher2RolloutStore.Rollout rollout = redeployOrResume();
+        Set<String> currentDeployPods = rollout.lastDeployPods;
+
+        // only a rollout waited for is finished, a deploy without polling leaves its images pending
+        boolean waited = false;
+        try {
+            if (rollout.statusMode) {
+                pollingWaitRolledOut();
+                waited = true;
+            } else if (createdName != null) {
+                if (pollingDeployFinish) {
+                    pollingWaitPodsDeployFinish(createdName);
+                    waited = true;
+                }
+            } else if(currentDeployPods != null && currentDeployPods.size() > 0) {
+                pollingCheckPodsDeployFinish(currentDeployPods);
+                waited = true;
+            }
+        } catch (AbortException e) {
+            // rollout failed or timed out, interrupted or broken connection may be resumed
+            forgetRollout();
+            throw e;
+        }
+        forgetRollout();
+        if (waited) {
+            rolloutFinished();
+        }
+    }
+
+    /**
+     * send redeploy request and save the rollout, or resume the saved rollout of an earlier redeploy of
+     * the same images which is still in its deadline, eg: the build was retried after controller restart
+     * @return rollout to wait for
+     */
+    Rancher2RolloutStore.Rollout redeployOrResume() throws InterruptedException, IOException {
+        String expandImages = StringUtils.isBlank(images) ? null : envVars.expand(images);
+        Rancher2RolloutStore.Rollout rollout = pollingDeployFinish ? Rancher2RolloutStore.load(url) : null;
+        if (rollout != null && rollout.isSameDeploy(expandImages)) {
+            logger.println(Messages.Rancher2RedeployBuilder_resumeRollout(url, (System.currentTimeMillis() - rollout.startTime) / 1000));
+            statusMode = rollout.statusMode;
+            createdName = rollout.createdName;
+            rolloutStartTime = rollout.startTime;
+            // the images applied by the earlier redeploy are rolled out once the resumed rollout finished
+            if (expandImages != null) {
+                fingerprint = Rancher2DeployedImages.fingerprint(parseImageTags(expandImages));
+            }
+            return rollout;
+        }
+
+        boolean status = pollingDeployFinish && isStatusMode();
+        Set<String> lastDeployPods = null;
+        rolloutStartTime = System.currentTimeMillis();
+        if (pollingDeployFinish && !status) {
+            lastDeployPods = loadPods();
+        }
+        redeploy();
+        if (skipped) {
+            // nothing to wait for
+            return new Rancher2RolloutStore.Rollout(url, expandImages, Collections.emptySet(), null, false,
+                    rolloutStartTime, rolloutStartTime);
+        }
+        rollout = new Rancher2RolloutStore.Rollout(url, expandImages, lastDeployPods, createdName, status,
+                rolloutStartTime, rolloutStartTime + pollingDeployTimeout * 1000L);
+        if (pollingDeployFinish) {
+            Rancher2RolloutStore.save(rollout);
+        }
+        return rollout;
+    }
+
+    /**
+     * the rollout finished or failed, it won't be resumed
+     */
+    void forgetRollout() {
+        forgetPods();
+        if (pollingDeployFinish) {
+            Rancher2RolloutStore.remove(url);
+        }
+    }
+
+    /**
+     * @return true if rollout is checked by workload status, false if by pods list
+     */
+    boolean isStatusMode() throws InterruptedException, IOException {
+        if (statusMode == null) {
+            statusMode = Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_STATUS.equals(deployFinishMode);
+            if (statusMode && !getKubeWorkload().isRolloutAvailable()) {
+                logger.println(Messages.Rancher2RedeployBuilder_statusUnavailable(url));
+                statusMode = false;
+            }
+        }
+        return statusMode;
+    }
+
+    /**
+     * poll once
+     * @return true if all replicas of workload are updated and available
+     */
+    boolean isRolledOut() throws InterruptedException, IOException {
+        if (loadRolloutStatus(null).done) {
+            rolloutFinished();
+            return true;
+        }
+        return false;
+    }
+
+    private Rancher2RolloutStatus loadRolloutStatus(Rancher2RolloutStatus last) throws InterruptedException, IOException {
+        metrics.poll();
+        JsonNode resource = getKubeWorkload().get();
+        if (resource == null) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_badWorkload(url));
+        }
+        String deadlineExceeded = Rancher2PodFailure.progressDeadlineExceeded(resource);
+        if (deadlineExceeded != null) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_progressDeadlineExceeded(url, deadlineExceeded));
+        }
+        Rancher2RolloutStatus status = getKubeWorkload().rolloutStatus(resource);
+        if (status.observed && status.updated > 0) {
+            metrics.newPodSeen();
+        }
+        if (status.progressed(last)) {
+            logger.println(Messages.Rancher2RedeployBuilder_rolloutStatus(url, status.desired, status.updated, status.ready, status.available));
+        } else if (status.observed && status.updated > status.available) {
+            // rollout is stuck, look for updated pods which won't become available
+            getWorkloadPods(null, Collections.emptySet());
+        }
+        return status;
+    }
+
+    private void pollingWaitRolledOut() throws InterruptedException, IOException {
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(pollingStrategy, rolloutStartTime, pollingDeployTimeout);
+        scheduler.waitFirst();
+        Rancher2RolloutStatus last = null;
+        while (scheduler.hasTime()) {
+            Rancher2RolloutStatus status = loadRolloutStatus(last);
+            if (status.done) {
+                return;
+            }
+            if (last != null && status.progressed(last)) {
+                scheduler.reset();
+            }
+            last = status;
+
+            scheduler.waitNext();
+        }
+        throw new AbortException(Messages.Rancher2RedeployBuilder_pollingDeployTimeout(scheduler.elapsed()));
+    }
+
+    private Rancher2KubeWorkload getKubeWorkload() throws InterruptedException, IOException {
+        if (kubeWorkload == null) {
+            kubeWorkload = new Rancher2KubeWorkload(client, credential.getBearerToken(), credential.getEndpoint(), url);
+        }
+        return kubeWorkload;
+    }
+
+    /**
+     * with the async client, the first page of pods is in flight while the workload to update is loaded by this thread,
+     * both are loaded before the update is sent, so no new pod is in the snapshot
+     * @return current pod ids of workload
+     */
+    private Set<String> loadPods() throws InterruptedException, IOException {
+        if (asyncClient != null && isWorkloadLoadedFirst()) {
+            try {
+                pendingFirstPage = asyncClient.execute(podsPageRequest(podsUrl(), null));
+            } catch (Rancher2CircuitBreaker.OpenException e) {
+                // the blocking client fails at once too
+            }
+        }
+        try {
+            if (pendingFirstPage != null) {
+                preloaded = prefetchWorkload();
+            }
+            return getWorkloadPods(null, null);
+        } finally {
+            // still in flight if loading the workload failed
+            if (pendingFirstPage != null) {
+                pendingFirstPage.cancel(true);
+                pendingFirstPage = null;
+            }
+        }
+    }
+
+    /**
+     * @return true if redeploy starts by GET of the workload for a PUT update
+     */
+    private boolean isWorkloadLoadedFirst() {
+        if (preloaded != null || StringUtils.isBlank(images) || Rancher2RedeployBuilder.UPDATE_MODE_PATCH.equals(updateMode)) {
+            return false;
+        }
+        return !isRecentlyRolledOut(parseImageTags(envVars.expand(images)));
+    }
+
+    /**
+     * GET the workload to update while the pods snapshot is in flight
+     * @return workload, null if it can't be loaded, {@link #putWorkloadRedeploy} loads it again and reports the error
+     */
+    private JsonNode prefetchWorkload() throws InterruptedException, IOException {
+        HttpUriRequest request = RequestBuilder.get(url)
+                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                .addHeader("Accept", "application/json")
+                .build();
+        long startTime = System.currentTimeMillis();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            if (response.getStatusLine().getStatusCode() == 200) {
+                return MAPPER.readTree(response.getEntity().getContent());
+            }
+            EntityUtils.consume(response.getEntity());
+            return null;
+        } finally {
+            metrics.record(Rancher2Metrics.PHASE_WORKLOAD_GET, startTime);
+        }
+    }
+
+    /**
+     * send redeploy request, or create workload from template if it doesn't exist
+     */
+    void redeploy() throws InterruptedException, IOException {
+        metrics.redeployStarted();
+        if (StringUtils.isBlank(images)) {
+            putActionRedeploy();
+        } else {
+            putConfigRedeploy();
+            if (!skipped) {
+                // only a rollout seen finished is trusted, without polling a re-run redeploys
+                Rancher2DeployedImages.get().applied(url, fingerprint, false);
+            }
+        }
+    }
+
+    /**
+     * @return workload name if the workload was created from template by {@link #redeploy()}
+     */
+    String getCreatedName() {
+        return createdName;
+    }
+
+    /**
+     * poll once
+     * @param lastDeployPods pod ids before redeploy
+     * @return true if none of these pods exists
+     */
+    boolean isPodsDeployed(Set<String> lastDeployPods) throws InterruptedException, IOException {
+        metrics.poll();
+        Set<String> deployPods = getWorkloadPods(null, lastDeployPods);
+        checkNewPods(deployPods, lastDeployPods);
+        deployPods.retainAll(lastDeployPods);
+        if (deployPods.isEmpty()) {
+            rolloutFinished();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * poll once
+     * @return true if any pod of workload is running
+     */
+    boolean isPodRunning() throws InterruptedException, IOException {
+        metrics.poll();
+        if (getWorkloadPods("running", Collections.emptySet()).isEmpty()) {
+            return false;
+        }
+        metrics.newPodSeen();
+        rolloutFinished();
+        return true;
+    }
+
+    /**
+     * the rollout ended, drop the kept pods page
+     */
+    private void forgetPods() {
+        firstPageUrl = null;
+        firstPage = null;
+    }
+
+    /**
+     * the images are rolled out, an identical redeploy can be skipped
+     */
+    private void rolloutFinished() {
+        forgetPods();
+        metrics.rolloutFinished();
+        if (fingerprint != null && !skipped) {
+            Rancher2DeployedImages.get().rolledOut(url);
+        }
+    }
+
+    /**
+     * @return true if redeploy was skipped because the workload already runs the images
+     */
+    boolean isSkipped() {
+        return skipped;
+    }
+
+    private void checkNewPods(Set<String> deployPods, Set<String> lastDeployPods) {
+        if (hasNewPod(deployPods, lastDeployPods)) {
+            metrics.newPodSeen();
+        }
+    }
+
+    /**
+     * @return true if any pod of deployPods is not in lastDeployPods
+     */
+    static boolean hasNewPod(Set<String> deployPods, Set<String> lastDeployPods) {
+        for (String pod : deployPods) {
+            if (!lastDeployPods.contains(pod)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param selectedState only return pods of this state, null for all
+     * @param lastDeployPods pod ids before redeploy, abort if any other pod failed, null to skip the check
+     */
+    private Set<String> getWorkloadPods(String selectedState, Set<String> lastDeployPods) throws InterruptedException, IOException {
+        // page by server, follow next page links
+        String podsUrl = podsUrl();
+        if (StringUtils.isNotBlank(selectedState)) {
+            // filtered by server, usually a short list. failed pods are never in it, so while none is selected
+            // the unfiltered list is loaded for the failure check and progress
+            Set<String> selectedPods = new HashSet<>();
+            String pageUrl = podsUrl + "&state=" + URLEncoder.encode(selectedState, "UTF-8");
+            while (pageUrl != null) {
+                Rancher2PodList page = getWorkloadPodsPage(pageUrl, false);
+                selectedPods.addAll(page.getStates().keySet());
+                pageUrl = page.getNext();
+            }
+            if (!selectedPods.isEmpty() || lastDeployPods == null) {
+                return selectedPods;
+            }
+        }
+
+        String pageUrl = podsUrl;
+        Set<String> workloadPods = new HashSet<>();
+        Map<String, String> states = new HashMap<>();
+        boolean first = true;
+        while (pageUrl != null) {
+            Rancher2PodList page = getWorkloadPodsPage(pageUrl, first);
+            first = false;
+            if (lastDeployPods != null) {
+                checkPodFailures(page.getFailures(), lastDeployPods);
+            }
+            for (Map.Entry<String, String> pod : page.getStates().entrySet()) {
+                String podState = pod.getValue();
+                states.put(pod.getKey(), podState);
+                if (StringUtils.isNotBlank(selectedState) && StringUtils.isNotBlank(podState) &&
+                        !Objects.equals(podState.toLowerCase(), selectedState)) continue;
+                workloadPods.add(pod.getKey());
+            }
+            pageUrl = page.getNext();
+        }
+        if (lastDeployPods == null) {
+            podProgress.snapshot(logger, states);
+        } else {
+            podProgress.update(logger, states, lastDeployPods);
+        }
+        return workloadPods;
+    }
+
+    /**
+     * @return url of the first page of the unfiltered pods list
+     */
+    private String podsUrl() throws IOException {
+        String[] urlInfo = url.split("\\/workloads\\/");
+        if(urlInfo.length != 2) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_badWorkload(url));
+        }
+        return urlInfo[0] + "/pods?workloadId=" + URLEncoder.encode(urlInfo[1], "UTF-8") + "&limit=" + PODS_PAGE_LIMIT;
+    }
+
+    private void checkPodFailures(Map<String, String> failures, Set<String> lastDeployPods) throws AbortException {
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            if (!lastDeployPods.contains(failure.getKey())) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_podFailed(failure.getKey(), failure.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @param first true if pageUrl is the first page of the unfiltered list, its response is kept for revalidation
+     */
+    private Rancher2PodList getWorkloadPodsPage(String pageUrl, boolean first) throws InterruptedException, IOException {
+        if (first && pendingFirstPage != null) {
+            Future<HttpResponse> pending = pendingFirstPage;
+            pendingFirstPage = null;
+            Rancher2PodList page = awaitPodsPage(pending);
+            if (page != null) {
+                firstPageUrl = pageUrl;
+                firstPage = page;
+                return page;
+            }
+            // failed or throttled, sent again by the blocking client which retries it
+        }
+        Rancher2PodList lastPage = first && pageUrl.equals(firstPageUrl) ? firstPage : null;
+        try (CloseableHttpResponse response = client.execute(podsPageRequest(pageUrl, lastPage))) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 304 && lastPage != null) {
+                // unchanged since last polling, reuse parsed page
+                EntityUtils.consume(response.getEntity());
+                return lastPage;
+            }
+            if (statusCode != 200) {
+                throw new AbortException(
+                        Messages.Rancher2RedeployBuilder_badResponse(
+                                statusCode,
+                                EntityUtils.toString(response.getEntity())
+                        )
+                );
+            }
+            Header eTag = response.getFirstHeader("ETag");
+            Rancher2PodList page = Rancher2PodList.parse(response.getEntity().getContent(), eTag == null ? null : eTag.getValue());
+            if (first) {
+                firstPageUrl = pageUrl;
+                firstPage = page;
+            }
+            return page;
+        }
+    }
+
+    /**
+     * @param lastPage last response of the page, revalidated by its ETag, may be null
+     */
+    private HttpUriRequest podsPageRequest(String pageUrl, Rancher2PodList lastPage) throws InterruptedException, IOException {
+        RequestBuilder requestBuilder = RequestBuilder.get(pageUrl)
+                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                .addHeader("Accept", "application/json");
+        if (lastPage != null && lastPage.getETag() != null) {
+            requestBuilder.addHeader("If-None-Match", lastPage.getETag());
+        }
+        return requestBuilder.build();
+    }
+
+    /**
+     * @return page of a response of the async client, null if it failed or its status isn't 200
+     */
+    private static Rancher2PodList awaitPodsPage(Future<HttpResponse> pending) throws InterruptedException {
+        HttpResponse response;
+        try {
+            response = pending.get();
+        } catch (ExecutionException e) {
+            return null;
+        }
+        try {
+            if (response.getStatusLine().getStatusCode() != 200) {
+                return null;
+            }
+            Header eTag = response.getFirstHeader("ETag");
+            return Rancher2PodList.parse(response.getEntity().getContent(), eTag == null ? null : eTag.getValue());
+        } catch (IOException e) {
+            return null;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private void pollingCheckPodsDeployFinish(Set<String> lastDeployPods) throws InterruptedException, IOException {
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(pollingStrategy, rolloutStartTime, pollingDeployTimeout);
+        if (Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_WATCH.equals(deployFinishMode)) {
+            if (createPodWatcher().waitPodsDeleted(lastDeployPods, scheduler.getDeadline(), () -> getWorkloadPods(null, lastDeployPods))) {
+                return;
+            }
+        } else {
+            scheduler.waitFirst();
+        }
+        int remaining = lastDeployPods.size();
+        while (scheduler.hasTime()) {
+            metrics.poll();
+            Set<String> deployPods = getWorkloadPods(null, lastDeployPods);
+            checkNewPods(deployPods, lastDeployPods);
+            deployPods.retainAll(lastDeployPods);
+            if(deployPods.size() <= 0) {
+                return;
+            }
+            if (deployPods.size() < remaining) {
+                remaining = deployPods.size();
+                scheduler.reset();
+            }
+
+            scheduler.waitNext();
+        }
+        throw new AbortException(Messages.Rancher2RedeployBuilder_pollingDeployTimeout(scheduler.elapsed()));
+    }
+
+    private void pollingWaitPodsDeployFinish(String nameId) throws InterruptedException, IOException {
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(pollingStrategy, rolloutStartTime, pollingDeployTimeout);
+        if (Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_WATCH.equals(deployFinishMode)) {
+            if (createPodWatcher().waitPodRunning(scheduler.getDeadline(), () -> getWorkloadPods("running", Collections.emptySet()))) {
+                return;
+            }
+        } else {
+            scheduler.waitFirst();
+        }
+        while (scheduler.hasTime()) {
+            metrics.poll();
+            Set<String> deployPods = getWorkloadPods("running", Collections.emptySet());
+            if(deployPods.size() > 0) {
+                metrics.newPodSeen();
+                return;
+            }
+
+            scheduler.waitNext();
+        }
+        throw new AbortException(Messages.Rancher2RedeployBuilder_pollingDeployTimeout(scheduler.elapsed()));
+    }
+
+    private Rancher2PodWatcher createPodWatcher() throws InterruptedException, IOException {
+        // pods are watched by the workload selector, Rancher's workloadselector label if it can't be read
+        JsonNode resource = getKubeWorkload().isAvailable() ? getKubeWorkload().get() : null;
+        JsonNode matchLabels = resource == null ? null : resource.path("spec").path("selector").path("matchLabels");
+        return new Rancher2PodWatcher(logger, client, credential.getBearerToken(), credential.getEndpoint(), url, matchLabels);
+    }
+
+    private void putActionRedeploy()  throws InterruptedException, IOException {
+        HttpUriRequest request = RequestBuilder.post(url + "?action=redeploy")
+                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                .addHeader("Accept", "application/json")
+                .build();
+
+        int statusCode;
+        String message;
+        long startTime = System.currentTimeMillis();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 200) {
+                EntityUtils.consume(response.getEntity());
+                return;
+            }
+            message = Messages.Rancher2RedeployBuilder_badResponse(statusCode, EntityUtils.toString(response.getEntity()));
+        } finally {
+            metrics.record(Rancher2Metrics.PHASE_UPDATE, startTime);
+        }
+        if (statusCode == 404) {
+            logger.println(message);
+            if(postConfigDeploy()) return;
+        }
+        throw new AbortException(message);
+    }
+
+    private void putConfigRedeploy() throws InterruptedException, IOException {
+        Map<String, String> imageTags = new HashMap<>();
+        String expandImages = null;
+        if (StringUtils.isNotBlank(images)) {
+            expandImages = envVars.expand(images);
+            imageTags = parseImageTags(expandImages);
+        }
+        fingerprint = Rancher2DeployedImages.fingerprint(imageTags);
+        if (isRecentlyRolledOut(imageTags)) {
+            skipUnchanged(expandImages);
+            return;
+        }
+        if (Rancher2RedeployBuilder.UPDATE_MODE_PATCH.equals(updateMode)) {
+            Rancher2KubeWorkload patcher = getKubeWorkload();
+            if (patcher.isAvailable()) {
+                patchConfigRedeploy(patcher, imageTags, expandImages);
+                return;
+            }
+            logger.println(Messages.Rancher2RedeployBuilder_patchUnavailable(url));
+        }
+        for (int attempt = 0; ; attempt++) {
+            if (putWorkloadRedeploy(imageTags, expandImages)) {
+                return;
+            }
+            if (attempt >= PATCH_RETRIES) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_patchConflictFailed(url, PATCH_RETRIES));
+            }
+            logger.println(Messages.Rancher2RedeployBuilder_patchConflict(url, attempt + 1, PATCH_RETRIES));
+            Thread.sleep(ThreadLocalRandom.current().nextLong(100, 500));
+        }
+    }
+
+    /**
+     * GET workload, modify images and PUT it back
+     * @return false if workload was modified between GET and PUT, should retry from GET
+     */
+    private boolean putWorkloadRedeploy(Map<String, String> imageTags, String expandImages) throws InterruptedException, IOException {
+        Set<String> workloadImages = new HashSet<>();
+        Set<String> updatedImages = new HashSet<>();
+
+        // listed workload is only used once, a conflict retry loads it again
+        JsonNode root = preloaded;
+        preloaded = null;
+        int statusCode = 200;
+        String message = null;
+        long startTime;
+        if (root == null) {
+            HttpUriRequest request = RequestBuilder.get(url)
+                    .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                    .addHeader("Accept", "application/json")
+                    .build();
+            startTime = System.currentTimeMillis();
+            try (CloseableHttpResponse response = client.execute(request)) {
+                statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 200) {
+                    root = MAPPER.readTree(response.getEntity().getContent());
+                } else {
+                    message = Messages.Rancher2RedeployBuilder_badResponse(statusCode, EntityUtils.toString(response.getEntity()));
+                }
+            } finally {
+                metrics.record(Rancher2Metrics.PHASE_WORKLOAD_GET, startTime);
+            }
+        }
+        if (root == null) {
+            if (statusCode == 404) {
+                logger.println(message);
+                if(postConfigDeploy()) return true;
+            }
+            throw new AbortException(message);
+        }
+
+        // modify json body for PUT request
+        JsonNode containers = root.get("containers");
+        if (containers != null && isUnchanged(containers, imageTags)) {
+            if (!force) {
+                skipUnchanged(expandImages);
+                return true;
+            }
+            putActionRedeploy();
+            return true;
+        }
+
+        ObjectNode objectNode = (ObjectNode) root;
+        objectNode.remove("actions");
+        objectNode.remove("links");
+        //annotations
+        ObjectNode annotations = (ObjectNode) root.get("annotations");
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(new Date());
+        if (annotations != null) {
+            annotations.put("cattle.io/timestamp", timestamp);
+        }
+        if (containers != null) {
+            for (Map.Entry<Integer, String> match : matchImages(containers, imageTags, workloadImages, updatedImages).entrySet()) {
+                ObjectNode container = (ObjectNode) containers.get(match.getKey());
+                logger.println(Messages.Rancher2RedeployBuilder_setImageTag(container.get("image").asText(), match.getValue()));
+                container.put("image", match.getValue());
+                if (alwaysPull) {
+                    container.put("imagePullPolicy", "Always");
+                }
+            }
+        }
+
+        if (updatedImages.size() != imageTags.size()) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_notMatch(workloadImages, imageTags.keySet()));
+        }
+
+        HttpUriRequest putRequest = RequestBuilder.put(url)
+                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                .addHeader("Accept", "application/json")
+                .addHeader("Content-Type", "application/json; charset=utf-8")
+                .setEntity(Rancher2Transfer.get(Rancher2RedeployBuilder.endpoint(credential)).jsonEntity(MAPPER.writeValueAsString(root)))
+                .build();
+
+        startTime = System.currentTimeMillis();
+        try (CloseableHttpResponse putResponse = client.execute(putRequest)) {
+            int putStatusCode = putResponse.getStatusLine().getStatusCode();
+            if (putStatusCode == 409) {
+                // stale resourceVersion, workload was modified after GET
+                EntityUtils.consume(putResponse.getEntity());
+                return false;
+            }
+            if (putStatusCode != 200) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(
+                        putStatusCode,EntityUtils.toString(putResponse.getEntity())
+                ));
+            }
+            EntityUtils.consume(putResponse.getEntity());
+        } finally {
+            metrics.record(Rancher2Metrics.PHASE_UPDATE, startTime);
+        }
+        return true;
+    }
+
+    private void patchConfigRedeploy(Rancher2KubeWorkload patcher, Map<String, String> imageTags, String expandImages) throws InterruptedException, IOException {
+        for (int attempt = 0; ; attempt++) {
+            long startTime = System.currentTimeMillis();
+            JsonNode resource;
+            try {
+                resource = patcher.get();
+            } finally {
+                metrics.record(Rancher2Metrics.PHASE_WORKLOAD_GET, startTime);
+            }
+            if (resource == null) {
+                String message = Messages.Rancher2RedeployBuilder_badResponse(404, url);
+                logger.println(message);
+                if(postConfigDeploy()) return;
+                throw new AbortException(message);
+            }
+
+            JsonNode containers = patcher.containers(resource);
+            if (isUnchanged(containers, imageTags)) {
+                if (!force) {
+                    skipUnchanged(expandImages);
+                    return;
+                }
+                putActionRedeploy();
+                return;
+            }
+
+            // only send changed fields, containers are merged by name
+            Set<String> workloadImages = new HashSet<>();
+            Set<String> updatedImages = new HashSet<>();
+            String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(new Date());
+            ObjectNode patch = patcher.createPatch(resource, timestamp);
+            for (Map.Entry<Integer, String> match : matchImages(containers, imageTags, workloadImages, updatedImages).entrySet()) {
+                JsonNode container = containers.get(match.getKey());
+                ObjectNode patchContainer = patcher.patchContainer(patch, container.path("name").asText());
+                patchContainer.put("image", match.getValue());
+                if (alwaysPull) {
+                    patchContainer.put("imagePullPolicy", "Always");
+                }
+                logger.println(Messages.Rancher2RedeployBuilder_setImageTag(container.path("image").asText(), match.getValue()));
+            }
+            if (updatedImages.size() != imageTags.size()) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_notMatch(workloadImages, imageTags.keySet()));
+            }
+
+            startTime = System.currentTimeMillis();
+            boolean patched;
+            try {
+                patched = patcher.patch(patch);
+            } finally {
+                metrics.record(Rancher2Metrics.PHASE_UPDATE, startTime);
+            }
+            if (patched) {
+                return;
+            }
+            if (attempt >= PATCH_RETRIES) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_patchConflictFailed(url, PATCH_RETRIES));
+            }
+            logger.println(Messages.Rancher2RedeployBuilder_patchConflict(url, attempt + 1, PATCH_RETRIES));
+            Thread.sleep(ThreadLocalRandom.current().nextLong(100, 500));
+        }
+    }
+
+    /**
+     * per container: every image already runs with the same tag and digest, and pull policy is already Always
+     * if alwaysPull. an image set whose earlier rollout didn't finish isn't unchanged, so a retry redeploys it
+     * @param imageTags image name to new image tag
+     * @return true if the update wouldn't change the workload
+     */
+    private boolean isUnchanged(JsonNode containers, Map<String, String> imageTags) {
+        if (imageTags.isEmpty() || !isCacheable(imageTags) || Rancher2DeployedImages.get().isPending(url, fingerprint)) {
+            return false;
+        }
+        Set<String> matched = new HashSet<>();
+        for (JsonNode container : containers) {
+            JsonNode image = container.get("image");
+            if (image == null) continue;
+            String newTag = imageTags.get(parseImageName(image.asText()));
+            if (newTag == null) continue;
+            if (!newTag.equals(image.asText())) return false;
+            if (alwaysPull && !"Always".equals(container.path("imagePullPolicy").asText())) return false;
+            matched.add(parseImageName(newTag));
+        }
+        // not matched images fail the update
+        return matched.size() == imageTags.size();
+    }
+
+    /**
+     * @return false if alwaysPull and any tag isn't pinned by digest, the registry may serve new content by the same tag
+     */
+    /**
+     * @return true if the images were rolled out by the controller within the ttl of {@link Rancher2DeployedImages},
+     * redeploy is skipped without loading the workload
+     */
+    private boolean isRecentlyRolledOut(Map<String, String> imageTags) {
+        return !force && isCacheable(imageTags) && Rancher2DeployedImages.get().isFresh(url, Rancher2DeployedImages.fingerprint(imageTags));
+    }
+
+    private boolean isCacheable(Map<String, String> imageTags) {
+        if (!alwaysPull) {
+            return true;
+        }
+        for (String imageTag : imageTags.values()) {
+            if (imageTag.indexOf('@') < 0) return false;
+        }
+        return true;
+    }
+
+    private void skipUnchanged(String expandImages) {
+        logger.println(Messages.Rancher2RedeployBuilder_imagesUnchanged(url, expandImages));
+        Rancher2DeployedImages.get().applied(url, fingerprint, true);
+        skipped = true;
+    }
+
+    private boolean postConfigDeploy() throws InterruptedException, IOException {
+        if (StringUtils.isBlank(templateUrl)) return false;
+        String projectId, namespaceId, nameId;
+        String[] urlInfo = url.split("\\/project\\/");
+        urlInfo = urlInfo[1].split("\\/workloads\\/");
+        projectId = urlInfo[0];
+        urlInfo = urlInfo[1].split(":");
+        namespaceId = urlInfo[1];
+        nameId = urlInfo[2];
+
+        String expandTemplateUrl = envVars.expand(templateUrl);
+        logger.println(Messages._Rancher2CredentialsImpl_DescriptorImpl_createPodStartMessage(expandTemplateUrl));
+        Rancher2Template template = expandTemplateUrl.toLowerCase().startsWith("http") ?
+                loadHttpTemplate(expandTemplateUrl) : loadFileTemplate(expandTemplateUrl);
+
+        // template is written into the request while it is sent, invalid json is rejected by server
+        long startTime = System.currentTimeMillis();
+        HttpEntity body = template.render(templateVars(projectId, namespaceId, nameId));
+        metrics.record(Rancher2Metrics.PHASE_TEMPLATE_COMPILE, startTime);
+        HttpUriRequest postRequest = RequestBuilder.post(url.split("\\/workloads")[0] + "/workloads")
+                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                .addHeader("Accept", "application/json")
+                .addHeader("Content-Type", "application/json; charset=utf-8")
+                .setEntity(Rancher2Transfer.get(Rancher2RedeployBuilder.endpoint(credential)).jsonEntity(body))
+                .build();
+        StatusLine postStatusLine;
+        String postResponseContent;
+        startTime = System.currentTimeMillis();
+        try (CloseableHttpResponse postResponse = client.execute(postRequest)) {
+            postStatusLine = postResponse.getStatusLine();
+            postResponseContent = EntityUtils.toString(postResponse.getEntity());
+        } finally {
+            metrics.record(Rancher2Metrics.PHASE_UPDATE, startTime);
+        }
+        logger.println(Messages._Rancher2CredentialsImpl_DescriptorImpl_createPodSuccedMessage(postStatusLine, postResponseContent));
+        if (postStatusLine.getStatusCode() == 201) {
+            createdName = nameId;
+            return true;
+        }
+        if (postStatusLine.getStatusCode() != 200) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(
+                    postStatusLine.getStatusCode(), postResponseContent));
+        }
+        return true;
+    }
+
+    private Rancher2Template loadHttpTemplate(String url) throws InterruptedException, IOException {
+        long startTime = System.currentTimeMillis();
+        // not the client of rancher endpoint, template server errors must not open its circuit breaker
+        Rancher2Template template = Rancher2TemplateCache.get().loadHttp(logger, ClientBuilder.template(credential.isTrustCert()), url);
+        metrics.record(Rancher2Metrics.PHASE_TEMPLATE_FETCH, startTime);
+        return template;
+    }
+
+    private Rancher2Template loadFileTemplate(String filename) throws InterruptedException, IOException {
+        long startTime = System.currentTimeMillis();
+        // relative to workspace, which may be on agent
+        FilePath file = workspace == null ? new FilePath(new File(filename)) : workspace.child(filename);
+        Rancher2Template template = Rancher2TemplateCache.get().loadFile(file);
+        metrics.record(Rancher2Metrics.PHASE_TEMPLATE_FETCH, startTime);
+        return template;
+    }
+
+    private Map<String, String> templateVars(String projectId, String namespaceId, String nameId) {
+        Map<String, String> vars = new HashMap<>();
+        vars.put("PROJECTID", projectId);
+        vars.put("NAMESPACEID", namespaceId);
+        vars.put("NAMEID", nameId);
+        if (StringUtils.isNotBlank(images)) {
+            String expandImages = envVars.expand(images);
+            if (StringUtils.isNotBlank(expandImages)) {
+                vars.put("IMAGE", expandImages.split(";")[0]);
+            }
+        }
+        vars.put("IMAGEPULLPOLICY", alwaysPull ? "Always" : "IfNotPresent");
+
+        if (StringUtils.isNotBlank(templateVars)) {
+            String expandTemplateVars = envVars.expand(templateVars);
+            for (String varValue : expandTemplateVars.split(",")) {
+                String[] varValues = varValue.split("=");
+                if (varValues.length >= 2) {
+                    vars.put(varValues[0], varValues[1]);
+                }
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * @param expandImages images separated by semicolon
+     * @return image name to image tag
+     */
+    static Map<String, String> parseImageTags(String expandImages) {
+        Map<String, String> imageTags = new HashMap<>();
+        for (String imageTag : expandImages.split(";")) {
+            imageTags.put(parseImageName(imageTag), imageTag);
+        }
+        return imageTags;
+    }
+
+    /**
+     * match container images by image name
+     * @param containers containers of workload
+     * @param imageTags image name to new image tag
+     * @param workloadImages collects image names of all containers
+     * @param updatedImages collects matched image names
+     * @return container index to new image tag
+     */
+    static Map<Integer, String> matchImages(JsonNode containers, Map<String, String> imageTags, Set<String> workloadImages, Set<String> updatedImages) {
+        Map<Integer, String> matches = new LinkedHashMap<>();
+        for (int i = 0; i < containers.size(); i++) {
+            JsonNode image = containers.get(i).get("image");
+            if (image == null) continue;
+            String name = parseImageName(image.asText());
+            workloadImages.add(name);
+            String newTag = imageTags.get(name);
+            if (newTag != null) {
+                matches.put(i, newTag);
+                updatedImages.add(name);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param imageTag eg: registry:5000/team/nginx:1.25@sha256:...
+     * @return image name without version and digest, eg: registry:5000/team/nginx
+     */
+    static String parseImageName(String imageTag) {
+        int digest = imageTag.indexOf('@');
+        String name = digest < 0 ? imageTag : imageTag.substring(0, digest);
+        int index = name.lastIndexOf(':');
+        // colon of registry port
+        if (index < 0 || index < name.lastIndexOf('/')) {
+            return name;
+        }
+        return name.substring(0, index);
+    }
+}
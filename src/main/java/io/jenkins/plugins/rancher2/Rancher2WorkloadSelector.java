@@ -0,0 +1,187 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.AbortException;
+import hudson.EnvVars;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * workloads of a project, optionally of one namespace, selected by label selector and/or image names.
+ * all workloads are listed by one paginated request, each selected workload is redeployed with the images
+ * it uses, containers are matched by {@link Rancher2WorkloadDeployer#parseImageName(String)}
+ */
+final class Rancher2WorkloadSelector implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * workloads per page of workloads list requests
+     */
+    static final int PAGE_LIMIT = Integer.getInteger(Rancher2WorkloadSelector.class.getName() + ".pageLimit", 500);
+
+    private final String project;
+    private final String namespace;
+    private final String labelSelector;
+    private final String images;
+
+    private Rancher2WorkloadSelector(String project, String namespace, String labelSelector, String images) {
+        this.project = project;
+        this.namespace = namespace;
+        this.labelSelector = labelSelector;
+        this.images = images;
+    }
+
+    /**
+     * @param project project path or id, eg: /project/c-h4hxd:p-c9j8z
+     * @param namespace only select workloads of namespace, blank for all
+     * @param labelSelector eg: app=web,tier!=db,canary, blank to select by images only
+     * @param images new image tags, only workloads using any of these images are selected, blank to select by labels only
+     * @return null if project is blank, selector mode is off
+     */
+    static Rancher2WorkloadSelector of(String project, String namespace, String labelSelector, String images) {
+        if (StringUtils.isBlank(project)) {
+            return null;
+        }
+        return new Rancher2WorkloadSelector(project, namespace, labelSelector, images);
+    }
+
+    /**
+     * list workloads of project in cluster and select the matched ones
+     * @return matched workloads in list order
+     */
+    List<Selected> select(PrintStream logger, CloseableHttpClient client, EnvVars envVars, Rancher2Credentials credential,
+                          Rancher2Cluster cluster) throws IOException, InterruptedException {
+        String expandLabels = envVars.expand(labelSelector);
+        String expandImages = StringUtils.isBlank(images) ? null : envVars.expand(images);
+        if (StringUtils.isBlank(expandLabels) && StringUtils.isBlank(expandImages)) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_selectorEmpty());
+        }
+        Map<String, String> imageTags = expandImages == null ? null : Rancher2WorkloadDeployer.parseImageTags(expandImages);
+        String projectPath = cluster.workload(projectPath(envVars.expand(project)));
+        String expandNamespace = envVars.expand(namespace);
+
+        String pageUrl = Rancher2RedeployBuilder.workloadUrl(Rancher2RedeployBuilder.endpoint(credential), projectPath + "/workloads")
+                + "?limit=" + PAGE_LIMIT;
+        if (StringUtils.isNotBlank(expandNamespace)) {
+            pageUrl += "&namespaceId=" + URLEncoder.encode(expandNamespace.trim(), "UTF-8");
+        }
+        List<Selected> selected = new ArrayList<>();
+        int total = 0;
+        while (pageUrl != null) {
+            JsonNode page = loadPage(client, credential, pageUrl);
+            for (JsonNode workload : page.path("data")) {
+                total++;
+                if (StringUtils.isNotBlank(expandLabels) && !matchLabels(workload.path("labels"), expandLabels)) continue;
+                String workloadImages = null;
+                if (imageTags != null) {
+                    Set<String> updatedImages = new HashSet<>();
+                    Rancher2WorkloadDeployer.matchImages(workload.path("containers"), imageTags, new HashSet<>(), updatedImages);
+                    if (updatedImages.isEmpty()) continue;
+                    // only the images this workload uses, the others would fail its image check
+                    List<String> tags = new ArrayList<>();
+                    for (String name : updatedImages) {
+                        tags.add(imageTags.get(name));
+                    }
+                    workloadImages = String.join(";", tags);
+                }
+                selected.add(new Selected(projectPath + "/workloads/" + workload.path("id").asText(), workloadImages, workload));
+            }
+            pageUrl = page.path("pagination").path("next").asText(null);
+        }
+        logger.println(Messages.Rancher2RedeployBuilder_selectorMatched(projectPath, selected.size(), total));
+        if (selected.isEmpty()) {
+            throw new AbortException(Messages.Rancher2RedeployBuilder_selectorNoMatch(projectPath));
+        }
+        return selected;
+    }
+
+    private static JsonNode loadPage(CloseableHttpClient client, Rancher2Credentials credential, String pageUrl) throws IOException, InterruptedException {
+        HttpUriRequest request = RequestBuilder.get(pageUrl)
+                .addHeader("Authorization", "Bearer " + credential.getBearerToken())
+                .addHeader("Accept", "application/json")
+                .build();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != 200) {
+                throw new AbortException(Messages.Rancher2RedeployBuilder_badResponse(statusCode, EntityUtils.toString(response.getEntity())));
+            }
+            return MAPPER.readTree(response.getEntity().getContent());
+        }
+    }
+
+    /**
+     * @param project project path or id, eg: c-h4hxd:p-c9j8z
+     * @return project path, eg: /project/c-h4hxd:p-c9j8z
+     */
+    static String projectPath(String project) {
+        String path = project.trim();
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.startsWith("/p/")) {
+            return "/project/" + path.substring(3);
+        }
+        return path.startsWith("/") ? path : "/project/" + path;
+    }
+
+    /**
+     * equality based selector like Kubernetes: key=value, key==value, key!=value, key (exists) and !key (not exists),
+     * separated by comma, all must match
+     * @param labels labels of workload
+     */
+    static boolean matchLabels(JsonNode labels, String selector) {
+        for (String requirement : selector.split(",")) {
+            String term = requirement.trim();
+            if (term.isEmpty()) continue;
+            int notEquals = term.indexOf("!=");
+            int equals = term.indexOf('=');
+            if (notEquals > 0) {
+                JsonNode value = labels.get(term.substring(0, notEquals).trim());
+                if (value != null && value.asText().equals(term.substring(notEquals + 2).trim())) return false;
+            } else if (equals > 0) {
+                String key = term.substring(0, equals).trim();
+                String expected = term.substring(term.startsWith("==", equals) ? equals + 2 : equals + 1).trim();
+                JsonNode value = labels.get(key);
+                if (value == null || !value.asText().equals(expected)) return false;
+            } else if (term.startsWith("!")) {
+                if (labels.has(term.substring(1).trim())) return false;
+            } else if (!labels.has(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * a selected workload
+     */
+    static final class Selected {
+        // workload path, eg: /project/c-h4hxd:p-c9j8z/workloads/deployment:default:web
+        final String workload;
+        // images to update, null to redeploy without image change
+        final String images;
+        // workload from list response, saves the GET before update
+        final JsonNode resource;
+
+        private Selected(String workload, String images, JsonNode resource) {
+            this.workload = workload;
+            this.images = images;
+            this.resource = resource;
+        }
+    }
+}
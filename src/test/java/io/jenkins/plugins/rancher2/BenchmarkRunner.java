@@ -0,0 +1,39 @@
+package io.jenkins.plugins.rancher2;
+
+import jenkins.benchmark.jmh.BenchmarkFinder;
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * run all {@link jenkins.benchmark.jmh.JmhBenchmark} classes: mvn test -Dbenchmark
+ * results are written to jmh-report.json, gc profiler adds allocated bytes per operation
+ */
+public final class BenchmarkRunner {
+    @Test
+    public void runJmhBenchmarks() throws Exception {
+        Assume.assumeTrue(System.getProperty("benchmark") != null);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .mode(Mode.AverageTime)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .threads(1)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-report.json");
+
+        new BenchmarkFinder(getClass()).findBenchmarks(options);
+        new Runner(options.build()).run();
+    }
+}
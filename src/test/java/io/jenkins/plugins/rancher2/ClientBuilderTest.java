@@ -0,0 +1,152 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClientBuilderTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void sharedClientReusesConnection() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            CloseableHttpClient client = ClientBuilder.get(server.getEndpoint(), false);
+            assertTrue(client == ClientBuilder.get(server.getEndpoint(), false));
+            String url = Rancher2Fixtures.workloadUrl(server, "pooled");
+            for (int i = 0; i < 5; i++) {
+                HttpUriRequest request = RequestBuilder.get(url)
+                        .addHeader("Authorization", "Bearer " + Rancher2FakeServer.TOKEN)
+                        .build();
+                try (CloseableHttpResponse response = client.execute(request)) {
+                    assertEquals(200, response.getStatusLine().getStatusCode());
+                    EntityUtils.consume(response.getEntity());
+                }
+            }
+            PoolStats stats = ClientBuilder.getPoolStats(server.getEndpoint(), false);
+            assertEquals(0, stats.getLeased());
+            // sequential requests are sent on one kept alive connection
+            assertEquals(1, stats.getAvailable());
+            assertEquals(ClientBuilder.MAX_TOTAL, stats.getMax());
+        }
+    }
+
+    @Test
+    public void deployReleasesResponses() throws Exception {
+        PrintStream logger = new PrintStream(new ByteArrayOutputStream(), true);
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 3, 500, 0)) {
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "released", "registry.example.com:5000/service-0:v2").deploy();
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(false, true), logger,
+                    "released", "registry.example.com:5000/service-0:v2").deploy();
+            assertEquals(0, ClientBuilder.getPoolStats(server.getEndpoint(), false).getLeased());
+        }
+    }
+
+    @Test
+    public void exportsPoolStats() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            ClientBuilder.get(server.getEndpoint(), false);
+            StringWriter output = new StringWriter();
+            try (PrintWriter writer = new PrintWriter(output)) {
+                Rancher2Metrics.get().writePrometheus(writer);
+            }
+            String client = "{client=\"verify:" + server.getEndpoint() + "\"} ";
+            assertTrue(output.toString().contains("rancher2_connections_leased" + client + "0\n"));
+            assertTrue(output.toString().contains("rancher2_connections_available" + client + "0\n"));
+            assertTrue(output.toString().contains("rancher2_connections_pending" + client + "0\n"));
+            assertTrue(output.toString().contains("rancher2_connections_max" + client + ClientBuilder.MAX_TOTAL + "\n"));
+        }
+    }
+
+    @Test
+    public void retriesServerErrors() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.failNext("GET workload", 503, 2);
+            assertEquals(200, get(server, "retried"));
+            assertEquals(3L, (long) server.getRequests().get("GET workload"));
+            assertFalse(Rancher2CircuitBreaker.get(server.getEndpoint()).getStats().open);
+        }
+    }
+
+    @Test
+    public void retriesThrottledRequests() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.failNext("GET workload", 429, 2);
+            assertEquals(200, get(server, "throttled"));
+            assertEquals(3L, (long) server.getRequests().get("GET workload"));
+            assertEquals(2, Rancher2RateLimiter.get(server.getEndpoint()).getStats().throttled);
+        }
+    }
+
+    @Test
+    public void doesNotRetryUpdates() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.failNext("PUT workload", 503, 1);
+            HttpPut request = new HttpPut(Rancher2Fixtures.workloadUrl(server, "updated"));
+            request.addHeader("Authorization", "Bearer " + Rancher2FakeServer.TOKEN);
+            request.setEntity(new StringEntity("{}", ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = ClientBuilder.get(server.getEndpoint(), false).execute(request)) {
+                assertEquals(503, response.getStatusLine().getStatusCode());
+                EntityUtils.consume(response.getEntity());
+            }
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void circuitOpensAfterFailures() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.failNext("GET workload", 503, 100);
+            // the first request and its retries are sent
+            assertEquals(503, get(server, "unavailable"));
+            for (int i = 0; i < 2; i++) {
+                try {
+                    get(server, "unavailable");
+                    fail("circuit opens after " + Rancher2CircuitBreaker.FAILURE_THRESHOLD + " failures");
+                } catch (Rancher2CircuitBreaker.OpenException e) {
+                    assertTrue(e.getMessage(), e.getMessage().contains(server.getEndpoint()));
+                }
+            }
+            // retries stop once the circuit is open, then requests are rejected without being sent
+            assertEquals(Rancher2CircuitBreaker.FAILURE_THRESHOLD, server.getRequests().get("GET workload").longValue());
+            Rancher2CircuitBreaker.Stats stats = Rancher2CircuitBreaker.get(server.getEndpoint()).getStats();
+            assertTrue(stats.open);
+            assertEquals(1, stats.opened);
+            assertTrue(stats.rejected >= 2);
+        }
+    }
+
+    /**
+     * @return status of GET workload by the shared client
+     */
+    private static int get(Rancher2FakeServer server, String name) throws IOException {
+        HttpUriRequest request = RequestBuilder.get(Rancher2Fixtures.workloadUrl(server, name))
+                .addHeader("Authorization", "Bearer " + Rancher2FakeServer.TOKEN)
+                .build();
+        try (CloseableHttpResponse response = ClientBuilder.get(server.getEndpoint(), false).execute(request)) {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.jenkins.plugins.rancher2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2DeployedImagesTest {
+    private static final String URL = "https://rancher.example.com/v3/project/c-h4hxd:p-c9j8z/workloads/deployment:default:web";
+
+    @Test
+    public void freshUntilTtl() throws InterruptedException {
+        Rancher2DeployedImages images = new Rancher2DeployedImages(200);
+        images.applied(URL, "nginx:1.25", true);
+        assertTrue(images.isFresh(URL, "nginx:1.25"));
+        assertFalse(images.isFresh(URL, "nginx:1.26"));
+        Thread.sleep(300);
+        assertFalse(images.isFresh(URL, "nginx:1.25"));
+    }
+
+    @Test
+    public void zeroTtlNeverFresh() {
+        Rancher2DeployedImages images = new Rancher2DeployedImages(0);
+        images.applied(URL, "nginx:1.25", true);
+        assertFalse(images.isFresh(URL, "nginx:1.25"));
+    }
+
+    @Test
+    public void pendingUntilRolledOut() {
+        Rancher2DeployedImages images = new Rancher2DeployedImages(60000);
+        images.applied(URL, "nginx:1.25", false);
+        assertTrue(images.isPending(URL, "nginx:1.25"));
+        assertFalse(images.isFresh(URL, "nginx:1.25"));
+        images.rolledOut(URL);
+        assertFalse(images.isPending(URL, "nginx:1.25"));
+        assertTrue(images.isFresh(URL, "nginx:1.25"));
+    }
+}
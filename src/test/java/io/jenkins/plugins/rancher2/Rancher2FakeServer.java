@@ -0,0 +1,711 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * embedded stand-in of Rancher2.x v3 API for load tests, serves
+ * <ul>
+ *     <li>POST /v3/project/{projectId}/workloads</li>
+ *     <li>GET and PUT /v3/project/{projectId}/workloads/{workloadId}</li>
+ *     <li>POST /v3/project/{projectId}/workloads/{workloadId}?action=redeploy</li>
+ *     <li>GET /v3/project/{projectId}/pods?workloadId={workloadId}, filtered by state= and paged by limit= and marker=,
+ *     revalidated by If-None-Match</li>
+ *     <li>GET /templates/{name} without authentication, revalidated by If-None-Match</li>
+ *     <li>GET /k8s/clusters/{clusterId}/api/v1/namespaces/{namespace}/pods?watch=true&amp;labelSelector={workloadselector},
+ *     streams ADDED, MODIFIED and DELETED events of the simulated rollout, resumed from resourceVersion=</li>
+ *     <li>GET and PATCH /k8s/clusters/{clusterId}/apis/apps/v1/namespaces/{namespace}/deployments/{name}, a patch of
+ *     another resourceVersion is rejected by 409</li>
+ * </ul>
+ * any workload id of namespace {@link Rancher2Fixtures#NAMESPACE} exists, except names starting with
+ * {@link #NEW_PREFIX} which exist once they were created by POST. a redeploy starts a simulated rollout:
+ * new pods start after half of rollout time, old pods are removed after rollout time.
+ * new pods of failing workloads stay in ImagePullBackOff and the old pods are kept.
+ * a watch stream ends after {@link #setWatchMillis(long)} with a BOOKMARK of its last resourceVersion.
+ * {@link #failNext(String, int, int)} answers the next requests of a route by an error status.
+ * request bodies may be gzip compressed, responses are compressed after {@link #setGzip(boolean)}
+ */
+final class Rancher2FakeServer implements AutoCloseable {
+    static final String TOKEN = "token-fake:load-test";
+    static final String NEW_PREFIX = "new-";
+
+    private static final Pattern WORKLOAD = Pattern.compile("^/v3/project/([^/]+)/workloads/([^/]+)$");
+    private static final Pattern WORKLOADS = Pattern.compile("^/v3/project/([^/]+)/workloads$");
+    private static final Pattern TEMPLATE = Pattern.compile("^/templates/([^/]+)$");
+    private static final Pattern PODS = Pattern.compile("^/v3/project/([^/]+)/pods$");
+    private static final Pattern WATCH = Pattern.compile("^/k8s/clusters/([^/]+)/api/v1/namespaces/([^/]+)/pods$");
+    private static final Pattern DEPLOYMENT = Pattern.compile("^/k8s/clusters/([^/]+)/apis/apps/v1/namespaces/([^/]+)/deployments/([^/]+)$");
+    private static final String WORKLOAD_SELECTOR = "workload.user.cattle.io/workloadselector=deployment-" + Rancher2Fixtures.NAMESPACE + "-";
+
+    private final long latencyMillis;
+    private final int pods;
+    private final long rolloutMillis;
+    private final double failureRate;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Workload> workloads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> templates = new ConcurrentHashMap<>();
+    // resourceVersion of the last watch event of all workloads
+    private final AtomicLong resourceVersion = new AtomicLong();
+    private volatile boolean watchAvailable = true;
+    private volatile long watchMillis = 60000;
+    private volatile boolean watchExpired = false;
+    private volatile boolean gzip = false;
+    // route to status and count of the next requests answered by it
+    private final ConcurrentMap<String, int[]> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * @param latencyMillis delay of every response
+     * @param pods pods of each workload
+     * @param rolloutMillis time from redeploy until old pods are removed
+     * @param failureRate share of workloads whose rollouts fail, decided by workload name
+     */
+    Rancher2FakeServer(long latencyMillis, int pods, long rolloutMillis, double failureRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.pods = pods;
+        this.rolloutMillis = rolloutMillis;
+        this.failureRate = failureRate;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // every request sleeps for latency, don't let them queue behind each other
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return API endpoint to configure in credential, eg: http://127.0.0.1:41234/v3
+     */
+    String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v3";
+    }
+
+    /**
+     * @return url of template name, served without authentication like a static file
+     */
+    String getTemplateUrl(String name) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/templates/" + name;
+    }
+
+    /**
+     * @param content template content, a changed content gets another ETag
+     */
+    void setTemplate(String name, String content) {
+        templates.put(name, content);
+    }
+
+    /**
+     * @param available false to answer watch requests by 404, eg: the cluster proxy is disabled
+     */
+    void setWatchAvailable(boolean available) {
+        this.watchAvailable = available;
+    }
+
+    /**
+     * @param millis max time of one watch stream, shorter than its timeoutSeconds, so the watch is resumed
+     */
+    void setWatchMillis(long millis) {
+        this.watchMillis = millis;
+    }
+
+    /**
+     * @param expired true to answer every resumed watch by a 410 Gone ERROR event, like a compacted etcd
+     */
+    void setWatchExpired(boolean expired) {
+        this.watchExpired = expired;
+    }
+
+    /**
+     * @param gzip true to compress responses of clients sending Accept-Encoding: gzip, like the ingress of Rancher
+     */
+    void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @param route route of {@link #getRequests()}, eg: GET pods
+     * @param status error status, 429 is sent with Retry-After: 0
+     * @param count next requests of route answered by status
+     */
+    void failNext(String route, int status, int count) {
+        failures.put(route, new int[]{status, count});
+    }
+
+    /**
+     * @return max requests handled at the same time
+     */
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * @return true if rollouts of workload fail
+     */
+    boolean isFailing(String name) {
+        return Math.floorMod(name.hashCode(), 1000) < failureRate * 1000;
+    }
+
+    /**
+     * @return requests count by route, eg: GET workload
+     */
+    Map<String, Long> getRequests() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((route, count) -> counts.put(route, count.get()));
+        return counts;
+    }
+
+    long getTotalRequests() {
+        return requests.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            Matcher templateMatcher = TEMPLATE.matcher(path);
+            if (templateMatcher.matches() && "GET".equals(method)) {
+                template(exchange, templates.get(templateMatcher.group(1)));
+                return;
+            }
+            if (!("Bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                count("unauthorized");
+                respond(exchange, 401, error("Unauthorized", "must authenticate"));
+                return;
+            }
+
+            Matcher workloadMatcher = WORKLOAD.matcher(path);
+            if (workloadMatcher.matches()) {
+                Workload workload = workload(workloadMatcher.group(2));
+                if (workload == null) {
+                    count("not found");
+                    respond(exchange, 404, error("NotFound", path));
+                } else if ("GET".equals(method)) {
+                    if (countOrFail(exchange, "GET workload")) return;
+                    respond(exchange, 200, workload.toJson());
+                } else if ("PUT".equals(method)) {
+                    if (countOrFail(exchange, "PUT workload")) return;
+                    JsonNode body = readBody(exchange);
+                    workload.redeploy(body.path("containers").path(0).path("image").asText(null));
+                    respond(exchange, 200, body);
+                } else if ("POST".equals(method) && "action=redeploy".equals(query)) {
+                    count("POST redeploy");
+                    workload.redeploy(null);
+                    respond(exchange, 200, Rancher2Fixtures.MAPPER.createObjectNode());
+                } else {
+                    count("not allowed");
+                    respond(exchange, 405, error("MethodNotAllowed", method + " " + path));
+                }
+                return;
+            }
+
+            Matcher workloadsMatcher = WORKLOADS.matcher(path);
+            if (workloadsMatcher.matches() && "POST".equals(method)) {
+                JsonNode body = readBody(exchange);
+                String name = body.path("name").asText();
+                Workload workload = new Workload(name, 1);
+                if (workloads.putIfAbsent(name, workload) != null) {
+                    count("conflict");
+                    respond(exchange, 409, error("AlreadyExists", name));
+                    return;
+                }
+                count("POST workload");
+                workload.redeploy(body.path("containers").path(0).path("image").asText(null));
+                respond(exchange, 201, workload.toJson());
+                return;
+            }
+
+            Matcher deploymentMatcher = DEPLOYMENT.matcher(path);
+            if (deploymentMatcher.matches()) {
+                Workload workload = workload("deployment:" + deploymentMatcher.group(2) + ":" + deploymentMatcher.group(3));
+                if (workload == null) {
+                    count("not found");
+                    respond(exchange, 404, error("NotFound", path));
+                } else if ("GET".equals(method)) {
+                    if (countOrFail(exchange, "GET deployment")) return;
+                    respond(exchange, 200, workload.toKube());
+                } else if ("PATCH".equals(method)) {
+                    if (countOrFail(exchange, "PATCH deployment")) return;
+                    JsonNode body = readBody(exchange);
+                    if (!workload.patch(body.path("metadata").path("resourceVersion").asText(),
+                            body.path("spec").path("template").path("spec").path("containers").path(0).path("image").asText(null))) {
+                        count("conflict");
+                        respond(exchange, 409, error("Conflict", "the object has been modified"));
+                        return;
+                    }
+                    respond(exchange, 200, workload.toKube());
+                } else {
+                    count("not allowed");
+                    respond(exchange, 405, error("MethodNotAllowed", method + " " + path));
+                }
+                return;
+            }
+
+            Matcher watchMatcher = WATCH.matcher(path);
+            if (watchMatcher.matches() && "GET".equals(method) && query != null && "true".equals(queryParam(query, "watch"))) {
+                if (!watchAvailable) {
+                    count("not found");
+                    respond(exchange, 404, error("NotFound", path));
+                    return;
+                }
+                watch(exchange, query);
+                return;
+            }
+
+            Matcher podsMatcher = PODS.matcher(path);
+            String workloadId = query == null ? null : queryParam(query, "workloadId");
+            if (podsMatcher.matches() && "GET".equals(method) && workloadId != null) {
+                String state = queryParam(query, "state");
+                if (countOrFail(exchange, state == null ? "GET pods" : "GET pods state=" + state)) return;
+                Workload workload = workload(workloadId);
+                ObjectNode pods = workload == null ? pods() : workload.pods();
+                revalidated(exchange, "GET pods 304", page(pods, state, queryParam(query, "limit"), queryParam(query, "marker"),
+                        "http://127.0.0.1:" + server.getAddress().getPort() + path + "?" + query));
+                return;
+            }
+
+            count("not found");
+            respond(exchange, 404, error("NotFound", path));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void count(String route) {
+        requests.computeIfAbsent(route, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * count request of route and answer it by the error status of {@link #failNext(String, int, int)}
+     * @return true if the request was answered
+     */
+    private boolean countOrFail(HttpExchange exchange, String route) throws IOException {
+        count(route);
+        int[] failure = failures.computeIfPresent(route, (k, f) -> f[1] > 0 ? new int[]{f[0], f[1] - 1} : null);
+        if (failure == null) {
+            return false;
+        }
+        if (failure[1] == 0) {
+            failures.remove(route, failure);
+        }
+        if (failure[0] == 429) {
+            exchange.getResponseHeaders().set("Retry-After", "0");
+        }
+        respond(exchange, failure[0], error("Injected", route));
+        return true;
+    }
+
+    /**
+     * @param id workload id, eg: deployment:default:web
+     */
+    private Workload workload(String id) throws IOException {
+        String[] ids = URLDecoder.decode(id, "UTF-8").split(":");
+        if (ids.length != 3 || !Rancher2Fixtures.NAMESPACE.equals(ids[1])) {
+            return null;
+        }
+        if (ids[2].startsWith(NEW_PREFIX)) {
+            return workloads.get(ids[2]);
+        }
+        return workloads.computeIfAbsent(ids[2], name -> new Workload(name, 0));
+    }
+
+    private static String queryParam(String query, String name) throws IOException {
+        for (String param : query.split("&")) {
+            if (param.startsWith(name + "=")) {
+                return URLDecoder.decode(param.substring(name.length() + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static ObjectNode pods(ArrayNode... generations) {
+        ObjectNode root = Rancher2Fixtures.MAPPER.createObjectNode();
+        root.put("type", "collection");
+        root.put("resourceType", "pod");
+        ArrayNode data = root.putArray("data");
+        for (ArrayNode generation : generations) {
+            data.addAll(generation);
+        }
+        root.putObject("pagination").put("limit", Rancher2WorkloadDeployer.PODS_PAGE_LIMIT).put("total", data.size());
+        return root;
+    }
+
+    /**
+     * @param state only pods of this state, null for all
+     * @param limit pods per page, null for all
+     * @param marker index of first pod of page, null for the first page
+     * @param self request url, the next page link is made of it
+     */
+    private static ObjectNode page(ObjectNode pods, String state, String limit, String marker, String self) {
+        ArrayNode data = Rancher2Fixtures.MAPPER.createArrayNode();
+        for (JsonNode pod : pods.path("data")) {
+            if (state == null || state.equals(pod.path("state").asText())) {
+                data.add(pod);
+            }
+        }
+        int from = marker == null ? 0 : Integer.parseInt(marker);
+        int size = limit == null ? data.size() : Integer.parseInt(limit);
+        ArrayNode pageData = Rancher2Fixtures.MAPPER.createArrayNode();
+        for (int i = from; i < Math.min(data.size(), from + size); i++) {
+            pageData.add(data.get(i));
+        }
+        pods.set("data", pageData);
+        ObjectNode pagination = pods.putObject("pagination").put("limit", size).put("total", data.size());
+        if (from + size < data.size()) {
+            pagination.put("next", self.replaceAll("&marker=[^&]*", "") + "&marker=" + (from + size));
+        }
+        return pods;
+    }
+
+    private static ObjectNode error(String code, String message) {
+        ObjectNode error = Rancher2Fixtures.MAPPER.createObjectNode();
+        error.put("type", "error");
+        error.put("code", code);
+        error.put("message", message);
+        return error;
+    }
+
+    private void watch(HttpExchange exchange, String query) throws IOException, InterruptedException {
+        String selector = queryParam(query, "labelSelector");
+        Workload workload = selector != null && selector.startsWith(WORKLOAD_SELECTOR) ?
+                workload("deployment:" + Rancher2Fixtures.NAMESPACE + ":" + selector.substring(WORKLOAD_SELECTOR.length())) : null;
+        String timeoutSeconds = queryParam(query, "timeoutSeconds");
+        long deadline = System.currentTimeMillis() + Math.min(watchMillis,
+                timeoutSeconds == null ? Long.MAX_VALUE : Long.parseLong(timeoutSeconds) * 1000);
+        String since = queryParam(query, "resourceVersion");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            long last;
+            if (since != null) {
+                count("WATCH pods resumed");
+                if (watchExpired) {
+                    ObjectNode event = Rancher2Fixtures.MAPPER.createObjectNode().put("type", "ERROR");
+                    event.putObject("object").put("kind", "Status").put("code", 410).put("reason", "Expired")
+                            .put("message", "too old resource version: " + since);
+                    writeEvent(out, event);
+                    return;
+                }
+                last = Long.parseLong(since);
+            } else {
+                count("WATCH pods");
+                if (workload != null) {
+                    workload.events(Long.MAX_VALUE);
+                }
+                last = resourceVersion.get();
+            }
+            while (System.currentTimeMillis() < deadline) {
+                if (workload != null) {
+                    for (ObjectNode event : workload.events(last)) {
+                        writeEvent(out, event);
+                        last = event.path("object").path("metadata").path("resourceVersion").asLong();
+                    }
+                }
+                Thread.sleep(20);
+            }
+            ObjectNode bookmark = Rancher2Fixtures.MAPPER.createObjectNode().put("type", "BOOKMARK");
+            bookmark.putObject("object").put("kind", "Pod").putObject("metadata").put("resourceVersion", String.valueOf(last));
+            writeEvent(out, bookmark);
+        } catch (IOException e) {
+            // watcher dropped the connection
+        }
+    }
+
+    private static void writeEvent(OutputStream out, ObjectNode event) throws IOException {
+        out.write(Rancher2Fixtures.MAPPER.writeValueAsBytes(event));
+        out.write('\n');
+        out.flush();
+    }
+
+    private void template(HttpExchange exchange, String content) throws IOException {
+        if (content == null) {
+            count("not found");
+            respond(exchange, 404, error("NotFound", exchange.getRequestURI().getPath()));
+            return;
+        }
+        String eTag = "\"" + Integer.toHexString(content.hashCode()) + "\"";
+        exchange.getResponseHeaders().set("ETag", eTag);
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            count("GET template 304");
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        count("GET template");
+        send(exchange, 200, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * answer by 304 if If-None-Match is the ETag of body
+     * @param route route counted if the body is unchanged
+     */
+    private void revalidated(HttpExchange exchange, String route, JsonNode body) throws IOException {
+        byte[] bytes = Rancher2Fixtures.MAPPER.writeValueAsBytes(body);
+        String eTag = "\"" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"";
+        exchange.getResponseHeaders().set("ETag", eTag);
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            count(route);
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        send(exchange, 200, bytes);
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        send(exchange, status, Rancher2Fixtures.MAPPER.writeValueAsBytes(body));
+    }
+
+    /**
+     * @param bytes json body, gzip compressed if enabled and accepted by the client
+     */
+    private void send(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return json request body, decompressed if its Content-Encoding is gzip
+     */
+    private static JsonNode readBody(HttpExchange exchange) throws IOException {
+        boolean gzipped = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try (InputStream content = gzipped ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            return Rancher2Fixtures.MAPPER.readTree(content);
+        }
+    }
+
+    /**
+     * a deployment and its simulated rollout
+     */
+    private final class Workload {
+        private final String name;
+        private final boolean failing;
+        // generation of the first pods, 1 if the workload was created by POST
+        private final int firstGeneration;
+        // watch events of pods, ordered by resourceVersion
+        private final List<ObjectNode> events = new ArrayList<>();
+        // pod name to its last Kubernetes object, null until the first watch
+        private Map<String, ObjectNode> watched = null;
+
+        // guarded by this
+        private int generation = 0;
+        // resourceVersion of the Kubernetes deployment, changed by every update
+        private long version = 1;
+        private long rolloutStart = 0;
+        private String image = Rancher2Fixtures.image(0);
+
+        private Workload(String name, int firstGeneration) {
+            this.name = name;
+            this.failing = isFailing(name);
+            this.firstGeneration = firstGeneration;
+        }
+
+        synchronized void redeploy(String image) {
+            if (image != null) {
+                this.image = image;
+            }
+            generation++;
+            version++;
+            rolloutStart = System.currentTimeMillis();
+        }
+
+        /**
+         * @return false if resourceVersion isn't the current one
+         */
+        synchronized boolean patch(String resourceVersion, String image) {
+            if (!String.valueOf(version).equals(resourceVersion)) {
+                return false;
+            }
+            redeploy(image);
+            return true;
+        }
+
+        synchronized ObjectNode toJson() {
+            ObjectNode workload = Rancher2Fixtures.workload(name, 1);
+            ((ObjectNode) workload.path("containers").path(0)).put("image", image);
+            return workload;
+        }
+
+        /**
+         * @return Kubernetes deployment, its status follows the simulated rollout
+         */
+        synchronized ObjectNode toKube() {
+            ObjectNode deployment = Rancher2Fixtures.MAPPER.createObjectNode().put("apiVersion", "apps/v1").put("kind", "Deployment");
+            deployment.putObject("metadata").put("name", name).put("namespace", Rancher2Fixtures.NAMESPACE)
+                    .put("resourceVersion", String.valueOf(version)).put("generation", generation + 1);
+            String selector = "deployment-" + Rancher2Fixtures.NAMESPACE + "-" + name;
+            ObjectNode spec = deployment.putObject("spec").put("replicas", pods);
+            spec.putObject("selector").putObject("matchLabels").put("workload.user.cattle.io/workloadselector", selector);
+            ObjectNode template = spec.putObject("template");
+            template.putObject("metadata").putObject("labels").put("workload.user.cattle.io/workloadselector", selector);
+            template.putObject("spec").putArray("containers").addObject().put("name", name + "-0").put("image", image);
+            // counted like pods(): old pods until rollout time, new pods after half of it
+            int newPods = 0;
+            int oldPods = pods;
+            if (generation > 0) {
+                long elapsed = System.currentTimeMillis() - rolloutStart;
+                newPods = elapsed >= rolloutMillis / 2 ? pods : 0;
+                oldPods = generation > firstGeneration && (failing || elapsed < rolloutMillis) ? pods : 0;
+            }
+            int available = oldPods + (failing ? 0 : newPods);
+            deployment.putObject("status").put("observedGeneration", generation + 1).put("replicas", oldPods + newPods)
+                    .put("updatedReplicas", generation > 0 ? newPods : pods).put("readyReplicas", available).put("availableReplicas", available);
+            return deployment;
+        }
+
+        synchronized ObjectNode pods() {
+            long elapsed = System.currentTimeMillis() - rolloutStart;
+            if (generation == 0) {
+                return Rancher2FakeServer.pods(generation(0, "running"));
+            }
+            ArrayNode newPods = elapsed >= rolloutMillis / 2 ? generation(generation, failing ? "pending" : "running") : null;
+            ArrayNode oldPods = generation > firstGeneration && (failing || elapsed < rolloutMillis) ?
+                    generation(generation - 1, "running") : null;
+            if (newPods == null) {
+                return oldPods == null ? Rancher2FakeServer.pods() : Rancher2FakeServer.pods(oldPods);
+            }
+            return oldPods == null ? Rancher2FakeServer.pods(newPods) : Rancher2FakeServer.pods(oldPods, newPods);
+        }
+
+        /**
+         * compare current pods with the pods of the last call, record their changes as watch events
+         * @return events after resourceVersion since
+         */
+        synchronized List<ObjectNode> events(long since) {
+            Map<String, ObjectNode> current = new LinkedHashMap<>();
+            for (JsonNode pod : pods().path("data")) {
+                current.put(pod.path("name").asText(), kubePod(pod));
+            }
+            if (watched != null) {
+                for (Map.Entry<String, ObjectNode> pod : current.entrySet()) {
+                    ObjectNode last = watched.get(pod.getKey());
+                    if (last == null) {
+                        event("ADDED", pod.getValue());
+                    } else if (!last.path("status").equals(pod.getValue().path("status"))) {
+                        event("MODIFIED", pod.getValue());
+                    } else {
+                        pod.setValue(last);
+                    }
+                }
+                for (Map.Entry<String, ObjectNode> pod : watched.entrySet()) {
+                    if (!current.containsKey(pod.getKey())) {
+                        event("DELETED", pod.getValue().deepCopy());
+                    }
+                }
+            }
+            watched = current;
+            List<ObjectNode> after = new ArrayList<>();
+            for (ObjectNode event : events) {
+                if (event.path("object").path("metadata").path("resourceVersion").asLong() > since) {
+                    after.add(event);
+                }
+            }
+            return after;
+        }
+
+        private void event(String type, ObjectNode pod) {
+            ((ObjectNode) pod.path("metadata")).put("resourceVersion", String.valueOf(resourceVersion.incrementAndGet()));
+            ObjectNode event = Rancher2Fixtures.MAPPER.createObjectNode().put("type", type);
+            event.set("object", pod);
+            events.add(event);
+        }
+
+        /**
+         * @param pod pod of v3 API
+         * @return Kubernetes pod of watch event, owned by ReplicaSet {name}-g{generation}
+         */
+        private ObjectNode kubePod(JsonNode pod) {
+            String podName = pod.path("name").asText();
+            String hash = podName.substring(name.length() + 1, podName.lastIndexOf('-'));
+            ObjectNode kubePod = Rancher2Fixtures.MAPPER.createObjectNode().put("kind", "Pod");
+            ObjectNode metadata = kubePod.putObject("metadata");
+            metadata.put("name", podName).put("namespace", Rancher2Fixtures.NAMESPACE).put("resourceVersion", "0");
+            metadata.putObject("labels").put("pod-template-hash", hash)
+                    .put("workload.user.cattle.io/workloadselector", "deployment-" + Rancher2Fixtures.NAMESPACE + "-" + name);
+            metadata.putArray("ownerReferences").addObject().put("kind", "ReplicaSet").put("name", name + "-" + hash);
+            boolean running = "running".equals(pod.path("state").asText());
+            ObjectNode status = kubePod.putObject("status").put("phase", running ? "Running" : "Pending");
+            for (JsonNode container : pod.path("containers")) {
+                ObjectNode containerStatus = status.withArray("containerStatuses").addObject()
+                        .put("name", container.path("name").asText()).put("restartCount", container.path("restartCount").asInt());
+                if (running) {
+                    containerStatus.putObject("state").putObject("running");
+                } else {
+                    containerStatus.putObject("state").putObject("waiting")
+                            .put("reason", "ImagePullBackOff").put("message", container.path("transitioningMessage").asText());
+                }
+            }
+            return kubePod;
+        }
+
+        private ArrayNode generation(int generation, String state) {
+            ArrayNode data = Rancher2Fixtures.MAPPER.createArrayNode();
+            for (int i = 0; i < pods; i++) {
+                ObjectNode pod = Rancher2Fixtures.pod(name, String.format("%s-g%d-%05d", name, generation, i), state, 1);
+                if ("pending".equals(state)) {
+                    ((ObjectNode) pod.path("status")).put("phase", "Pending");
+                    ((ObjectNode) pod.path("containers").path(0))
+                            .put("state", "waiting")
+                            .put("transitioning", "yes")
+                            .put("transitioningMessage", "Back-off pulling image \"" + image + "\"")
+                            .put("ready", false);
+                }
+                data.add(pod);
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package io.jenkins.plugins.rancher2;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hudson.EnvVars;
+import hudson.util.Secret;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * synthetic Rancher2.x API documents, shaped and sized like real clusters
+ */
+final class Rancher2Fixtures {
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    static final String PROJECT_ID = "c-h4hxd:p-c9j8z";
+    static final String NAMESPACE = "default";
+
+    private Rancher2Fixtures() {
+    }
+
+    /**
+     * @param workload workload name
+     * @param count pods count
+     * @param containers containers of each pod
+     * @return pods collection response of /project/{id}/pods?workloadId=
+     */
+    static ObjectNode pods(String workload, int count, int containers) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("type", "collection");
+        root.putObject("links").put("self", "https://rancher.example.com/v3/project/" + PROJECT_ID + "/pods");
+        root.putObject("createTypes").put("pod", "https://rancher.example.com/v3/project/" + PROJECT_ID + "/pods");
+        root.putObject("actions");
+        root.putObject("pagination").put("limit", 1000).put("total", count);
+        root.putObject("sort").put("order", "asc").put("reverse", "https://rancher.example.com/v3/project/" + PROJECT_ID + "/pods?order=desc");
+        root.putObject("filters").putArray("workloadId").addObject().put("modifier", "eq").put("value", "deployment:" + NAMESPACE + ":" + workload);
+        root.put("resourceType", "pod");
+        ArrayNode data = root.putArray("data");
+        for (int i = 0; i < count; i++) {
+            data.add(pod(workload, String.format("%s-5d9c7c9b8f-%05d", workload, i), i % 50 == 0 ? "removing" : "running", containers));
+        }
+        return root;
+    }
+
+    static ObjectNode pod(String workload, String name, String state, int containers) {
+        ObjectNode pod = MAPPER.createObjectNode();
+        pod.put("type", "pod");
+        pod.put("id", NAMESPACE + ":" + name);
+        pod.put("name", name);
+        pod.put("namespaceId", NAMESPACE);
+        pod.put("projectId", PROJECT_ID);
+        pod.put("nodeId", "c-h4hxd:m-" + Integer.toHexString(name.hashCode()));
+        pod.put("workloadId", "deployment:" + NAMESPACE + ":" + workload);
+        pod.put("state", state);
+        pod.put("transitioning", "no");
+        pod.put("transitioningMessage", "");
+        pod.put("created", "2022-01-18T08:12:45Z");
+        pod.put("restartPolicy", "Always");
+        pod.put("hostname", name);
+        pod.putObject("labels")
+                .put("pod-template-hash", "5d9c7c9b8f")
+                .put("workload.user.cattle.io/workloadselector", "deployment-" + NAMESPACE + "-" + workload);
+        pod.putObject("annotations")
+                .put("cattle.io/timestamp", "2022-01-18T08:12:40Z")
+                .put("kubernetes.io/psp", "default-psp");
+        // v3 pods carry the container statuses in containers[], status has no containerStatuses
+        ArrayNode podContainers = pod.putArray("containers");
+        for (int i = 0; i < containers; i++) {
+            ObjectNode container = container(i == 0 ? workload : workload + "-sidecar-" + i, "myteam/" + workload + "-" + i + ":v1.0." + i);
+            container.put("state", "running");
+            container.put("transitioning", "no");
+            container.put("transitioningMessage", "");
+            container.put("ready", true);
+            container.put("containerID", "docker://" + Integer.toHexString(name.hashCode() * 31 + i) + "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+            podContainers.add(container);
+        }
+        ObjectNode status = pod.putObject("status");
+        status.put("phase", "Running");
+        status.put("podIp", "10.42." + (name.hashCode() & 0xff) + "." + ((name.hashCode() >> 8) & 0xff));
+        status.put("nodeIp", "192.168.0." + ((name.hashCode() >> 16) & 0xff));
+        status.put("startTime", "2022-01-18T08:12:45Z");
+        ArrayNode conditions = status.putArray("conditions");
+        for (String type : new String[]{"Initialized", "Ready", "ContainersReady", "PodScheduled"}) {
+            conditions.addObject().put("type", type).put("status", "True").put("lastTransitionTime", "2022-01-18T08:12:50Z");
+        }
+        String self = "https://rancher.example.com/v3/project/" + PROJECT_ID + "/pods/" + NAMESPACE + ":" + name;
+        pod.putObject("links").put("self", self).put("remove", self).put("update", self).put("yaml", self + "/yaml");
+        pod.putObject("actions");
+        return pod;
+    }
+
+    static ObjectNode container(String name, String image) {
+        ObjectNode container = MAPPER.createObjectNode();
+        container.put("type", "container");
+        container.put("name", name);
+        container.put("image", image);
+        container.put("imagePullPolicy", "IfNotPresent");
+        container.put("initContainer", false);
+        container.put("restartCount", 0);
+        container.put("stdin", true);
+        container.put("tty", true);
+        container.put("terminationMessagePath", "/dev/termination-log");
+        container.put("terminationMessagePolicy", "File");
+        ObjectNode environment = container.putObject("environment");
+        for (int i = 0; i < 8; i++) {
+            environment.put("ENV_" + i, "value-" + i);
+        }
+        container.putArray("ports").addObject()
+                .put("containerPort", 8080).put("protocol", "TCP").put("name", "http").put("kind", "ClusterIP").put("type", "containerPort");
+        ObjectNode resources = container.putObject("resources");
+        resources.putObject("limits").put("cpu", "1").put("memory", "1Gi");
+        resources.putObject("requests").put("cpu", "100m").put("memory", "256Mi");
+        container.putObject("readinessProbe")
+                .put("path", "/health").put("port", 8080).put("scheme", "HTTP")
+                .put("initialDelaySeconds", 10).put("periodSeconds", 5).put("timeoutSeconds", 2);
+        return container;
+    }
+
+    /**
+     * @param name workload name
+     * @param containers containers count
+     * @return workload response of /project/{id}/workloads/deployment:{namespace}:{name}
+     */
+    static ObjectNode workload(String name, int containers) {
+        ObjectNode workload = MAPPER.createObjectNode();
+        String id = "deployment:" + NAMESPACE + ":" + name;
+        String self = "https://rancher.example.com/v3/project/" + PROJECT_ID + "/workloads/" + id;
+        workload.put("type", "deployment");
+        workload.put("id", id);
+        workload.put("name", name);
+        workload.put("namespaceId", NAMESPACE);
+        workload.put("projectId", PROJECT_ID);
+        workload.put("state", "active");
+        workload.put("created", "2022-01-18T08:12:40Z");
+        workload.put("scale", 3);
+        workload.putObject("labels").put("workload.user.cattle.io/workloadselector", "deployment-" + NAMESPACE + "-" + name);
+        workload.putObject("annotations")
+                .put("cattle.io/timestamp", "2022-01-18T08:12:40Z")
+                .put("deployment.kubernetes.io/revision", "12")
+                .put("field.cattle.io/publicEndpoints", "[]");
+        workload.putObject("selector").putObject("matchLabels").put("workload.user.cattle.io/workloadselector", "deployment-" + NAMESPACE + "-" + name);
+        workload.putObject("deploymentConfig")
+                .put("maxSurge", 1).put("maxUnavailable", 0).put("minReadySeconds", 0)
+                .put("progressDeadlineSeconds", 600).put("revisionHistoryLimit", 10).put("strategy", "RollingUpdate");
+        ArrayNode workloadContainers = workload.putArray("containers");
+        for (int i = 0; i < containers; i++) {
+            workloadContainers.add(container(name + "-" + i, image(i)));
+        }
+        workload.putObject("deploymentStatus")
+                .put("availableReplicas", 3).put("readyReplicas", 3).put("replicas", 3)
+                .put("updatedReplicas", 3).put("observedGeneration", 12);
+        ObjectNode actions = workload.putObject("actions");
+        for (String action : new String[]{"pause", "redeploy", "resume", "rollback"}) {
+            actions.put(action, self + "?action=" + action);
+        }
+        workload.putObject("links")
+                .put("self", self).put("remove", self).put("update", self).put("yaml", self + "/yaml")
+                .put("revisions", self + "/revisions");
+        return workload;
+    }
+
+    /**
+     * @return image tag of container i, some with registry port
+     */
+    static String image(int i) {
+        return (i % 3 == 0 ? "registry.example.com:5000/" : "myteam/") + "service-" + i + ":v1.0." + i;
+    }
+
+    /**
+     * @param containers containers count
+     * @return template of a workload, variables of each container reference IMAGE, NAMEID and custom vars
+     */
+    static String template(int containers) {
+        StringBuilder template = new StringBuilder();
+        template.append("{\"type\":\"workload\",\"name\":\"${NAMEID}\",\"namespaceId\":\"${NAMESPACEID}\",\"projectId\":\"${PROJECTID}\",\"containers\":[");
+        for (int i = 0; i < containers; i++) {
+            if (i > 0) template.append(',');
+            template.append("{\"name\":\"${NAMEID}-").append(i).append("\",\"image\":\"${IMAGE}\",\"imagePullPolicy\":\"${IMAGEPULLPOLICY}\",")
+                    .append("\"environment\":{\"PROFILE\":\"${PROFILE}\",\"VERSION\":\"${VERSION}\",\"REPLICA\":\"").append(i).append("\",")
+                    .append("\"JAVA_OPTS\":\"-Xmx512m -Dservice=${NAMEID} -Dtz=$TZ\"},")
+                    .append("\"resources\":{\"limits\":{\"cpu\":\"1\",\"memory\":\"1Gi\"},\"requests\":{\"cpu\":\"100m\",\"memory\":\"256Mi\"}}}");
+        }
+        template.append("]}");
+        return template.toString();
+    }
+
+    static byte[] bytes(ObjectNode node) throws IOException {
+        return MAPPER.writeValueAsBytes(node);
+    }
+
+    /**
+     * @return credential of server, Secret needs a running Jenkins, eg: JenkinsRule
+     */
+    static Rancher2Credentials credential(Rancher2FakeServer server) {
+        return credential(server, "rancher");
+    }
+
+    /**
+     * @param id credential id, eg: of another cluster
+     */
+    static Rancher2Credentials credential(Rancher2FakeServer server, String id) {
+        return new Rancher2CredentialsImpl(CredentialsScope.GLOBAL, id, server.getEndpoint(), false,
+                Secret.fromString(Rancher2FakeServer.TOKEN), "fake rancher");
+    }
+
+    /**
+     * @return put update config, polling with backoff strategy if pollingDeployFinish
+     */
+    static Rancher2DeployConfig config(boolean pollingDeployFinish, boolean force) {
+        return config(pollingDeployFinish, force, Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING, null);
+    }
+
+    /**
+     * @param templateUrl template of workload created if it doesn't exist, may be null
+     */
+    static Rancher2DeployConfig config(boolean pollingDeployFinish, boolean force, String deployFinishMode, String templateUrl) {
+        return new Rancher2DeployConfig(false, pollingDeployFinish, 60, deployFinishMode,
+                Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF, Rancher2RedeployBuilder.UPDATE_MODE_PUT, templateUrl, null, force);
+    }
+
+    /**
+     * @param name workload name in namespace {@link #NAMESPACE}
+     * @return deployer of workload on server
+     */
+    static Rancher2WorkloadDeployer deployer(Rancher2FakeServer server, Rancher2DeployConfig config, PrintStream logger,
+                                             String name, String images) {
+        return deployer(server, config, logger, name, images, new Rancher2DeployMetrics());
+    }
+
+    /**
+     * @param metrics timings of the build, the workload timings are added to it
+     */
+    static Rancher2WorkloadDeployer deployer(Rancher2FakeServer server, Rancher2DeployConfig config, PrintStream logger,
+                                             String name, String images, Rancher2DeployMetrics metrics) {
+        String url = workloadUrl(server, name);
+        return new Rancher2WorkloadDeployer(config, logger, ClientBuilder.get(server.getEndpoint(), false), new EnvVars(), null,
+                credential(server), url, images, metrics.addWorkload(url));
+    }
+
+    static String workloadUrl(Rancher2FakeServer server, String name) {
+        return server.getEndpoint() + "/project/" + PROJECT_ID + "/workloads/deployment:" + NAMESPACE + ":" + name;
+    }
+}
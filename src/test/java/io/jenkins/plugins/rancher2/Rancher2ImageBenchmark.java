@@ -0,0 +1,58 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.StringJoiner;
+
+/**
+ * image name parsing and image matching of a workload with hundreds of containers,
+ * every 10th container gets a new tag
+ */
+@JmhBenchmark
+public class Rancher2ImageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ImagesState {
+        @Param({"300"})
+        public int containers;
+
+        String[] imageTags;
+        JsonNode workloadContainers;
+        String images;
+
+        @Setup
+        public void setup() {
+            imageTags = new String[containers];
+            StringJoiner joiner = new StringJoiner(";");
+            for (int i = 0; i < containers; i++) {
+                imageTags[i] = Rancher2Fixtures.image(i);
+                if (i % 10 == 0) {
+                    joiner.add(Rancher2WorkloadDeployer.parseImageName(imageTags[i]) + ":v2.0." + i);
+                }
+            }
+            images = joiner.toString();
+            workloadContainers = Rancher2Fixtures.workload("web", containers).get("containers");
+        }
+    }
+
+    @Benchmark
+    public void parseImageName(ImagesState state, Blackhole blackhole) {
+        for (String imageTag : state.imageTags) {
+            blackhole.consume(Rancher2WorkloadDeployer.parseImageName(imageTag));
+        }
+    }
+
+    @Benchmark
+    public void matchImages(ImagesState state, Blackhole blackhole) {
+        blackhole.consume(Rancher2WorkloadDeployer.matchImages(state.workloadContainers,
+                Rancher2WorkloadDeployer.parseImageTags(state.images), new HashSet<>(), new HashSet<>()));
+    }
+}
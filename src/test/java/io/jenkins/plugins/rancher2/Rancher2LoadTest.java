@@ -0,0 +1,137 @@
+package io.jenkins.plugins.rancher2;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hudson.model.Result;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.util.Secret;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * concurrent rancherRedeployAsync builds against {@link Rancher2FakeServer}: mvn test -Dloadtest
+ * tuned by system properties loadtest.builds, loadtest.pods, loadtest.latency (ms), loadtest.rollout (ms),
+ * loadtest.failureRate and loadtest.pollingStrategy.
+ * throughput, p50/p99 step latency, requests by route and controller heap are printed and written to loadtest-report.json
+ */
+public final class Rancher2LoadTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void concurrentRedeploys() throws Exception {
+        Assume.assumeTrue(System.getProperty("loadtest") != null);
+        int builds = Integer.getInteger("loadtest.builds", 50);
+        int pods = Integer.getInteger("loadtest.pods", 10);
+        long latency = Long.getLong("loadtest.latency", 20);
+        long rollout = Long.getLong("loadtest.rollout", 3000);
+        double failureRate = Double.parseDouble(System.getProperty("loadtest.failureRate", "0.1"));
+        String pollingStrategy = System.getProperty("loadtest.pollingStrategy", Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF);
+
+        try (Rancher2FakeServer server = new Rancher2FakeServer(latency, pods, rollout, failureRate)) {
+            SystemCredentialsProvider.getInstance().getCredentials().add(new Rancher2CredentialsImpl(
+                    CredentialsScope.GLOBAL, "rancher", server.getEndpoint(), false, Secret.fromString(Rancher2FakeServer.TOKEN), "fake rancher"));
+            SystemCredentialsProvider.getInstance().save();
+
+            List<WorkflowJob> jobs = new ArrayList<>();
+            for (int i = 0; i < builds; i++) {
+                WorkflowJob job = jenkins.createProject(WorkflowJob.class, "redeploy-" + i);
+                // no node block, the step doesn't hold an executor while waiting
+                job.setDefinition(new CpsFlowDefinition("rancherRedeployAsync credential: 'rancher', " +
+                        "workload: '/project/" + Rancher2Fixtures.PROJECT_ID + "/workloads/deployment:" + Rancher2Fixtures.NAMESPACE + ":web-" + i + "', " +
+                        "images: 'registry.example.com:5000/service-0:build-" + i + "', " +
+                        "pollingDeployFinish: true, pollingStrategy: '" + pollingStrategy + "'", true));
+                jobs.add(job);
+            }
+
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+            AtomicLong heapPeak = new AtomicLong(heapBefore);
+            Thread sampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-test heap sampler");
+            sampler.setDaemon(true);
+            sampler.start();
+
+            long startTime = System.currentTimeMillis();
+            List<QueueTaskFuture<WorkflowRun>> futures = new ArrayList<>();
+            for (WorkflowJob job : jobs) {
+                futures.add(job.scheduleBuild2(0));
+            }
+            long[] durations = new long[builds];
+            int failed = 0;
+            for (int i = 0; i < builds; i++) {
+                WorkflowRun run = futures.get(i).get(rollout * 10 + 300_000, TimeUnit.MILLISECONDS);
+                jenkins.assertBuildStatus(server.isFailing("web-" + i) ? Result.FAILURE : Result.SUCCESS, run);
+                if (run.getResult() != Result.SUCCESS) {
+                    failed++;
+                }
+                durations[i] = run.getDuration();
+            }
+            long elapsed = System.currentTimeMillis() - startTime;
+            sampler.interrupt();
+            sampler.join();
+            System.gc();
+            long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+            Arrays.sort(durations);
+            ObjectNode report = Rancher2Fixtures.MAPPER.createObjectNode();
+            report.put("builds", builds);
+            report.put("failed", failed);
+            report.put("podsPerWorkload", pods);
+            report.put("latencyMillis", latency);
+            report.put("rolloutMillis", rollout);
+            report.put("pollingStrategy", pollingStrategy);
+            report.put("elapsedMillis", elapsed);
+            report.put("throughputPerSecond", builds * 1000.0 / elapsed);
+            report.put("p50Millis", percentile(durations, 50));
+            report.put("p99Millis", percentile(durations, 99));
+            report.put("maxMillis", durations[builds - 1]);
+            report.put("requests", server.getTotalRequests());
+            report.put("requestsPerBuild", (double) server.getTotalRequests() / builds);
+            ObjectNode routes = report.putObject("requestsByRoute");
+            for (Map.Entry<String, Long> route : server.getRequests().entrySet()) {
+                routes.put(route.getKey(), route.getValue());
+            }
+            report.put("heapBeforeBytes", heapBefore);
+            report.put("heapPeakBytes", heapPeak.get());
+            report.put("heapAfterBytes", heapAfter);
+
+            System.out.println(Rancher2Fixtures.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+            Rancher2Fixtures.MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File("loadtest-report.json"), report);
+        }
+    }
+
+    /**
+     * @param sorted sorted values
+     * @return nearest-rank percentile
+     */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
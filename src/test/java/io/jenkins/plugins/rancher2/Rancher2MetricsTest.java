@@ -0,0 +1,88 @@
+package io.jenkins.plugins.rancher2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2MetricsTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final PrintStream logger = new PrintStream(new ByteArrayOutputStream(), true);
+
+    @Test
+    public void secondsOfMillis() {
+        assertEquals("0", Rancher2Metrics.seconds(0));
+        assertEquals("0.025", Rancher2Metrics.seconds(25));
+        assertEquals("1", Rancher2Metrics.seconds(1000));
+        assertEquals("2.5", Rancher2Metrics.seconds(2500));
+    }
+
+    @Test
+    public void clusterOfUrl() {
+        assertEquals("c-h4hxd", Rancher2Metrics.cluster("https://rancher.example.com/v3/project/c-h4hxd:p-c9j8z/workloads/deployment:default:web"));
+        assertEquals("unknown", Rancher2Metrics.cluster("https://rancher.example.com/v3/workloads"));
+    }
+
+    @Test
+    public void exportsHistogramInSeconds() {
+        Rancher2Metrics.get().observe(Rancher2Metrics.PHASE_UPDATE, "c-export", 40);
+        Rancher2Metrics.get().observe(Rancher2Metrics.PHASE_UPDATE, "c-export", 2000);
+        String output = export();
+        String labels = "phase=\"update\",cluster=\"c-export\"";
+        assertTrue(output.contains("# TYPE rancher2_phase_duration_seconds histogram\n"));
+        assertTrue(output.contains("rancher2_phase_duration_seconds_bucket{" + labels + ",le=\"0.025\"} 0\n"));
+        assertTrue(output.contains("rancher2_phase_duration_seconds_bucket{" + labels + ",le=\"0.05\"} 1\n"));
+        assertTrue(output.contains("rancher2_phase_duration_seconds_bucket{" + labels + ",le=\"2.5\"} 2\n"));
+        assertTrue(output.contains("rancher2_phase_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(output.contains("rancher2_phase_duration_seconds_sum{" + labels + "} 2.04\n"));
+        assertTrue(output.contains("rancher2_phase_duration_seconds_count{" + labels + "} 2\n"));
+    }
+
+    @Test
+    public void exportsCounters() {
+        Rancher2Metrics.get().countPoll("c-counter");
+        Rancher2Metrics.get().countPoll("c-counter");
+        Rancher2Metrics.get().countStatus("https://rancher-counter.example.com/v3", 502);
+        String output = export();
+        assertTrue(output.contains("rancher2_poll_iterations_total{cluster=\"c-counter\"} 2\n"));
+        assertTrue(output.contains("rancher2_http_responses_total{endpoint=\"https://rancher-counter.example.com/v3\",code=\"502\"} 1\n"));
+    }
+
+    @Test
+    public void rolloutRecordedOnlyWhenWaited() throws Exception {
+        String images = "registry.example.com:5000/service-0:v2";
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            Rancher2DeployMetrics unwaited = new Rancher2DeployMetrics();
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(false, false), logger, "metrics-unwaited", images, unwaited).deploy();
+            Map<String, Long> phases = unwaited.getWorkloads().get(0).getPhases();
+            assertTrue(phases.containsKey(Rancher2Metrics.PHASE_UPDATE));
+            assertFalse(phases.containsKey(Rancher2Metrics.PHASE_ROLLOUT));
+
+            Rancher2DeployMetrics waited = new Rancher2DeployMetrics();
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger, "metrics-waited", images, waited).deploy();
+            phases = waited.getWorkloads().get(0).getPhases();
+            assertTrue(phases.containsKey(Rancher2Metrics.PHASE_FIRST_NEW_POD));
+            assertTrue(phases.containsKey(Rancher2Metrics.PHASE_ROLLOUT));
+            assertTrue(waited.getWorkloads().get(0).getPolls() > 0);
+        }
+    }
+
+    private static String export() {
+        StringWriter output = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(output)) {
+            Rancher2Metrics.get().writePrometheus(writer);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package io.jenkins.plugins.rancher2;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * one polling of a rollout in the middle: half of the old pods are replaced by new pods
+ */
+@JmhBenchmark
+public class Rancher2PodDiffBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PodsState {
+        @Param({"1000", "5000"})
+        public int pods;
+
+        Set<String> lastDeployPods;
+        Set<String> deployPods;
+
+        @Setup
+        public void setup() {
+            lastDeployPods = new HashSet<>();
+            deployPods = new HashSet<>();
+            for (int i = 0; i < pods; i++) {
+                String oldPod = String.format("%s:web-5d9c7c9b8f-%05d", Rancher2Fixtures.NAMESPACE, i);
+                lastDeployPods.add(oldPod);
+                deployPods.add(i % 2 == 0 ? oldPod : String.format("%s:web-7f6b8d4c2a-%05d", Rancher2Fixtures.NAMESPACE, i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void remainingPods(PodsState state, Blackhole blackhole) {
+        // pods list is loaded into a new set by every polling
+        Set<String> deployPods = new HashSet<>(state.deployPods);
+        blackhole.consume(Rancher2WorkloadDeployer.hasNewPod(deployPods, state.lastDeployPods));
+        deployPods.retainAll(state.lastDeployPods);
+        blackhole.consume(deployPods.isEmpty());
+    }
+}
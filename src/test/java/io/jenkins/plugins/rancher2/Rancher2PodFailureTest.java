@@ -0,0 +1,77 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Rancher2PodFailureTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void imageFailures() {
+        assertEquals("ImagePullBackOff", Rancher2PodFailure.check("ImagePullBackOff", 0));
+        assertEquals("ErrImagePull", Rancher2PodFailure.check("ErrImagePull", 0));
+        assertEquals("InvalidImageName", Rancher2PodFailure.check("InvalidImageName", 0));
+    }
+
+    @Test
+    public void crashLoopAfterThreshold() {
+        int threshold = Rancher2PodFailure.RESTART_THRESHOLD;
+        assertNull(Rancher2PodFailure.check("CrashLoopBackOff", threshold - 1));
+        assertEquals("CrashLoopBackOff, restarts: " + threshold, Rancher2PodFailure.check("CrashLoopBackOff", threshold));
+    }
+
+    @Test
+    public void recoverableStates() {
+        assertNull(Rancher2PodFailure.check(null, 10));
+        assertNull(Rancher2PodFailure.check("ContainerCreating", 0));
+    }
+
+    @Test
+    public void firstFailedContainerOfPod() throws IOException {
+        assertEquals("init: ErrImagePull", Rancher2PodFailure.check(MAPPER.readTree("{\"status\": {"
+                + "\"initContainerStatuses\": [{\"name\": \"init\", \"state\": {\"waiting\": {\"reason\": \"ErrImagePull\"}}}],"
+                + "\"containerStatuses\": [{\"name\": \"app\", \"state\": {\"waiting\": {\"reason\": \"ImagePullBackOff\"}}}]}}")));
+        assertNull(Rancher2PodFailure.check(MAPPER.readTree("{\"status\": {"
+                + "\"containerStatuses\": [{\"name\": \"app\", \"state\": {\"running\": {}}}]}}")));
+        assertNull(Rancher2PodFailure.check(MAPPER.readTree("{}")));
+    }
+
+    @Test
+    public void reasonOfRancherContainer() {
+        assertEquals("ImagePullBackOff", Rancher2PodFailure.reason("waiting", "Back-off pulling image \"nginx:404\""));
+        assertEquals("ErrImagePull", Rancher2PodFailure.reason("waiting",
+                "rpc error: code = NotFound desc = failed to pull and unpack image \"docker.io/library/nginx:404\""));
+        assertEquals("InvalidImageName", Rancher2PodFailure.reason("waiting", "Failed to apply default image tag \"nginx::1\""));
+        assertEquals("CrashLoopBackOff", Rancher2PodFailure.reason("waiting",
+                "back-off 40s restarting failed container=web pod=web-5d9f_default"));
+        assertEquals("ErrImagePull", Rancher2PodFailure.reason("waiting", "ErrImagePull: pull access denied"));
+        assertNull(Rancher2PodFailure.reason("waiting", "ContainerCreating"));
+        assertNull(Rancher2PodFailure.reason("running", "Back-off pulling image \"nginx:404\""));
+        assertNull(Rancher2PodFailure.reason(null, null));
+    }
+
+    @Test
+    public void firstFailedContainerOfRancherPod() throws IOException {
+        assertEquals("web: ImagePullBackOff", Rancher2PodFailure.check(MAPPER.readTree("{\"containers\": ["
+                + "{\"name\": \"web\", \"state\": \"waiting\", \"restartCount\": 0, \"transitioningMessage\": \"Back-off pulling image \\\"nginx:404\\\"\"}],"
+                + "\"status\": {\"phase\": \"Pending\"}}")));
+        assertEquals("web: CrashLoopBackOff, restarts: 5", Rancher2PodFailure.check(MAPPER.readTree("{\"containers\": ["
+                + "{\"name\": \"web\", \"state\": \"waiting\", \"restartCount\": 5, \"transitioningMessage\": \"back-off 1m20s restarting failed container=web\"}]}")));
+        assertNull(Rancher2PodFailure.check(MAPPER.readTree("{\"containers\": ["
+                + "{\"name\": \"web\", \"state\": \"running\", \"restartCount\": 0, \"transitioningMessage\": \"\"}]}")));
+    }
+
+    @Test
+    public void progressDeadlineExceeded() throws IOException {
+        assertEquals("ReplicaSet \"web-1\" has timed out progressing.", Rancher2PodFailure.progressDeadlineExceeded(MAPPER.readTree("{\"status\": {\"conditions\": ["
+                + "{\"type\": \"Available\", \"reason\": \"MinimumReplicasAvailable\"},"
+                + "{\"type\": \"Progressing\", \"reason\": \"ProgressDeadlineExceeded\", \"message\": \"ReplicaSet \\\"web-1\\\" has timed out progressing.\"}]}}")));
+        assertNull(Rancher2PodFailure.progressDeadlineExceeded(MAPPER.readTree("{\"status\": {\"conditions\": ["
+                + "{\"type\": \"Progressing\", \"reason\": \"NewReplicaSetAvailable\"}]}}")));
+    }
+}
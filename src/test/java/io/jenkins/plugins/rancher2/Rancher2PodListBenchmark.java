@@ -0,0 +1,47 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * pods list parsing of a 2,000 pods workload: whole tree (previous) vs streaming {@link Rancher2PodList}
+ */
+@JmhBenchmark
+public class Rancher2PodListBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PodsState {
+        byte[] content;
+
+        @Setup
+        public void setup() throws IOException {
+            content = Rancher2Fixtures.bytes(Rancher2Fixtures.pods("web", 2000, 2));
+        }
+    }
+
+    @Benchmark
+    public void readTree(PodsState state, Blackhole blackhole) throws IOException {
+        JsonNode pods = Rancher2Fixtures.MAPPER.readTree(new ByteArrayInputStream(state.content)).get("data");
+        Map<String, String> states = new LinkedHashMap<>();
+        for (int i = 0; pods != null && i < pods.size(); i++) {
+            JsonNode pod = pods.get(i);
+            states.put(pod.get("id").asText(), pod.get("state").asText());
+        }
+        blackhole.consume(states);
+    }
+
+    @Benchmark
+    public void streaming(PodsState state, Blackhole blackhole) throws IOException {
+        blackhole.consume(Rancher2PodList.parse(new ByteArrayInputStream(state.content), null).getStates());
+    }
+}
@@ -0,0 +1,64 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2PodListTest {
+
+    @Test
+    public void statesAndNextPage() throws IOException {
+        ObjectNode pods = Rancher2Fixtures.pods("web", 60, 2);
+        ((ObjectNode) pods.path("pagination")).put("next", "https://rancher.example.com/v3/project/c-h4hxd:p-c9j8z/pods?marker=m1");
+        Rancher2PodList page = parse(pods, "\"etag-1\"");
+        assertEquals(60, page.getStates().size());
+        assertEquals("removing", page.getStates().get("default:web-5d9c7c9b8f-00000"));
+        assertEquals("running", page.getStates().get("default:web-5d9c7c9b8f-00001"));
+        assertTrue(page.getFailures().isEmpty());
+        assertEquals("https://rancher.example.com/v3/project/c-h4hxd:p-c9j8z/pods?marker=m1", page.getNext());
+        assertEquals("\"etag-1\"", page.getETag());
+    }
+
+    @Test
+    public void failureOfRancherContainer() throws IOException {
+        ObjectNode pods = Rancher2Fixtures.pods("web", 3, 2);
+        ((ObjectNode) pods.path("data").path(1).path("containers").path(1))
+                .put("state", "waiting")
+                .put("transitioning", "yes")
+                .put("transitioningMessage", "Back-off pulling image \"myteam/web-1:404\"");
+        Rancher2PodList page = parse(pods, null);
+        assertEquals(1, page.getFailures().size());
+        assertEquals("web-sidecar-1: ImagePullBackOff", page.getFailures().get("default:web-5d9c7c9b8f-00001"));
+        assertNull(page.getNext());
+    }
+
+    @Test
+    public void crashLoopOfRancherContainer() throws IOException {
+        ObjectNode pods = Rancher2Fixtures.pods("web", 1, 1);
+        ((ObjectNode) pods.path("data").path(0).path("containers").path(0))
+                .put("state", "waiting")
+                .put("restartCount", Rancher2PodFailure.RESTART_THRESHOLD)
+                .put("transitioningMessage", "back-off 40s restarting failed container=web pod=web-5d9c7c9b8f-00000_default");
+        assertEquals("web: CrashLoopBackOff, restarts: " + Rancher2PodFailure.RESTART_THRESHOLD,
+                parse(pods, null).getFailures().get("default:web-5d9c7c9b8f-00000"));
+    }
+
+    @Test
+    public void failureOfKubernetesStatus() throws IOException {
+        ObjectNode pods = Rancher2Fixtures.pods("web", 1, 1);
+        ((ObjectNode) pods.path("data").path(0).path("status")).putArray("containerStatuses").addObject()
+                .put("name", "web").put("restartCount", 0)
+                .putObject("state").putObject("waiting").put("reason", "ErrImagePull");
+        assertEquals("web: ErrImagePull", parse(pods, null).getFailures().get("default:web-5d9c7c9b8f-00000"));
+    }
+
+    private static Rancher2PodList parse(ObjectNode pods, String eTag) throws IOException {
+        return Rancher2PodList.parse(new ByteArrayInputStream(Rancher2Fixtures.bytes(pods)), eTag);
+    }
+}
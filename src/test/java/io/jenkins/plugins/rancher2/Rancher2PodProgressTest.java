@@ -0,0 +1,80 @@
+package io.jenkins.plugins.rancher2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2PodProgressTest {
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final PrintStream logger = new PrintStream(log, true);
+
+    @Test
+    public void logsOnlyChanges() {
+        Rancher2PodProgress progress = new Rancher2PodProgress("web");
+        Map<String, String> states = new HashMap<>();
+        states.put("web-1", "running");
+        progress.snapshot(logger, states);
+        states.put("web-2", "pending");
+        progress.update(logger, states, Collections.singleton("web-1"));
+        assertTrue(log(), log().contains(Messages.Rancher2RedeployBuilder_podsAdded("web", "web-2 pending")));
+        assertTrue(log(), log().contains(Messages.Rancher2RedeployBuilder_podsProgress("web", 1, 1, 0)));
+
+        log.reset();
+        progress.update(logger, states, Collections.singleton("web-1"));
+        assertEquals("", log());
+
+        states.remove("web-1");
+        states.put("web-2", "running");
+        progress.update(logger, states, Collections.singleton("web-1"));
+        assertTrue(log(), log().contains(Messages.Rancher2RedeployBuilder_podsTerminated("web", "web-1")));
+        assertTrue(log(), log().contains(Messages.Rancher2RedeployBuilder_podsChanged("web", "web-2 pending -> running")));
+        assertTrue(log(), log().contains(Messages.Rancher2RedeployBuilder_podsProgress("web", 0, 1, 1)));
+    }
+
+    @Test
+    public void rolloutLogIsBoundedByChanges() throws Exception {
+        String small;
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 20, 1500, 0)) {
+            small = rollout(server);
+        }
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 500, 1500, 0)) {
+            String url = Rancher2Fixtures.workloadUrl(server, "progress");
+            String large = rollout(server);
+            assertTrue(large, large.contains(Messages.Rancher2RedeployBuilder_podsSnapshot(url, 500)));
+            assertTrue(large, large.contains(Messages.Rancher2RedeployBuilder_podsMore(500 - Rancher2PodProgress.MAX_LOGGED_PODS)));
+            assertTrue(large, large.contains(Messages.Rancher2RedeployBuilder_podsProgress(url, 0, 500, 500)));
+            // pods beyond the logged ones are only counted
+            assertFalse(large, large.contains("progress-g0-00100"));
+            assertTrue(large.length() + " chars of 500 pods, " + small.length() + " of 20 pods", large.length() < small.length() * 2);
+        }
+    }
+
+    /**
+     * @return build log of a rollout of workload progress
+     */
+    private String rollout(Rancher2FakeServer server) throws Exception {
+        log.reset();
+        Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger, "progress", IMAGES).deploy();
+        return log();
+    }
+
+    private String log() {
+        return new String(log.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,145 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.AbortException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Rancher2PodWatcherTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final PrintStream logger = new PrintStream(log, true);
+
+    @Test
+    public void selectorOfMatchLabels() throws IOException {
+        assertEquals("app=web,tier=front", Rancher2PodWatcher.labelSelector(
+                MAPPER.readTree("{\"app\": \"web\", \"tier\": \"front\"}"), "deployment", "default", "web"));
+    }
+
+    @Test
+    public void selectorOfRancherLabel() throws IOException {
+        String expected = "workload.user.cattle.io/workloadselector=deployment-default-web";
+        assertEquals(expected, Rancher2PodWatcher.labelSelector(null, "deployment", "default", "web"));
+        assertEquals(expected, Rancher2PodWatcher.labelSelector(MAPPER.readTree("{}"), "deployment", "default", "web"));
+        assertEquals(expected, Rancher2PodWatcher.labelSelector(MAPPER.missingNode(), "deployment", "default", "web"));
+    }
+
+    @Test
+    public void ownedByReplicaSet() throws IOException {
+        assertTrue(Rancher2PodWatcher.isOwnedBy(pod("5d9f", "ReplicaSet", "web-5d9f"), "web"));
+        // pods of workload web-api share the name prefix of web
+        assertFalse(Rancher2PodWatcher.isOwnedBy(pod("5d9f", "ReplicaSet", "web-api-5d9f"), "web"));
+        assertFalse(Rancher2PodWatcher.isOwnedBy(pod(null, "ReplicaSet", "web-5d9f"), "web"));
+    }
+
+    @Test
+    public void ownedByWorkload() throws IOException {
+        assertTrue(Rancher2PodWatcher.isOwnedBy(pod(null, "StatefulSet", "web"), "web"));
+        assertTrue(Rancher2PodWatcher.isOwnedBy(pod(null, "Job", "web-27901234"), "web"));
+        assertFalse(Rancher2PodWatcher.isOwnedBy(pod(null, "StatefulSet", "web-api"), "web"));
+        assertFalse(Rancher2PodWatcher.isOwnedBy(MAPPER.readTree("{\"metadata\": {\"name\": \"web-0\"}}"), "web"));
+    }
+
+    @Test
+    public void deletedEventsFinishRollout() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            deployer(server, "watched", null).deploy();
+            assertEquals(1L, (long) server.getRequests().get("WATCH pods"));
+            // pods before redeploy and the check when the watch was opened, the rest came by events
+            assertEquals(2L, (long) server.getRequests().get("GET pods"));
+            assertTrue(log(), log().contains("pod \"default:watched-g0-00000\" deleted"));
+            assertTrue(log(), log().contains("pod \"default:watched-g0-00001\" deleted"));
+        }
+    }
+
+    @Test
+    public void failedPodEventAbortsRollout() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 1)) {
+            try {
+                deployer(server, "watched-failing", null).deploy();
+                fail("new pods can't pull their image");
+            } catch (AbortException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ImagePullBackOff"));
+            }
+            assertEquals(2L, (long) server.getRequests().get("GET pods"));
+        }
+    }
+
+    @Test
+    public void runningEventFinishesCreatedWorkload() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            deployer(server, "new-watched", server.getTemplateUrl("workload.json")).deploy();
+            assertEquals(1L, (long) server.getRequests().get("WATCH pods"));
+            assertEquals(1L, (long) server.getRequests().get("GET pods state=running"));
+        }
+    }
+
+    @Test
+    public void resumesFromResourceVersion() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            server.setWatchMillis(200);
+            deployer(server, "watched-resumed", null).deploy();
+            assertEquals(1L, (long) server.getRequests().get("WATCH pods"));
+            assertTrue(server.getRequests().get("WATCH pods resumed") >= 2);
+            // a resumed watch gets the events it missed, pods aren't checked again
+            assertEquals(2L, (long) server.getRequests().get("GET pods"));
+        }
+    }
+
+    @Test
+    public void expiredResourceVersionChecksPodsAgain() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            server.setWatchMillis(200);
+            server.setWatchExpired(true);
+            deployer(server, "watched-expired", null).deploy();
+            assertTrue(log(), log().contains("expired"));
+            assertTrue(server.getRequests().get("WATCH pods") >= 2);
+            assertTrue(server.getRequests().get("GET pods") >= 3);
+        }
+    }
+
+    @Test
+    public void fallsBackToPolling() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            server.setWatchAvailable(false);
+            deployer(server, "unwatched", null).deploy();
+            assertTrue(log(), log().contains("fallback to polling"));
+            assertNull(server.getRequests().get("WATCH pods"));
+            assertTrue(server.getRequests().get("GET pods") >= 2);
+        }
+    }
+
+    private Rancher2WorkloadDeployer deployer(Rancher2FakeServer server, String name, String templateUrl) {
+        return Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false, Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_WATCH,
+                templateUrl), logger, name, IMAGES);
+    }
+
+    private String log() {
+        return new String(log.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static JsonNode pod(String hash, String ownerKind, String ownerName) throws IOException {
+        String labels = hash == null ? "{}" : "{\"pod-template-hash\": \"" + hash + "\"}";
+        return MAPPER.readTree("{\"metadata\": {\"labels\": " + labels + ", \"ownerReferences\": [{\"kind\": \"" + ownerKind
+                + "\", \"name\": \"" + ownerName + "\"}]}}");
+    }
+}
@@ -0,0 +1,59 @@
+package io.jenkins.plugins.rancher2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2PollingSchedulerTest {
+    @Test
+    public void backoffDoublesUpToMax() {
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF, 3600);
+        assertEquals(Rancher2PollingScheduler.BACKOFF_INITIAL, scheduler.firstDelay());
+        long delay = Rancher2PollingScheduler.BACKOFF_INITIAL;
+        for (int i = 0; i < 10; i++) {
+            assertJittered(Math.min(delay, Rancher2PollingScheduler.BACKOFF_MAX), scheduler.nextDelay());
+            delay *= 2;
+        }
+    }
+
+    @Test
+    public void backoffResetsOnProgress() {
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF, 3600);
+        for (int i = 0; i < 5; i++) {
+            scheduler.nextDelay();
+        }
+        scheduler.reset();
+        assertJittered(Rancher2PollingScheduler.BACKOFF_INITIAL, scheduler.nextDelay());
+    }
+
+    @Test
+    public void fixedPollsEvery3Seconds() {
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(Rancher2RedeployBuilder.POLLING_STRATEGY_FIXED, 3600);
+        assertEquals(5000, scheduler.firstDelay());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(3000, scheduler.nextDelay());
+        }
+    }
+
+    @Test
+    public void neverWaitsPastDeadline() {
+        // started 59.5s ago with a timeout of 60s
+        Rancher2PollingScheduler scheduler = new Rancher2PollingScheduler(Rancher2RedeployBuilder.POLLING_STRATEGY_FIXED,
+                System.currentTimeMillis() - 59500, 60);
+        assertTrue(scheduler.hasTime());
+        assertTrue(scheduler.nextDelay() <= 500);
+        scheduler = new Rancher2PollingScheduler(Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF, System.currentTimeMillis() - 61000, 60);
+        assertFalse(scheduler.hasTime());
+        assertEquals(0, scheduler.firstDelay());
+        assertEquals(0, scheduler.nextDelay());
+    }
+
+    /**
+     * equal jitter, between half of delay and delay
+     */
+    private static void assertJittered(long delay, long actual) {
+        assertTrue(actual + " of " + delay, actual >= delay / 2 && actual <= delay);
+    }
+}
@@ -0,0 +1,36 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2RateLimiterTest {
+    private static final long MAX_MILLIS = Rancher2RateLimiter.MAX_RETRY_AFTER * 1000L;
+
+    @Test
+    public void retryAfterSeconds() {
+        assertEquals(5000, Rancher2RateLimiter.retryAfter(new BasicHeader("Retry-After", "5")));
+        assertEquals(0, Rancher2RateLimiter.retryAfter(new BasicHeader("Retry-After", "-1")));
+        assertEquals(MAX_MILLIS, Rancher2RateLimiter.retryAfter(new BasicHeader("Retry-After", "100000")));
+    }
+
+    @Test
+    public void retryAfterDate() {
+        Date date = new Date(System.currentTimeMillis() + 10000);
+        long retryAfter = Rancher2RateLimiter.retryAfter(new BasicHeader("Retry-After", DateUtils.formatDate(date)));
+        // http date has second precision
+        assertTrue(retryAfter > 8000 && retryAfter <= 10000);
+        assertEquals(0, Rancher2RateLimiter.retryAfter(new BasicHeader("Retry-After", DateUtils.formatDate(new Date(0)))));
+    }
+
+    @Test
+    public void retryAfterMissingOrInvalid() {
+        assertEquals(MAX_MILLIS, Rancher2RateLimiter.retryAfter(null));
+        assertEquals(MAX_MILLIS, Rancher2RateLimiter.retryAfter(new BasicHeader("Retry-After", "soon")));
+    }
+}
@@ -1,6 +1,158 @@
 package io.jenkins.plugins.rancher2;
 
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 public class Rancher2RedeployBuilderTest {
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final PrintStream logger = new PrintStream(log, true);
+
+    @Test
+    public void parallelWorkloadsBoundedByMaxParallel() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(200, 2, 0, 0)) {
+            redeploy(server, Rancher2Fixtures.config(false, false), 2, true, "bounded-0", "bounded-1", "bounded-2", "bounded-3");
+            assertEquals(4L, (long) server.getRequests().get("PUT workload"));
+            assertEquals(2, server.getMaxInFlight());
+            for (int i = 0; i < 4; i++) {
+                assertTrue(log(), log().contains("workload \"" + Rancher2Fixtures.workloadUrl(server, "bounded-" + i) + "\" redeploy succeed"));
+            }
+        }
+        try (Rancher2FakeServer server = new Rancher2FakeServer(200, 2, 0, 0)) {
+            redeploy(server, Rancher2Fixtures.config(false, false), 4, true, "unbounded-0", "unbounded-1", "unbounded-2", "unbounded-3");
+            assertEquals(4, server.getMaxInFlight());
+        }
+    }
+
+    @Test
+    public void failFastCancelsOtherWorkloads() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(100, 2, 3000, 0)) {
+            try {
+                redeploy(server, Rancher2Fixtures.config(true, false), 4, true, null, "fast-0", "fast-1", "fast-2");
+                fail("workload of another namespace doesn't exist");
+            } catch (AbortException e) {
+                assertEquals(Messages.Rancher2RedeployBuilder_workloadsFailed(1, 4), e.getMessage());
+            }
+            assertTrue(log(), log().contains(Messages.Rancher2RedeployBuilder_workloadsCanceled(3)));
+            assertFalse(log(), log().contains("redeploy succeed"));
+        }
+    }
+
+    @Test
+    public void bestEffortFinishesOtherWorkloads() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(100, 2, 500, 0)) {
+            try {
+                redeploy(server, Rancher2Fixtures.config(true, false), 4, false, null, "effort-0", "effort-1", "effort-2");
+                fail("workload of another namespace doesn't exist");
+            } catch (AbortException e) {
+                assertEquals(Messages.Rancher2RedeployBuilder_workloadsFailed(1, 4), e.getMessage());
+            }
+            assertFalse(log(), log().contains("canceled"));
+            for (int i = 0; i < 3; i++) {
+                assertTrue(log(), log().contains("workload \"" + Rancher2Fixtures.workloadUrl(server, "effort-" + i) + "\" redeploy succeed"));
+            }
+        }
+    }
+
+    @Test
+    public void redeploysEveryCluster() throws Exception {
+        try (Rancher2FakeServer first = new Rancher2FakeServer(0, 2, 500, 0);
+             Rancher2FakeServer second = new Rancher2FakeServer(0, 2, 500, 0)) {
+            WorkflowJob job = clustersJob(first, second, "clusters", Rancher2RedeployBuilder.FAILURE_POLICY_BEST_EFFORT);
+            WorkflowRun run = jenkins.assertBuildStatusSuccess(job.scheduleBuild2(0));
+            jenkins.assertLogContains("cluster \"rancher-first\" redeploy succeed", run);
+            // workload path is moved to the project of the second cluster
+            jenkins.assertLogContains("cluster \"rancher-second c-other:p-other\" redeploy succeed", run);
+            assertEquals(1L, (long) first.getRequests().get("PUT workload"));
+            assertEquals(1L, (long) second.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void bestEffortRedeploysOtherClusters() throws Exception {
+        try (Rancher2FakeServer first = new Rancher2FakeServer(0, 2, 500, 0);
+             Rancher2FakeServer second = new Rancher2FakeServer(0, 2, 500, 0)) {
+            second.failNext("PUT workload", 500, 1);
+            WorkflowJob job = clustersJob(first, second, "clusters-failed", Rancher2RedeployBuilder.FAILURE_POLICY_BEST_EFFORT);
+            WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0).get());
+            jenkins.assertLogContains("cluster \"rancher-first\" redeploy succeed", run);
+            jenkins.assertLogContains("cluster \"rancher-second c-other:p-other\" redeploy failed", run);
+            jenkins.assertLogContains(Messages.Rancher2RedeployBuilder_clustersFailed(1, 2), run);
+            assertEquals(1L, (long) first.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void failFastCancelsOtherClusters() throws Exception {
+        try (Rancher2FakeServer first = new Rancher2FakeServer(0, 2, 5000, 0);
+             Rancher2FakeServer second = new Rancher2FakeServer(0, 2, 500, 0)) {
+            second.failNext("PUT workload", 500, 1);
+            WorkflowJob job = clustersJob(first, second, "clusters-canceled", Rancher2RedeployBuilder.FAILURE_POLICY_FAIL_FAST);
+            WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0).get());
+            // the rollout of first cluster is still polled when the second failed
+            jenkins.assertLogContains(Messages.Rancher2RedeployBuilder_clustersCanceled(1), run);
+            jenkins.assertLogNotContains("cluster \"rancher-first\" redeploy succeed", run);
+        }
+    }
+
+    /**
+     * @param names workload names, null for a workload of another namespace, which doesn't exist
+     */
+    private void redeploy(Rancher2FakeServer server, Rancher2DeployConfig config, int maxParallel, boolean failFast,
+                          String... names) throws IOException, InterruptedException {
+        List<Rancher2Workload> workloads = new ArrayList<>();
+        for (String name : names) {
+            String namespace = name == null ? "missing" : Rancher2Fixtures.NAMESPACE;
+            workloads.add(new Rancher2Workload("/project/" + Rancher2Fixtures.PROJECT_ID + "/workloads/deployment:" + namespace + ":"
+                    + (name == null ? "missing" : name), IMAGES));
+        }
+        Rancher2RedeployBuilder.redeployWorkloads(logger, new EnvVars(), null, Rancher2Fixtures.credential(server),
+                new Rancher2Cluster("rancher", null), null, workloads, config, maxParallel, failFast, new Rancher2DeployMetrics());
+    }
+
+    /**
+     * @return job redeploying a workload to the cluster of first server, and to project c-other:p-other of second server
+     */
+    private WorkflowJob clustersJob(Rancher2FakeServer first, Rancher2FakeServer second, String name, String failurePolicy)
+            throws IOException {
+        SystemCredentialsProvider.getInstance().getCredentials().add(Rancher2Fixtures.credential(first, "rancher-first"));
+        SystemCredentialsProvider.getInstance().getCredentials().add(Rancher2Fixtures.credential(second, "rancher-second"));
+        SystemCredentialsProvider.getInstance().save();
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, name);
+        job.setDefinition(new CpsFlowDefinition("node { rancherRedeploy credential: 'rancher-first', alwaysPull: false, "
+                + "workload: '/project/" + Rancher2Fixtures.PROJECT_ID + "/workloads/deployment:" + Rancher2Fixtures.NAMESPACE + ":web', "
+                + "images: '" + IMAGES + "', pollingDeployFinish: true, pollingStrategy: '" + Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF + "', "
+                + "clusters: [[credential: 'rancher-second', project: 'c-other:p-other']], failurePolicy: '" + failurePolicy + "' }", true));
+        return job;
+    }
+
+    private String log() {
+        return new String(log.toByteArray(), StandardCharsets.UTF_8);
+    }
 
 //    @Rule
 //    public JenkinsRule jenkins = new JenkinsRule();
@@ -0,0 +1,120 @@
+package io.jenkins.plugins.rancher2;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.RestartableJenkinsRule;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class Rancher2RedeployStepTest {
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    // outlives the restarts of each test, requests are counted across tests
+    private static Rancher2FakeServer server;
+
+    @Rule
+    public RestartableJenkinsRule story = new RestartableJenkinsRule();
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = new Rancher2FakeServer(0, 2, 3000, 0);
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void completesWithoutNode() {
+        story.then(r -> {
+            WorkflowJob job = job(r, "async", "rancherRedeployAsync " + args("async-completed"));
+            long updates = requests("PUT workload");
+            WorkflowRun run = r.assertBuildStatusSuccess(job.scheduleBuild2(0));
+            r.assertLogContains(Messages.Rancher2RedeployBuilder_success(), run);
+            assertEquals(updates + 1, requests("PUT workload"));
+        });
+    }
+
+    @Test
+    public void stopEndsPolling() {
+        story.then(r -> {
+            WorkflowJob job = job(r, "async", "rancherRedeployAsync " + args("async-stopped"));
+            long updates = requests("PUT workload");
+            WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+            awaitRequests("PUT workload", updates + 1);
+            run.doStop();
+            r.assertBuildStatus(Result.ABORTED, r.waitForCompletion(run));
+            r.assertLogNotContains(Messages.Rancher2RedeployBuilder_success(), run);
+            long pollings = requests("GET pods");
+            Thread.sleep(3000);
+            assertEquals(pollings, requests("GET pods"));
+        });
+    }
+
+    @Test
+    public void resumesAfterRestart() {
+        long[] updates = new long[1];
+        story.then(r -> {
+            WorkflowJob job = job(r, "async", "rancherRedeployAsync " + args("async-resumed"));
+            updates[0] = requests("PUT workload");
+            job.scheduleBuild2(0).waitForStart();
+            awaitRequests("PUT workload", updates[0] + 1);
+        });
+        story.then(r -> {
+            WorkflowRun run = r.jenkins.getItemByFullName("async", WorkflowJob.class).getBuildByNumber(1);
+            r.assertBuildStatusSuccess(r.waitForCompletion(run));
+            r.assertLogContains(Messages.Rancher2RedeployBuilder_success(), run);
+            // the resumed execution waits for the rollout instead of redeploying again
+            assertEquals(updates[0] + 1, requests("PUT workload"));
+        });
+    }
+
+    @Test
+    public void rancherRedeployIsTheBuilder() {
+        story.then(r -> {
+            WorkflowJob job = job(r, "builder", "node { rancherRedeploy " + args("builder-watched")
+                    + ", deployFinishMode: '" + Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_WATCH + "' }");
+            long watches = requests("WATCH pods");
+            WorkflowRun run = r.assertBuildStatusSuccess(job.scheduleBuild2(0));
+            r.assertLogContains(Messages.Rancher2RedeployBuilder_success(), run);
+            // the step falls back to polling, only the builder watches
+            assertEquals(watches + 1, requests("WATCH pods"));
+        });
+    }
+
+    private static WorkflowJob job(JenkinsRule r, String name, String script) throws IOException {
+        SystemCredentialsProvider.getInstance().getCredentials().add(Rancher2Fixtures.credential(server));
+        SystemCredentialsProvider.getInstance().save();
+        WorkflowJob job = r.createProject(WorkflowJob.class, name);
+        job.setDefinition(new CpsFlowDefinition(script, true));
+        return job;
+    }
+
+    private static String args(String workload) {
+        return "credential: 'rancher', workload: '/project/" + Rancher2Fixtures.PROJECT_ID + "/workloads/deployment:"
+                + Rancher2Fixtures.NAMESPACE + ":" + workload + "', images: '" + IMAGES + "', "
+                + "pollingDeployFinish: true, pollingStrategy: '" + Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF + "'";
+    }
+
+    private static long requests(String route) {
+        Long count = server.getRequests().get(route);
+        return count == null ? 0 : count;
+    }
+
+    private static void awaitRequests(String route, long count) throws InterruptedException {
+        while (requests(route) < count) {
+            Thread.sleep(100);
+        }
+    }
+}
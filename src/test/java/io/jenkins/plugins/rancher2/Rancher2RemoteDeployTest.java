@@ -0,0 +1,103 @@
+package io.jenkins.plugins.rancher2;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Label;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Rancher2RemoteDeployTest {
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    @Test
+    public void returnsTimingsOfWorkloads() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            Rancher2DeployMetrics metrics = remoteDeploy(server, null, "remote", Rancher2Fixtures.config(true, false)).call();
+            assertEquals(1, metrics.getWorkloads().size());
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+            // the token was sent in plain, Secret isn't decrypted on agent
+            assertNull(server.getRequests().get("unauthorized"));
+        }
+    }
+
+    @Test
+    public void failureKeepsTimings() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 1)) {
+            try {
+                remoteDeploy(server, null, "remote-failing", Rancher2Fixtures.config(true, false)).call();
+                fail("new pods can't pull their image");
+            } catch (Rancher2RemoteDeploy.Failure e) {
+                assertEquals(1, e.metrics.getWorkloads().size());
+                IOException cause = e.unwrap();
+                assertTrue(cause instanceof AbortException);
+                assertTrue(cause.getMessage(), cause.getMessage().contains("ImagePullBackOff"));
+            }
+        }
+    }
+
+    @Test
+    public void readsTemplateFromWorkspace() throws Exception {
+        File workspace = Files.createTempDirectory("workspace").toFile();
+        Files.write(new File(workspace, "workload.json").toPath(), Rancher2Fixtures.template(1).getBytes(StandardCharsets.UTF_8));
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            remoteDeploy(server, new FilePath(workspace), "new-remote", Rancher2Fixtures.config(true, false,
+                    Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING, "workload.json")).call();
+            assertEquals(1L, (long) server.getRequests().get("POST workload"));
+            assertNull(server.getRequests().get("GET template"));
+        }
+    }
+
+    @Test
+    public void runsOnAgentOfWorkspace() throws Exception {
+        jenkins.createOnlineSlave(Label.get("remote"));
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            SystemCredentialsProvider.getInstance().getCredentials().add(Rancher2Fixtures.credential(server));
+            SystemCredentialsProvider.getInstance().save();
+            WorkflowJob job = jenkins.createProject(WorkflowJob.class, "remote");
+            job.setDefinition(new CpsFlowDefinition("node('remote') { rancherRedeploy credential: 'rancher', alwaysPull: false, "
+                    + "workload: '/project/" + Rancher2Fixtures.PROJECT_ID + "/workloads/deployment:" + Rancher2Fixtures.NAMESPACE + ":agent', "
+                    + "images: '" + IMAGES + "', pollingDeployFinish: true, runOnAgent: true }", true));
+            WorkflowRun run = jenkins.assertBuildStatusSuccess(job.scheduleBuild2(0));
+            jenkins.assertLogContains(Messages.Rancher2RedeployBuilder_runOnAgent("rancher"), run);
+            jenkins.assertLogContains(Messages.Rancher2RedeployBuilder_success(), run);
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    /**
+     * @param workspace workspace of the build, null to read file templates from working directory
+     * @param name workload name in namespace {@link Rancher2Fixtures#NAMESPACE}
+     */
+    private Rancher2RemoteDeploy remoteDeploy(Rancher2FakeServer server, FilePath workspace, String name, Rancher2DeployConfig config)
+            throws IOException, InterruptedException {
+        Rancher2Workload workload = new Rancher2Workload("/project/" + Rancher2Fixtures.PROJECT_ID + "/workloads/deployment:"
+                + Rancher2Fixtures.NAMESPACE + ":" + name, IMAGES);
+        return new Rancher2RemoteDeploy(new StreamTaskListener(log, StandardCharsets.UTF_8), new EnvVars(), workspace,
+                Rancher2Fixtures.credential(server), new Rancher2Cluster("rancher", null), null,
+                Collections.singletonList(workload), config, 4, true);
+    }
+}
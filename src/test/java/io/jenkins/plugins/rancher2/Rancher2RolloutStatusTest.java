@@ -0,0 +1,94 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Rancher2RolloutStatusTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void deploymentDone() throws IOException {
+        Rancher2RolloutStatus status = Rancher2RolloutStatus.of("deployment", resource(2, 2,
+                "\"replicas\": 3", "\"replicas\": 3, \"updatedReplicas\": 3, \"readyReplicas\": 3, \"availableReplicas\": 3"));
+        assertTrue(status.observed);
+        assertTrue(status.done);
+        assertEquals(3, status.desired);
+        assertEquals(3, status.available);
+    }
+
+    @Test
+    public void deploymentNotObserved() throws IOException {
+        Rancher2RolloutStatus status = Rancher2RolloutStatus.of("deployment", resource(2, 1,
+                "\"replicas\": 3", "\"replicas\": 3, \"updatedReplicas\": 3, \"availableReplicas\": 3"));
+        assertFalse(status.observed);
+        assertFalse(status.done);
+    }
+
+    @Test
+    public void deploymentOldReplicasLeft() throws IOException {
+        assertFalse(Rancher2RolloutStatus.of("deployment", resource(2, 2,
+                "\"replicas\": 3", "\"replicas\": 4, \"updatedReplicas\": 3, \"availableReplicas\": 3")).done);
+        assertFalse(Rancher2RolloutStatus.of("deployment", resource(2, 2,
+                "\"replicas\": 3", "\"replicas\": 3, \"updatedReplicas\": 3, \"availableReplicas\": 2")).done);
+    }
+
+    @Test
+    public void statefulSetDone() throws IOException {
+        assertTrue(Rancher2RolloutStatus.of("statefulset", resource(1, 1, "\"replicas\": 2",
+                "\"updatedReplicas\": 2, \"readyReplicas\": 2, \"currentRevision\": \"web-1\", \"updateRevision\": \"web-1\"")).done);
+        assertFalse(Rancher2RolloutStatus.of("statefulset", resource(1, 1, "\"replicas\": 2",
+                "\"updatedReplicas\": 2, \"readyReplicas\": 2, \"currentRevision\": \"web-0\", \"updateRevision\": \"web-1\"")).done);
+    }
+
+    @Test
+    public void statefulSetOnDelete() throws IOException {
+        assertTrue(Rancher2RolloutStatus.of("statefulset", resource(1, 1, "\"replicas\": 2, \"updateStrategy\": {\"type\": \"OnDelete\"}",
+                "\"updatedReplicas\": 0, \"readyReplicas\": 2")).done);
+    }
+
+    @Test
+    public void daemonSetDone() throws IOException {
+        assertTrue(Rancher2RolloutStatus.of("daemonset", resource(1, 1, "",
+                "\"desiredNumberScheduled\": 2, \"updatedNumberScheduled\": 2, \"numberAvailable\": 2")).done);
+        assertFalse(Rancher2RolloutStatus.of("daemonset", resource(1, 1, "",
+                "\"desiredNumberScheduled\": 2, \"updatedNumberScheduled\": 2, \"numberAvailable\": 1")).done);
+    }
+
+    @Test
+    public void progressed() throws IOException {
+        Rancher2RolloutStatus first = Rancher2RolloutStatus.of("deployment", resource(2, 2,
+                "\"replicas\": 3", "\"replicas\": 4, \"updatedReplicas\": 1, \"availableReplicas\": 3"));
+        Rancher2RolloutStatus same = Rancher2RolloutStatus.of("deployment", resource(2, 2,
+                "\"replicas\": 3", "\"replicas\": 4, \"updatedReplicas\": 1, \"availableReplicas\": 3"));
+        Rancher2RolloutStatus next = Rancher2RolloutStatus.of("deployment", resource(2, 2,
+                "\"replicas\": 3", "\"replicas\": 4, \"updatedReplicas\": 2, \"availableReplicas\": 3"));
+        assertTrue(first.progressed(null));
+        assertFalse(same.progressed(first));
+        assertTrue(next.progressed(first));
+    }
+
+    @Test
+    public void supportedKinds() throws IOException {
+        assertTrue(Rancher2RolloutStatus.isSupported("deployment"));
+        assertFalse(Rancher2RolloutStatus.isSupported("cronjob"));
+        try {
+            Rancher2RolloutStatus.of("cronjob", resource(1, 1, "", ""));
+            fail("cronjob has no rollout status");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static JsonNode resource(int generation, int observedGeneration, String spec, String status) throws IOException {
+        return MAPPER.readTree("{\"metadata\": {\"generation\": " + generation + "}, \"spec\": {" + spec + "}, "
+                + "\"status\": {\"observedGeneration\": " + observedGeneration + (status.isEmpty() ? "" : ", " + status) + "}}");
+    }
+}
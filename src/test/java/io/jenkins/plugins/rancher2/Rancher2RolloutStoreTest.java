@@ -0,0 +1,107 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.AbortException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Rancher2RolloutStoreTest {
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    // rollouts are saved in JENKINS_HOME
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final PrintStream logger = new PrintStream(log, true);
+
+    @Test
+    public void savedRolloutIsResumed() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            // the build died after its redeploy was accepted, eg: controller restart
+            Rancher2RolloutStore.Rollout saved = deployer(server, "resumed", IMAGES, 60).redeployOrResume();
+            assertNotNull(Rancher2RolloutStore.load(saved.url));
+
+            Rancher2WorkloadDeployer deployer = deployer(server, "resumed", IMAGES, 60);
+            Rancher2RolloutStore.Rollout resumed = deployer.redeployOrResume();
+            assertTrue(log(), log().contains("was redeployed with same images"));
+            assertEquals(saved.lastDeployPods, resumed.lastDeployPods);
+            assertEquals(saved.startTime, resumed.startTime);
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+            // the pods before redeploy aren't loaded again
+            assertEquals(1L, (long) server.getRequests().get("GET pods"));
+            deployer.forgetRollout();
+        }
+    }
+
+    @Test
+    public void resumedRolloutIsWaitedFor() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            String url = deployer(server, "resumed-waited", IMAGES, 60).redeployOrResume().url;
+            deployer(server, "resumed-waited", IMAGES, 60).deploy();
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+            assertNull(Rancher2RolloutStore.load(url));
+            assertFalse(Rancher2DeployedImages.get().isPending(url, IMAGES));
+        }
+    }
+
+    @Test
+    public void otherImagesAreRedeployed() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            deployer(server, "changed", IMAGES, 60).redeployOrResume();
+            deployer(server, "changed", "registry.example.com:5000/service-0:v3", 60).deploy();
+            assertFalse(log(), log().contains("was redeployed with same images"));
+            assertEquals(2L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void expiredRolloutIsRedeployed() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            String url = deployer(server, "expired", IMAGES, 1).redeployOrResume().url;
+            Thread.sleep(1100);
+            assertNull(Rancher2RolloutStore.load(url));
+            deployer(server, "expired", IMAGES, 60).deploy();
+            assertFalse(log(), log().contains("was redeployed with same images"));
+            assertEquals(2L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void failedRolloutIsForgotten() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 1)) {
+            Rancher2WorkloadDeployer deployer = deployer(server, "failed", IMAGES, 60);
+            try {
+                deployer.deploy();
+                fail("new pods can't pull their image");
+            } catch (AbortException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ImagePullBackOff"));
+            }
+            assertNull(Rancher2RolloutStore.load(Rancher2Fixtures.workloadUrl(server, "failed")));
+        }
+    }
+
+    /**
+     * @param timeout polling timeout seconds, the deadline of a saved rollout
+     */
+    private Rancher2WorkloadDeployer deployer(Rancher2FakeServer server, String name, String images, int timeout) {
+        Rancher2DeployConfig config = new Rancher2DeployConfig(false, true, timeout, Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING,
+                Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF, Rancher2RedeployBuilder.UPDATE_MODE_PUT, null, null, false);
+        return Rancher2Fixtures.deployer(server, config, logger, name, images);
+    }
+
+    private String log() {
+        return new String(log.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
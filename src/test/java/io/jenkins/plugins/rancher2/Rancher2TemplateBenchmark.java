@@ -0,0 +1,60 @@
+package io.jenkins.plugins.rancher2;
+
+import com.google.common.io.ByteStreams;
+import hudson.Util;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * template rendering of small and large workload templates, replaceMacro of the whole string compared with
+ * the precompiled {@link Rancher2Template} written into a request body
+ */
+@JmhBenchmark
+public class Rancher2TemplateBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TemplateState {
+        @Param({"10", "500"})
+        public int containers;
+
+        String template;
+        Rancher2Template compiled;
+        Map<String, String> vars;
+
+        @Setup
+        public void setup() {
+            template = Rancher2Fixtures.template(containers);
+            compiled = Rancher2Template.compile(template);
+            vars = new HashMap<>();
+            vars.put("PROJECTID", Rancher2Fixtures.PROJECT_ID);
+            vars.put("NAMESPACEID", Rancher2Fixtures.NAMESPACE);
+            vars.put("NAMEID", "web");
+            vars.put("IMAGE", "myteam/web:v2.0.1");
+            vars.put("IMAGEPULLPOLICY", "Always");
+            vars.put("PROFILE", "production");
+            vars.put("VERSION", "2.0.1");
+            vars.put("TZ", "UTC");
+        }
+    }
+
+    @Benchmark
+    public String replaceMacro(TemplateState state) {
+        return Util.replaceMacro(state.template, state.vars);
+    }
+
+    @Benchmark
+    public long render(TemplateState state) throws IOException {
+        HttpEntity body = state.compiled.render(state.vars);
+        body.writeTo(ByteStreams.nullOutputStream());
+        return body.getContentLength();
+    }
+}
@@ -0,0 +1,91 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.AbortException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Rancher2TemplateCacheTest {
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final PrintStream logger = new PrintStream(log, true);
+
+    @Test
+    public void freshTemplateIsNotRevalidated() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            Rancher2TemplateCache cache = new Rancher2TemplateCache(60000);
+            Rancher2Template template = load(cache, server);
+            assertTrue(template == load(cache, server));
+            assertEquals(1L, (long) server.getRequests().get("GET template"));
+            assertNull(server.getRequests().get("GET template 304"));
+        }
+    }
+
+    @Test
+    public void unchangedTemplateIsRevalidatedAfterTtl() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            Rancher2TemplateCache cache = new Rancher2TemplateCache(0);
+            Rancher2Template template = load(cache, server);
+            // not modified, the compiled template is kept
+            assertTrue(template == load(cache, server));
+            assertTrue(template == load(cache, server));
+            assertEquals(1L, (long) server.getRequests().get("GET template"));
+            assertEquals(2L, (long) server.getRequests().get("GET template 304"));
+        }
+    }
+
+    @Test
+    public void changedTemplateIsCompiledAgain() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            Rancher2TemplateCache cache = new Rancher2TemplateCache(0);
+            Rancher2Template template = load(cache, server);
+            server.setTemplate("workload.json", Rancher2Fixtures.template(2));
+            Rancher2Template changed = load(cache, server);
+            assertTrue(template != changed);
+            // the second container adds literal chunks
+            assertTrue(changed.size() > template.size());
+            assertEquals(2L, (long) server.getRequests().get("GET template"));
+        }
+    }
+
+    @Test
+    public void cachedTemplateIsUsedWhenServerIsDown() throws Exception {
+        Rancher2TemplateCache cache = new Rancher2TemplateCache(0);
+        Rancher2Template template;
+        String url;
+        CloseableHttpClient client;
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            url = server.getTemplateUrl("workload.json");
+            client = ClientBuilder.get(server.getEndpoint(), false);
+            template = cache.loadHttp(logger, client, url);
+        }
+        assertTrue(template == cache.loadHttp(logger, client, url));
+        assertTrue(log.toString("UTF-8"), log.toString("UTF-8").contains("load template \"" + url + "\" failed, use cached copy"));
+    }
+
+    @Test
+    public void missingTemplateFails() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            try {
+                load(new Rancher2TemplateCache(0), server);
+                fail("template doesn't exist");
+            } catch (AbortException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("404"));
+            }
+        }
+    }
+
+    private Rancher2Template load(Rancher2TemplateCache cache, Rancher2FakeServer server) throws Exception {
+        return cache.loadHttp(logger, ClientBuilder.get(server.getEndpoint(), false), server.getTemplateUrl("workload.json"));
+    }
+}
@@ -0,0 +1,75 @@
+package io.jenkins.plugins.rancher2;
+
+import org.apache.http.HttpEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class Rancher2TemplateTest {
+
+    @Test
+    public void replacesVariables() throws IOException {
+        Map<String, String> vars = new HashMap<>();
+        vars.put("NAME", "web");
+        vars.put("REPLICAS", "3");
+        vars.put("app.version", "1.25");
+        assertEquals("{\"name\": \"web\", \"replicas\": 3, \"version\": \"1.25\"}",
+                render("{\"name\": \"$NAME\", \"replicas\": $REPLICAS, \"version\": \"${app.version}\"}", vars));
+    }
+
+    @Test
+    public void keepsUnknownVariables() throws IOException {
+        assertEquals("{\"name\": \"$NAME\", \"image\": \"${IMAGE}\"}",
+                render("{\"name\": \"$NAME\", \"image\": \"${IMAGE}\"}", new HashMap<>()));
+    }
+
+    @Test
+    public void escapesValuesInStrings() throws IOException {
+        Map<String, String> vars = new HashMap<>();
+        vars.put("VALUE", "a\"b\\c\nd");
+        assertEquals("{\"env\": \"a\\\"b\\\\c\\nd\", \"raw\": a\"b\\c\nd}",
+                render("{\"env\": \"$VALUE\", \"raw\": $VALUE}", vars));
+    }
+
+    @Test
+    public void escapedQuoteKeepsString() throws IOException {
+        Map<String, String> vars = new HashMap<>();
+        vars.put("VALUE", "\"");
+        assertEquals("{\"cmd\": \"echo \\\" \\\"\"}", render("{\"cmd\": \"echo \\\" $VALUE\"}", vars));
+    }
+
+    @Test
+    public void doubleDollarIsLiteral() throws IOException {
+        Map<String, String> vars = new HashMap<>();
+        vars.put("HOME", "/root");
+        assertEquals("{\"cmd\": \"echo $HOME ${HOME} $ /root\"}", render("{\"cmd\": \"echo $$HOME $${HOME} $$ $HOME\"}", vars));
+    }
+
+    @Test
+    public void sizeCountsBytes() {
+        assertEquals(4, Rancher2Template.compile("\u00e9${X}ab").size());
+        assertEquals(3, Rancher2Template.compile("$$\u00e9").size());
+    }
+
+    @Test
+    public void contentLengthMatchesBody() throws IOException {
+        Map<String, String> vars = new HashMap<>();
+        vars.put("NAME", "n\u00e4me\"");
+        HttpEntity entity = Rancher2Template.compile("{\"name\": \"$NAME\", \"\u00fc\": $NAME}").render(vars);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals(out.size(), entity.getContentLength());
+    }
+
+    private static String render(String template, Map<String, String> vars) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Rancher2Template.compile(template).render(vars).writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
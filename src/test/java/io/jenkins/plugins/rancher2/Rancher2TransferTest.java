@@ -0,0 +1,54 @@
+package io.jenkins.plugins.rancher2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2TransferTest {
+    private static final String IMAGES = "registry.example.com:5000/service-0:v2";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final PrintStream logger = new PrintStream(new ByteArrayOutputStream(), true);
+
+    @Test
+    public void gzipResponsesAreSmallerOnWire() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 50, 500, 0)) {
+            server.setGzip(true);
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger, "gzipped", IMAGES).deploy();
+            Rancher2Transfer.Stats stats = Rancher2Transfer.get(server.getEndpoint()).getStats();
+            assertTrue(stats.receivedDecoded > 0);
+            // pods lists repeat the same fields, they compress well
+            assertTrue(stats.receivedWire + " of " + stats.receivedDecoded, stats.receivedWire * 4 < stats.receivedDecoded);
+        }
+    }
+
+    @Test
+    public void plainResponsesAreCountedOnce() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 50, 500, 0)) {
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger, "plain", IMAGES).deploy();
+            Rancher2Transfer.Stats stats = Rancher2Transfer.get(server.getEndpoint()).getStats();
+            assertTrue(stats.receivedDecoded > 0);
+            assertEquals(stats.receivedDecoded, stats.receivedWire);
+        }
+    }
+
+    @Test
+    public void updateBodiesAreCounted() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(false, false), logger, "sent", IMAGES).deploy();
+            Rancher2Transfer.Stats stats = Rancher2Transfer.get(server.getEndpoint()).getStats();
+            assertTrue(stats.sentDecoded > 0);
+            // request compression is off by default, the server may not accept it
+            assertEquals(stats.sentDecoded, stats.sentWire);
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+}
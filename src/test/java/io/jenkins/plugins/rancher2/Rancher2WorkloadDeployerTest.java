@@ -0,0 +1,251 @@
+package io.jenkins.plugins.rancher2;
+
+import hudson.AbortException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Rancher2WorkloadDeployerTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final PrintStream logger = new PrintStream(log, true);
+
+    @Test
+    public void parsesImageName() {
+        assertEquals("nginx", Rancher2WorkloadDeployer.parseImageName("nginx"));
+        assertEquals("nginx", Rancher2WorkloadDeployer.parseImageName("nginx:1.25"));
+        assertEquals("nginx", Rancher2WorkloadDeployer.parseImageName("nginx@sha256:abc"));
+        assertEquals("team/nginx", Rancher2WorkloadDeployer.parseImageName("team/nginx:1.25@sha256:abc"));
+        assertEquals("registry:5000/team/nginx", Rancher2WorkloadDeployer.parseImageName("registry:5000/team/nginx"));
+        assertEquals("registry:5000/team/nginx", Rancher2WorkloadDeployer.parseImageName("registry:5000/team/nginx:1.25"));
+        assertEquals("registry:5000/team/nginx", Rancher2WorkloadDeployer.parseImageName("registry:5000/team/nginx:1.25@sha256:abc"));
+    }
+
+    @Test
+    public void parsesImageTags() {
+        Map<String, String> imageTags = Rancher2WorkloadDeployer.parseImageTags("nginx:1.25;registry:5000/api:2");
+        assertEquals(2, imageTags.size());
+        assertEquals("nginx:1.25", imageTags.get("nginx"));
+        assertEquals("registry:5000/api:2", imageTags.get("registry:5000/api"));
+    }
+
+    @Test
+    public void detectsNewPod() {
+        HashSet<String> last = new HashSet<>(Arrays.asList("default:web-a", "default:web-b"));
+        assertFalse(Rancher2WorkloadDeployer.hasNewPod(new HashSet<>(Arrays.asList("default:web-a")), last));
+        assertTrue(Rancher2WorkloadDeployer.hasNewPod(new HashSet<>(Arrays.asList("default:web-a", "default:web-c")), last));
+    }
+
+    @Test
+    public void skipsUnchangedImages() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "unchanged", Rancher2Fixtures.image(0));
+            deployer.deploy();
+            assertTrue(deployer.isSkipped());
+            assertEquals(1L, (long) server.getRequests().get("GET workload"));
+            assertNull(server.getRequests().get("PUT workload"));
+            assertNull(server.getRequests().get("POST redeploy"));
+        }
+    }
+
+    @Test
+    public void forceRedeploysUnchangedImages() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(false, true), logger,
+                    "forced", Rancher2Fixtures.image(0));
+            deployer.deploy();
+            assertFalse(deployer.isSkipped());
+            assertEquals(1L, (long) server.getRequests().get("POST redeploy"));
+            assertNull(server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void unwaitedRolloutIsRedeployed() throws Exception {
+        String images = "registry.example.com:5000/service-0:v2";
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(false, false), logger, "unwaited", images).deploy();
+            assertTrue(Rancher2DeployedImages.get().isPending(Rancher2Fixtures.workloadUrl(server, "unwaited"), images));
+            // the workload runs the images, but nobody saw them rolled out
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(false, false), logger, "unwaited", images);
+            deployer.deploy();
+            assertFalse(deployer.isSkipped());
+            assertEquals(2L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void waitedRolloutIsSkipped() throws Exception {
+        String images = "registry.example.com:5000/service-0:v2";
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 1, 500, 0)) {
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger, "waited", images).deploy();
+            assertFalse(Rancher2DeployedImages.get().isPending(Rancher2Fixtures.workloadUrl(server, "waited"), images));
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger, "waited", images);
+            deployer.deploy();
+            assertTrue(deployer.isSkipped());
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void podsSnapshotOverlapsWorkloadLoad() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(300, 2, 500, 0)) {
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "overlapped", "registry.example.com:5000/service-0:v2").async(ClientBuilder.async(server.getEndpoint(), false));
+            Rancher2RolloutStore.Rollout rollout = deployer.redeployOrResume();
+            deployer.forgetRollout();
+            assertEquals(2, rollout.lastDeployPods.size());
+            // the pods page was in flight while the workload was loaded, the loaded workload was updated
+            assertEquals(2, server.getMaxInFlight());
+            assertEquals(1L, (long) server.getRequests().get("GET pods"));
+            assertEquals(1L, (long) server.getRequests().get("GET workload"));
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void failedAsyncPodsSnapshotIsLoadedAgain() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            server.failNext("GET pods", 503, 1);
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "async-failed", "registry.example.com:5000/service-0:v2").async(ClientBuilder.async(server.getEndpoint(), false));
+            Rancher2RolloutStore.Rollout rollout = deployer.redeployOrResume();
+            deployer.forgetRollout();
+            assertEquals(2, rollout.lastDeployPods.size());
+            assertEquals(2L, (long) server.getRequests().get("GET pods"));
+            assertEquals(1L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void unchangedPodsAreRevalidated() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 4000, 0)) {
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "revalidated", "registry.example.com:5000/service-0:v2").deploy();
+            // old pods are unchanged until new pods start after half of rollout time
+            assertTrue(server.getRequests().get("GET pods 304") >= 1);
+            assertTrue(server.getRequests().get("GET pods") > server.getRequests().get("GET pods 304"));
+        }
+    }
+
+    @Test
+    public void failedPodAbortsRollout() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 1)) {
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "failing", "registry.example.com:5000/service-0:404");
+            try {
+                deployer.deploy();
+                fail("new pods can't pull their image");
+            } catch (AbortException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ImagePullBackOff"));
+            }
+        }
+    }
+
+    @Test
+    public void createdWorkloadWaitsForRunningPod() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false,
+                    Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING, server.getTemplateUrl("workload.json")),
+                    logger, "new-web", "registry.example.com:5000/service-0:v2");
+            deployer.deploy();
+            assertEquals("new-web", deployer.getCreatedName());
+            assertEquals(1L, (long) server.getRequests().get("POST workload"));
+            // running pods are filtered by server, only the pods before redeploy were listed unfiltered
+            assertTrue(server.getRequests().get("GET pods state=running") >= 1);
+            assertEquals(1L, (long) server.getRequests().get("GET pods"));
+        }
+    }
+
+    @Test
+    public void createdWorkloadFailureIsChecked() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 1)) {
+            server.setTemplate("workload.json", Rancher2Fixtures.template(1));
+            Rancher2WorkloadDeployer deployer = Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false,
+                    Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_POLLING, server.getTemplateUrl("workload.json")),
+                    logger, "new-failing", "registry.example.com:5000/service-0:404");
+            try {
+                deployer.deploy();
+                fail("new pods can't pull their image");
+            } catch (AbortException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ImagePullBackOff"));
+            }
+            // none is running, the unfiltered list is loaded for the failure check
+            assertTrue(server.getRequests().get("GET pods state=running") >= 1);
+            assertTrue(server.getRequests().get("GET pods") >= 2);
+        }
+    }
+
+    @Test
+    public void patchSendsChangedImage() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            Rancher2Fixtures.deployer(server, patchConfig(), logger, "patched", "registry.example.com:5000/service-0:v2").deploy();
+            assertEquals(1L, (long) server.getRequests().get("PATCH deployment"));
+            // rollout status is read from the deployment, the workload isn't loaded by v3 API
+            assertTrue(server.getRequests().get("GET deployment") >= 2);
+            assertNull(server.getRequests().get("GET workload"));
+            assertNull(server.getRequests().get("PUT workload"));
+        }
+    }
+
+    @Test
+    public void patchConflictIsRetried() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            server.failNext("PATCH deployment", 409, 2);
+            String url = Rancher2Fixtures.workloadUrl(server, "patch-conflict");
+            Rancher2Fixtures.deployer(server, patchConfig(), logger, "patch-conflict", "registry.example.com:5000/service-0:v2").deploy();
+            assertEquals(3L, (long) server.getRequests().get("PATCH deployment"));
+            assertTrue(log.toString("UTF-8").contains(Messages.Rancher2RedeployBuilder_patchConflict(url, 2, Rancher2WorkloadDeployer.PATCH_RETRIES)));
+        }
+    }
+
+    @Test
+    public void patchConflictFailsAfterRetries() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 1000, 0)) {
+            server.failNext("PATCH deployment", 409, Rancher2WorkloadDeployer.PATCH_RETRIES + 1);
+            String url = Rancher2Fixtures.workloadUrl(server, "patch-conflicts");
+            try {
+                Rancher2Fixtures.deployer(server, patchConfig(), logger, "patch-conflicts", "registry.example.com:5000/service-0:v2").deploy();
+                fail("every patch is rejected");
+            } catch (AbortException e) {
+                assertEquals(Messages.Rancher2RedeployBuilder_patchConflictFailed(url, Rancher2WorkloadDeployer.PATCH_RETRIES), e.getMessage());
+            }
+            assertEquals(Rancher2WorkloadDeployer.PATCH_RETRIES + 1L, (long) server.getRequests().get("PATCH deployment"));
+        }
+    }
+
+    @Test
+    public void putConflictLoadsWorkloadAgain() throws Exception {
+        try (Rancher2FakeServer server = new Rancher2FakeServer(0, 2, 500, 0)) {
+            server.failNext("PUT workload", 409, 1);
+            Rancher2Fixtures.deployer(server, Rancher2Fixtures.config(true, false), logger,
+                    "put-conflict", "registry.example.com:5000/service-0:v2").deploy();
+            assertEquals(2L, (long) server.getRequests().get("GET workload"));
+            assertEquals(2L, (long) server.getRequests().get("PUT workload"));
+        }
+    }
+
+    /**
+     * @return patch update config, waits for the rollout status of the deployment
+     */
+    private static Rancher2DeployConfig patchConfig() {
+        return new Rancher2DeployConfig(false, true, 60, Rancher2RedeployBuilder.DEPLOY_FINISH_MODE_STATUS,
+                Rancher2RedeployBuilder.POLLING_STRATEGY_BACKOFF, Rancher2RedeployBuilder.UPDATE_MODE_PATCH, null, null, false);
+    }
+}
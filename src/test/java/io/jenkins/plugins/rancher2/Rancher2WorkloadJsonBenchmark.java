@@ -0,0 +1,57 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * GET + PUT update of a workload document: parse, change images and serialize back
+ */
+@JmhBenchmark
+public class Rancher2WorkloadJsonBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class WorkloadState {
+        @Param({"10", "300"})
+        public int containers;
+
+        byte[] content;
+        Map<String, String> imageTags;
+
+        @Setup
+        public void setup() throws IOException {
+            content = Rancher2Fixtures.bytes(Rancher2Fixtures.workload("web", containers));
+            StringJoiner joiner = new StringJoiner(";");
+            for (int i = 0; i < containers; i += 10) {
+                joiner.add(Rancher2WorkloadDeployer.parseImageName(Rancher2Fixtures.image(i)) + ":v2.0." + i);
+            }
+            imageTags = Rancher2WorkloadDeployer.parseImageTags(joiner.toString());
+        }
+    }
+
+    @Benchmark
+    public String mutateAndSerialize(WorkloadState state) throws IOException {
+        ObjectNode root = (ObjectNode) Rancher2Fixtures.MAPPER.readTree(new ByteArrayInputStream(state.content));
+        root.remove("actions");
+        root.remove("links");
+        ((ObjectNode) root.get("annotations")).put("cattle.io/timestamp", "2022-01-19T10:00:00Z");
+        JsonNode containers = root.get("containers");
+        for (Map.Entry<Integer, String> match : Rancher2WorkloadDeployer.matchImages(containers, state.imageTags, new HashSet<>(), new HashSet<>()).entrySet()) {
+            ObjectNode container = (ObjectNode) containers.get(match.getKey());
+            container.put("image", match.getValue());
+            container.put("imagePullPolicy", "Always");
+        }
+        return Rancher2Fixtures.MAPPER.writeValueAsString(root);
+    }
+}
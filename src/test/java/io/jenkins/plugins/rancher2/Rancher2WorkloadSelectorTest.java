@@ -0,0 +1,48 @@
+package io.jenkins.plugins.rancher2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Rancher2WorkloadSelectorTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void matchesEquality() throws IOException {
+        JsonNode labels = MAPPER.readTree("{\"app\": \"web\", \"tier\": \"front\"}");
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, "app=web"));
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, "app==web, tier = front"));
+        assertFalse(Rancher2WorkloadSelector.matchLabels(labels, "app=api"));
+        assertFalse(Rancher2WorkloadSelector.matchLabels(labels, "app=web,tier=back"));
+        assertFalse(Rancher2WorkloadSelector.matchLabels(labels, "zone=a"));
+    }
+
+    @Test
+    public void matchesInequality() throws IOException {
+        JsonNode labels = MAPPER.readTree("{\"app\": \"web\"}");
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, "app!=api"));
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, "zone!=a"));
+        assertFalse(Rancher2WorkloadSelector.matchLabels(labels, "app!=web"));
+    }
+
+    @Test
+    public void matchesExistence() throws IOException {
+        JsonNode labels = MAPPER.readTree("{\"app\": \"web\"}");
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, "app"));
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, "!zone"));
+        assertFalse(Rancher2WorkloadSelector.matchLabels(labels, "zone"));
+        assertFalse(Rancher2WorkloadSelector.matchLabels(labels, "!app"));
+    }
+
+    @Test
+    public void emptySelectorMatchesAll() throws IOException {
+        JsonNode labels = MAPPER.readTree("{}");
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, ""));
+        assertTrue(Rancher2WorkloadSelector.matchLabels(labels, " , "));
+    }
+}